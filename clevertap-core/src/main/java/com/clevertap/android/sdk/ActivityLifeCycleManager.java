@@ -60,6 +60,8 @@ class ActivityLifeCycleManager {
         CoreMetaData.setAppForeground(false);
         sessionManager.setAppLastSeen(System.currentTimeMillis());
         config.getLogger().verbose(config.getAccountId(), "App in background");
+        // the process may be killed at any point from here, events held in memory must not be lost with it
+        baseEventQueueManager.commitPendingEventsAsync();
         final int now = (int) (System.currentTimeMillis() / 1000);
         if (coreMetaData.inCurrentSession()) {
             try {
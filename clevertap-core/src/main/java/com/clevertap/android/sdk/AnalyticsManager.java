@@ -11,6 +11,8 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import com.clevertap.android.sdk.displayunits.model.CleverTapDisplayUnit;
 import com.clevertap.android.sdk.events.BaseEventQueueManager;
+import com.clevertap.android.sdk.events.EventAggregator;
+import com.clevertap.android.sdk.events.EventRateLimiter;
 import com.clevertap.android.sdk.inapp.CTInAppNotification;
 import com.clevertap.android.sdk.inbox.CTInboxMessage;
 import com.clevertap.android.sdk.response.CleverTapResponse;
@@ -36,7 +38,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-public class AnalyticsManager extends BaseAnalyticsManager {
+public class AnalyticsManager extends BaseAnalyticsManager
+        implements EventAggregator.SummaryListener, EventRateLimiter.DroppedEventsListener {
 
     private final CTLockManager ctLockManager;
 
@@ -56,6 +59,10 @@ public class AnalyticsManager extends BaseAnalyticsManager {
 
     private final DeviceInfo deviceInfo;
 
+    private final EventAggregator eventAggregator;
+
+    private final EventRateLimiter eventRateLimiter;
+
     private final LocalDataStore localDataStore;
 
     private final ValidationResultStack validationResultStack;
@@ -83,7 +90,9 @@ public class AnalyticsManager extends BaseAnalyticsManager {
             LocalDataStore localDataStore,
             DeviceInfo deviceInfo,
             BaseCallbackManager callbackManager, ControllerManager controllerManager,
-            final CTLockManager ctLockManager) {
+            final CTLockManager ctLockManager,
+            EventAggregator eventAggregator,
+            EventRateLimiter eventRateLimiter) {
         this.context = context;
         this.config = config;
         this.baseEventQueueManager = baseEventQueueManager;
@@ -95,6 +104,11 @@ public class AnalyticsManager extends BaseAnalyticsManager {
         this.callbackManager = callbackManager;
         this.ctLockManager = ctLockManager;
         this.controllerManager = controllerManager;
+        this.eventAggregator = eventAggregator;
+        this.eventRateLimiter = eventRateLimiter;
+
+        eventAggregator.setSummaryListener(this);
+        eventRateLimiter.setDroppedEventsListener(this);
     }
 
     @Override
@@ -258,8 +272,33 @@ public class AnalyticsManager extends BaseAnalyticsManager {
         pushEvent("Error Occurred", props);
     }
 
+    @Override
+    public void onEventsDropped(final Map<String, Object> summary) {
+        // flushed as the session ends like the aggregator's windows
+        recordEvent(Constants.DROPPED_EVENTS_SUMMARY_EVENT, summary, coreMetaData.getCurrentSessionId());
+    }
+
+    @Override
+    public void onWindowClosed(final String eventName, final Map<String, Object> summary) {
+        // windows are flushed as the session ends, so the summary takes the session now rather than when queued
+        recordEvent(eventName, summary, coreMetaData.getCurrentSessionId());
+    }
+
     @Override
     public void pushEvent(String eventName, Map<String, Object> eventActions) {
+        if (eventName != null && eventAggregator.aggregate(eventName, eventActions)) {
+            return;
+        }
+        if (eventName != null && eventRateLimiter.shouldDrop(eventName)) {
+            return;
+        }
+        recordEvent(eventName, eventActions, 0);
+    }
+
+    /**
+     * @param sessionId the session the event belongs to, or 0 for the session current when it is queued
+     */
+    private void recordEvent(String eventName, Map<String, Object> eventActions, int sessionId) {
 
         if (eventName == null || eventName.equals("")) {
             return;
@@ -324,7 +363,7 @@ public class AnalyticsManager extends BaseAnalyticsManager {
             }
             event.put("evtName", eventName);
             event.put("evtData", actions);
-            baseEventQueueManager.queueEvent(context, event, Constants.RAISED_EVENT);
+            baseEventQueueManager.queueEvent(context, event, Constants.RAISED_EVENT, sessionId);
         } catch (Throwable t) {
             // We won't get here
         }
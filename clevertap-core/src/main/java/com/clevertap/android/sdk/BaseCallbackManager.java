@@ -3,6 +3,7 @@ package com.clevertap.android.sdk;
 import com.clevertap.android.sdk.displayunits.DisplayUnitListener;
 import com.clevertap.android.sdk.displayunits.model.CleverTapDisplayUnit;
 import com.clevertap.android.sdk.interfaces.OnInitCleverTapIDListener;
+import com.clevertap.android.sdk.interfaces.UploadRetryListener;
 import com.clevertap.android.sdk.product_config.CTProductConfigListener;
 import com.clevertap.android.sdk.pushnotification.CTPushNotificationListener;
 import com.clevertap.android.sdk.pushnotification.amp.CTPushAmpListener;
@@ -34,6 +35,8 @@ public abstract class BaseCallbackManager {
 
     public abstract SyncListener getSyncListener();
 
+    public abstract UploadRetryListener getUploadRetryListener();
+
     public abstract void notifyDisplayUnitsLoaded(final ArrayList<CleverTapDisplayUnit> displayUnits);
 
     //Profile
@@ -66,6 +69,8 @@ public abstract class BaseCallbackManager {
 
     public abstract void setSyncListener(SyncListener syncListener);
 
+    public abstract void setUploadRetryListener(UploadRetryListener uploadRetryListener);
+
     public abstract OnInitCleverTapIDListener getOnInitCleverTapIDListener();
 
     public abstract void setOnInitCleverTapIDListener(OnInitCleverTapIDListener onInitCleverTapIDListener);
@@ -7,6 +7,7 @@ import androidx.annotation.RestrictTo.Scope;
 import com.clevertap.android.sdk.displayunits.DisplayUnitListener;
 import com.clevertap.android.sdk.displayunits.model.CleverTapDisplayUnit;
 import com.clevertap.android.sdk.interfaces.OnInitCleverTapIDListener;
+import com.clevertap.android.sdk.interfaces.UploadRetryListener;
 import com.clevertap.android.sdk.product_config.CTProductConfigListener;
 import com.clevertap.android.sdk.pushnotification.CTPushNotificationListener;
 import com.clevertap.android.sdk.pushnotification.amp.CTPushAmpListener;
@@ -44,6 +45,8 @@ public class CallbackManager extends BaseCallbackManager {
 
     private SyncListener syncListener = null;
 
+    private UploadRetryListener uploadRetryListener = null;
+
     public CallbackManager(CleverTapInstanceConfig config, DeviceInfo deviceInfo) {
         this.config = config;
         this.deviceInfo = deviceInfo;
@@ -73,6 +76,16 @@ public class CallbackManager extends BaseCallbackManager {
         this.failureFlushListener = failureFlushListener;
     }
 
+    @Override
+    public UploadRetryListener getUploadRetryListener() {
+        return uploadRetryListener;
+    }
+
+    @Override
+    public void setUploadRetryListener(final UploadRetryListener uploadRetryListener) {
+        this.uploadRetryListener = uploadRetryListener;
+    }
+
     @Override
     public CTFeatureFlagsListener getFeatureFlagListener() {
         if (featureFlagListenerWeakReference != null && featureFlagListenerWeakReference.get() != null) {
@@ -31,6 +31,9 @@ import com.clevertap.android.sdk.inbox.CTInboxMessage;
 import com.clevertap.android.sdk.inbox.CTMessageDAO;
 import com.clevertap.android.sdk.interfaces.NotificationHandler;
 import com.clevertap.android.sdk.interfaces.OnInitCleverTapIDListener;
+import com.clevertap.android.sdk.interfaces.UploadRetryListener;
+import com.clevertap.android.sdk.network.HttpTransport;
+import com.clevertap.android.sdk.network.NetworkManager;
 import com.clevertap.android.sdk.product_config.CTProductConfigController;
 import com.clevertap.android.sdk.product_config.CTProductConfigListener;
 import com.clevertap.android.sdk.pushnotification.CTPushNotificationListener;
@@ -632,6 +635,17 @@ public class CleverTapAPI implements CTInboxActivity.InboxActivityListener {
         return debugLevel;
     }
 
+    /**
+     * Routes the SDK's handshake, queue upload and image download requests through the given transport, for all
+     * instances.
+     *
+     * @param transport the transport to use, or null to go back to the default keep-alive transport
+     */
+    @SuppressWarnings({"unused"})
+    public static void setHttpTransport(HttpTransport transport) {
+        NetworkManager.setHttpTransport(transport);
+    }
+
     /**
      * Enables or disables debugging. If enabled, see debug messages in Android's logcat utility.
      * Debug messages are tagged as CleverTap.
@@ -1210,6 +1224,36 @@ public class CleverTapAPI implements CTInboxActivity.InboxActivityListener {
         }
     }
 
+    /**
+     * Returns a page of {@link CTInboxMessage} objects, newest first, read from storage rather than the in-memory
+     * inbox. Call this on a background thread.
+     *
+     * @param after the last message of the previous page, or null for the first page. It may have been deleted
+     *              since.
+     * @param limit the maximum number of messages to return
+     * @return ArrayList of {@link CTInboxMessage} of Inbox Messages
+     */
+    @SuppressWarnings({"unused", "WeakerAccess"})
+    @WorkerThread
+    public ArrayList<CTInboxMessage> getInboxMessages(CTInboxMessage after, int limit) {
+        ArrayList<CTInboxMessage> inboxMessageArrayList = new ArrayList<>();
+        synchronized (coreState.getCTLockManager().getInboxControllerLock()) {
+            if (coreState.getControllerManager().getCTInboxController() != null) {
+                ArrayList<CTMessageDAO> messageDAOArrayList =
+                        coreState.getControllerManager().getCTInboxController()
+                                .getMessages(after != null ? after.getDate() : 0,
+                                        after != null ? after.getMessageId() : null, limit, false);
+                for (CTMessageDAO messageDAO : messageDAOArrayList) {
+                    inboxMessageArrayList.add(new CTInboxMessage(messageDAO.toJSON()));
+                }
+                return inboxMessageArrayList;
+            } else {
+                getConfigLogger().debug(getAccountId(), "Notification Inbox not initialized");
+                return inboxMessageArrayList; //return empty list to avoid null pointer exceptions
+            }
+        }
+    }
+
     /**
      * Returns the CTInboxListener object
      *
@@ -1639,6 +1683,17 @@ public class CleverTapAPI implements CTInboxActivity.InboxActivityListener {
         coreState.getCallbackManager().setSyncListener(syncListener);
     }
 
+    /**
+     * This method is used to set the UploadRetryListener, which is told about failed uploads and their retries when
+     * retry backoff is enabled on the config
+     *
+     * @param uploadRetryListener The {@link UploadRetryListener} object
+     */
+    @SuppressWarnings("unused")
+    public void setUploadRetryListener(UploadRetryListener uploadRetryListener) {
+        coreState.getCallbackManager().setUploadRetryListener(uploadRetryListener);
+    }
+
     /**
      * Returns the time elapsed by the user on the app
      *
@@ -2109,6 +2164,39 @@ public class CleverTapAPI implements CTInboxActivity.InboxActivityListener {
         coreState.getPushProviders().handleToken(regId, PushType.XPS, register);
     }
 
+    /**
+     * Aggregates a high frequency event on the device instead of sending every occurrence. Events pushed with
+     * this name during a window are combined into a single event of the same name, sent when the window ends or
+     * when the session ends. The summary holds the number of events as <i>count</i>, the window's bounds in
+     * seconds as <i>window_start</i> and <i>window_end</i>, the sum, minimum, maximum and last value of every
+     * numeric property as <i>property_sum</i>, <i>property_min</i>, <i>property_max</i> and <i>property_last</i>,
+     * and the last value of every other property.
+     *
+     * @param eventName     The name of the event
+     * @param windowSeconds How long each window collects events for, at least 1 second
+     */
+    @SuppressWarnings({"unused"})
+    public void registerAggregatedEvent(String eventName, int windowSeconds) {
+        if (eventName == null || eventName.isEmpty()) {
+            return;
+        }
+        coreState.getEventAggregator().register(eventName, windowSeconds * 1000L);
+    }
+
+    /**
+     * Stops aggregating an event registered with {@link #registerAggregatedEvent(String, int)}. The open window
+     * is sent right away and later events are sent as they are pushed.
+     *
+     * @param eventName The name of the event
+     */
+    @SuppressWarnings({"unused"})
+    public void unregisterAggregatedEvent(String eventName) {
+        if (eventName == null) {
+            return;
+        }
+        coreState.getEventAggregator().unregister(eventName);
+    }
+
     /**
      * Record a Screen View event
      *
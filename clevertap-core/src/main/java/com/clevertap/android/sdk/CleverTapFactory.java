@@ -2,8 +2,11 @@ package com.clevertap.android.sdk;
 
 import android.content.Context;
 import com.clevertap.android.sdk.db.DBManager;
+import com.clevertap.android.sdk.db.EventLogDBManager;
+import com.clevertap.android.sdk.events.EventAggregator;
 import com.clevertap.android.sdk.events.EventMediator;
 import com.clevertap.android.sdk.events.EventQueueManager;
+import com.clevertap.android.sdk.events.EventRateLimiter;
 import com.clevertap.android.sdk.featureFlags.CTFeatureFlagsFactory;
 import com.clevertap.android.sdk.inapp.InAppController;
 import com.clevertap.android.sdk.login.LoginController;
@@ -52,10 +55,18 @@ class CleverTapFactory {
         BaseCallbackManager callbackManager = new CallbackManager(config, deviceInfo);
         coreState.setCallbackManager(callbackManager);
 
-        SessionManager sessionManager = new SessionManager(config, coreMetaData, validator, localDataStore);
+        EventAggregator eventAggregator = new EventAggregator(config, mainLooperHandler);
+        coreState.setEventAggregator(eventAggregator);
+
+        EventRateLimiter eventRateLimiter = new EventRateLimiter(context, config, deviceInfo, mainLooperHandler);
+
+        SessionManager sessionManager = new SessionManager(config, coreMetaData, validator, localDataStore,
+                eventAggregator, eventRateLimiter);
         coreState.setSessionManager(sessionManager);
 
-        DBManager baseDatabaseManager = new DBManager(config, ctLockManager);
+        DBManager baseDatabaseManager = config.isMappedEventLogEnabled()
+                ? new EventLogDBManager(config, ctLockManager, mainLooperHandler)
+                : new DBManager(config, ctLockManager, mainLooperHandler);
         coreState.setDatabaseManager(baseDatabaseManager);
 
         ControllerManager controllerManager = new ControllerManager(context, config,
@@ -83,7 +94,7 @@ class CleverTapFactory {
 
         NetworkManager networkManager = new NetworkManager(context, config, deviceInfo, coreMetaData,
                 validationResultStack, controllerManager, baseDatabaseManager,
-                callbackManager, ctLockManager, validator, localDataStore);
+                callbackManager, ctLockManager, validator, localDataStore, eventRateLimiter);
         coreState.setNetworkManager(networkManager);
 
         EventQueueManager baseEventQueueManager = new EventQueueManager(baseDatabaseManager, context, config,
@@ -95,7 +106,7 @@ class CleverTapFactory {
 
         AnalyticsManager analyticsManager = new AnalyticsManager(context, config, baseEventQueueManager, validator,
                 validationResultStack, coreMetaData, localDataStore, deviceInfo,
-                callbackManager, controllerManager, ctLockManager);
+                callbackManager, controllerManager, ctLockManager, eventAggregator, eventRateLimiter);
         coreState.setAnalyticsManager(analyticsManager);
 
         InAppController inAppController = new InAppController(context, config, mainLooperHandler,
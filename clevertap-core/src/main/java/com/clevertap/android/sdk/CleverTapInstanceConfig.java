@@ -16,6 +16,7 @@ import com.clevertap.android.sdk.Constants.IdentityType;
 import com.clevertap.android.sdk.login.LoginConstants;
 import java.util.ArrayList;
 import java.util.Arrays;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class CleverTapInstanceConfig implements Parcelable {
@@ -73,6 +74,50 @@ public class CleverTapInstanceConfig implements Parcelable {
 
     private boolean useGoogleAdId;
 
+    private int eventGroupCommitWindow;
+
+    private int eventGroupCommitMaxBatchSize = Constants.DEFAULT_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE;
+
+    private boolean persistentDbConnection;
+
+    private boolean compressQueuedEvents;
+
+    private boolean flushRawEventPayloads;
+
+    private int queueMaxRows;
+
+    private long queueMaxBytes;
+
+    private String queueEvictionPolicy = Constants.QUEUE_EVICTION_DROP_OLDEST;
+
+    private String[] lowPriorityEventNames = Constants.NULL_STRING_ARRAY;
+
+    private boolean mappedEventLogEnabled;
+
+    private boolean streamingResponseParsing;
+
+    private boolean pipelinedFlush;
+
+    private boolean adaptiveBatchSizing;
+
+    private int batchMinBytes = Constants.DEFAULT_BATCH_MIN_BYTES;
+
+    private int batchMaxBytes = Constants.DEFAULT_BATCH_MAX_BYTES;
+
+    private boolean retryBackoffEnabled;
+
+    private int eventIngestionBufferSize;
+
+    private String eventRateLimits;
+
+    private int identityQueueWeight;
+
+    private int revenueQueueWeight;
+
+    private int behaviouralQueueWeight;
+
+    private String[] priorityEventNames = Constants.NULL_STRING_ARRAY;
+
     @SuppressWarnings("unused")
     public static CleverTapInstanceConfig createInstance(Context context, @NonNull String accountId,
             @NonNull String accountToken) {
@@ -116,6 +161,28 @@ public class CleverTapInstanceConfig implements Parcelable {
         this.beta = config.beta;
         this.allowedPushTypes = config.allowedPushTypes;
         this.identityKeys = config.identityKeys;
+        this.eventGroupCommitWindow = config.eventGroupCommitWindow;
+        this.eventGroupCommitMaxBatchSize = config.eventGroupCommitMaxBatchSize;
+        this.persistentDbConnection = config.persistentDbConnection;
+        this.compressQueuedEvents = config.compressQueuedEvents;
+        this.flushRawEventPayloads = config.flushRawEventPayloads;
+        this.queueMaxRows = config.queueMaxRows;
+        this.queueMaxBytes = config.queueMaxBytes;
+        this.queueEvictionPolicy = config.queueEvictionPolicy;
+        this.lowPriorityEventNames = config.lowPriorityEventNames;
+        this.mappedEventLogEnabled = config.mappedEventLogEnabled;
+        this.streamingResponseParsing = config.streamingResponseParsing;
+        this.pipelinedFlush = config.pipelinedFlush;
+        this.adaptiveBatchSizing = config.adaptiveBatchSizing;
+        this.batchMinBytes = config.batchMinBytes;
+        this.batchMaxBytes = config.batchMaxBytes;
+        this.retryBackoffEnabled = config.retryBackoffEnabled;
+        this.eventIngestionBufferSize = config.eventIngestionBufferSize;
+        this.eventRateLimits = config.eventRateLimits;
+        this.identityQueueWeight = config.identityQueueWeight;
+        this.revenueQueueWeight = config.revenueQueueWeight;
+        this.behaviouralQueueWeight = config.behaviouralQueueWeight;
+        this.priorityEventNames = config.priorityEventNames;
     }
 
     private CleverTapInstanceConfig(Context context, String accountId, String accountToken, String accountRegion,
@@ -209,6 +276,73 @@ public class CleverTapInstanceConfig implements Parcelable {
             if (configJsonObject.has(Constants.KEY_IDENTITY_TYPES)) {
                 this.identityKeys = (String[]) toArray(configJsonObject.getJSONArray(Constants.KEY_IDENTITY_TYPES));
             }
+            if (configJsonObject.has(Constants.KEY_EVENT_GROUP_COMMIT_WINDOW)) {
+                this.eventGroupCommitWindow = configJsonObject.getInt(Constants.KEY_EVENT_GROUP_COMMIT_WINDOW);
+            }
+            if (configJsonObject.has(Constants.KEY_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE)) {
+                this.eventGroupCommitMaxBatchSize = configJsonObject.getInt(Constants.KEY_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE);
+            }
+            if (configJsonObject.has(Constants.KEY_PERSISTENT_DB_CONNECTION)) {
+                this.persistentDbConnection = configJsonObject.getBoolean(Constants.KEY_PERSISTENT_DB_CONNECTION);
+            }
+            if (configJsonObject.has(Constants.KEY_COMPRESS_QUEUED_EVENTS)) {
+                this.compressQueuedEvents = configJsonObject.getBoolean(Constants.KEY_COMPRESS_QUEUED_EVENTS);
+            }
+            if (configJsonObject.has(Constants.KEY_FLUSH_RAW_EVENT_PAYLOADS)) {
+                this.flushRawEventPayloads = configJsonObject.getBoolean(Constants.KEY_FLUSH_RAW_EVENT_PAYLOADS);
+            }
+            if (configJsonObject.has(Constants.KEY_QUEUE_MAX_ROWS)) {
+                this.queueMaxRows = configJsonObject.getInt(Constants.KEY_QUEUE_MAX_ROWS);
+            }
+            if (configJsonObject.has(Constants.KEY_QUEUE_MAX_BYTES)) {
+                this.queueMaxBytes = configJsonObject.getLong(Constants.KEY_QUEUE_MAX_BYTES);
+            }
+            if (configJsonObject.has(Constants.KEY_QUEUE_EVICTION_POLICY)) {
+                this.queueEvictionPolicy = configJsonObject.getString(Constants.KEY_QUEUE_EVICTION_POLICY);
+            }
+            if (configJsonObject.has(Constants.KEY_LOW_PRIORITY_EVENT_NAMES)) {
+                this.lowPriorityEventNames = (String[]) toArray(
+                        configJsonObject.getJSONArray(Constants.KEY_LOW_PRIORITY_EVENT_NAMES));
+            }
+            if (configJsonObject.has(Constants.KEY_MAPPED_EVENT_LOG_ENABLED)) {
+                this.mappedEventLogEnabled = configJsonObject.getBoolean(Constants.KEY_MAPPED_EVENT_LOG_ENABLED);
+            }
+            if (configJsonObject.has(Constants.KEY_STREAMING_RESPONSE_PARSING)) {
+                this.streamingResponseParsing = configJsonObject.getBoolean(Constants.KEY_STREAMING_RESPONSE_PARSING);
+            }
+            if (configJsonObject.has(Constants.KEY_PIPELINED_FLUSH)) {
+                this.pipelinedFlush = configJsonObject.getBoolean(Constants.KEY_PIPELINED_FLUSH);
+            }
+            if (configJsonObject.has(Constants.KEY_ADAPTIVE_BATCH_SIZING)) {
+                this.adaptiveBatchSizing = configJsonObject.getBoolean(Constants.KEY_ADAPTIVE_BATCH_SIZING);
+            }
+            if (configJsonObject.has(Constants.KEY_BATCH_MIN_BYTES)) {
+                this.batchMinBytes = configJsonObject.getInt(Constants.KEY_BATCH_MIN_BYTES);
+            }
+            if (configJsonObject.has(Constants.KEY_BATCH_MAX_BYTES)) {
+                this.batchMaxBytes = configJsonObject.getInt(Constants.KEY_BATCH_MAX_BYTES);
+            }
+            if (configJsonObject.has(Constants.KEY_RETRY_BACKOFF_ENABLED)) {
+                this.retryBackoffEnabled = configJsonObject.getBoolean(Constants.KEY_RETRY_BACKOFF_ENABLED);
+            }
+            if (configJsonObject.has(Constants.KEY_EVENT_INGESTION_BUFFER_SIZE)) {
+                this.eventIngestionBufferSize = configJsonObject.getInt(Constants.KEY_EVENT_INGESTION_BUFFER_SIZE);
+            }
+            if (configJsonObject.has(Constants.KEY_EVENT_RATE_LIMITS)) {
+                this.eventRateLimits = configJsonObject.getString(Constants.KEY_EVENT_RATE_LIMITS);
+            }
+            if (configJsonObject.has(Constants.KEY_IDENTITY_QUEUE_WEIGHT)) {
+                this.identityQueueWeight = configJsonObject.getInt(Constants.KEY_IDENTITY_QUEUE_WEIGHT);
+            }
+            if (configJsonObject.has(Constants.KEY_REVENUE_QUEUE_WEIGHT)) {
+                this.revenueQueueWeight = configJsonObject.getInt(Constants.KEY_REVENUE_QUEUE_WEIGHT);
+            }
+            if (configJsonObject.has(Constants.KEY_BEHAVIOURAL_QUEUE_WEIGHT)) {
+                this.behaviouralQueueWeight = configJsonObject.getInt(Constants.KEY_BEHAVIOURAL_QUEUE_WEIGHT);
+            }
+            if (configJsonObject.has(Constants.KEY_PRIORITY_EVENT_NAMES)) {
+                this.priorityEventNames = (String[]) toArray(configJsonObject.getJSONArray(Constants.KEY_PRIORITY_EVENT_NAMES));
+            }
         } catch (Throwable t) {
             Logger.v("Error constructing CleverTapInstanceConfig from JSON: " + jsonString + ": ", t.getCause());
             throw (t);
@@ -236,6 +370,28 @@ public class CleverTapInstanceConfig implements Parcelable {
         allowedPushTypes = new ArrayList<>();
         in.readList(allowedPushTypes, String.class.getClassLoader());
         identityKeys = in.createStringArray();
+        eventGroupCommitWindow = in.readInt();
+        eventGroupCommitMaxBatchSize = in.readInt();
+        persistentDbConnection = in.readByte() != 0x00;
+        compressQueuedEvents = in.readByte() != 0x00;
+        flushRawEventPayloads = in.readByte() != 0x00;
+        queueMaxRows = in.readInt();
+        queueMaxBytes = in.readLong();
+        queueEvictionPolicy = in.readString();
+        lowPriorityEventNames = in.createStringArray();
+        mappedEventLogEnabled = in.readByte() != 0x00;
+        streamingResponseParsing = in.readByte() != 0x00;
+        pipelinedFlush = in.readByte() != 0x00;
+        adaptiveBatchSizing = in.readByte() != 0x00;
+        batchMinBytes = in.readInt();
+        batchMaxBytes = in.readInt();
+        retryBackoffEnabled = in.readByte() != 0x00;
+        eventIngestionBufferSize = in.readInt();
+        eventRateLimits = in.readString();
+        identityQueueWeight = in.readInt();
+        revenueQueueWeight = in.readInt();
+        behaviouralQueueWeight = in.readInt();
+        priorityEventNames = in.createStringArray();
     }
 
     @Override
@@ -363,6 +519,28 @@ public class CleverTapInstanceConfig implements Parcelable {
         dest.writeByte((byte) (beta ? 0x01 : 0x00));
         dest.writeList(allowedPushTypes);
         dest.writeStringArray(identityKeys);
+        dest.writeInt(eventGroupCommitWindow);
+        dest.writeInt(eventGroupCommitMaxBatchSize);
+        dest.writeByte((byte) (persistentDbConnection ? 0x01 : 0x00));
+        dest.writeByte((byte) (compressQueuedEvents ? 0x01 : 0x00));
+        dest.writeByte((byte) (flushRawEventPayloads ? 0x01 : 0x00));
+        dest.writeInt(queueMaxRows);
+        dest.writeLong(queueMaxBytes);
+        dest.writeString(queueEvictionPolicy);
+        dest.writeStringArray(lowPriorityEventNames);
+        dest.writeByte((byte) (mappedEventLogEnabled ? 0x01 : 0x00));
+        dest.writeByte((byte) (streamingResponseParsing ? 0x01 : 0x00));
+        dest.writeByte((byte) (pipelinedFlush ? 0x01 : 0x00));
+        dest.writeByte((byte) (adaptiveBatchSizing ? 0x01 : 0x00));
+        dest.writeInt(batchMinBytes);
+        dest.writeInt(batchMaxBytes);
+        dest.writeByte((byte) (retryBackoffEnabled ? 0x01 : 0x00));
+        dest.writeInt(eventIngestionBufferSize);
+        dest.writeString(eventRateLimits);
+        dest.writeInt(identityQueueWeight);
+        dest.writeInt(revenueQueueWeight);
+        dest.writeInt(behaviouralQueueWeight);
+        dest.writeStringArray(priorityEventNames);
     }
 
     public boolean getEnableCustomCleverTapId() {
@@ -384,6 +562,354 @@ public class CleverTapInstanceConfig implements Parcelable {
         this.backgroundSync = backgroundSync;
     }
 
+    @RestrictTo(Scope.LIBRARY)
+    public int getEventGroupCommitWindow() {
+        return eventGroupCommitWindow;
+    }
+
+    /**
+     * Enables group commit of queued events. Events are collected in memory for at most the given window
+     * (or until {@link #setEventGroupCommitMaxBatchSize(int)} events are pending) and then written to the
+     * database in a single transaction. A window of 0 (the default) writes every event as it is queued.
+     * <p>
+     * Held events are written when the app goes to the background and before the queue is flushed, but events
+     * held when the process is killed without warning, for instance by a crash, are lost. Keep the window short.
+     *
+     * @param windowMillis the maximum time in milliseconds an event is held in memory before being written
+     */
+    @SuppressWarnings({"unused"})
+    public void setEventGroupCommitWindow(int windowMillis) {
+        this.eventGroupCommitWindow = Math.max(0, windowMillis);
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getEventGroupCommitMaxBatchSize() {
+        return eventGroupCommitMaxBatchSize;
+    }
+
+    @SuppressWarnings({"unused"})
+    public void setEventGroupCommitMaxBatchSize(int maxBatchSize) {
+        this.eventGroupCommitMaxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isPersistentDbConnection() {
+        return persistentDbConnection;
+    }
+
+    /**
+     * Keeps a single write-ahead-logging connection to the CleverTap database open for the life of the instance,
+     * instead of opening and closing the database around every operation.
+     *
+     * @param persistentDbConnection true to keep the database connection open
+     */
+    @SuppressWarnings({"unused"})
+    public void setPersistentDbConnection(boolean persistentDbConnection) {
+        this.persistentDbConnection = persistentDbConnection;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isCompressQueuedEvents() {
+        return compressQueuedEvents;
+    }
+
+    /**
+     * Stores queued events deflated with a dictionary of common CleverTap keys instead of as plain JSON text.
+     * Events already queued are read back regardless of this setting.
+     *
+     * @param compressQueuedEvents true to compress events queued from now on
+     */
+    @SuppressWarnings({"unused"})
+    public void setCompressQueuedEvents(boolean compressQueuedEvents) {
+        this.compressQueuedEvents = compressQueuedEvents;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isFlushRawEventPayloads() {
+        return flushRawEventPayloads;
+    }
+
+    /**
+     * Sends queued events to CleverTap exactly as they were stored, without parsing them back into JSON objects
+     * on the way from the database to the request body.
+     *
+     * @param flushRawEventPayloads true to stream the stored event payloads straight into upload requests
+     */
+    @SuppressWarnings({"unused"})
+    public void setFlushRawEventPayloads(boolean flushRawEventPayloads) {
+        this.flushRawEventPayloads = flushRawEventPayloads;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getQueueMaxRows() {
+        return queueMaxRows;
+    }
+
+    /**
+     * Caps the number of events kept in each offline queue table. When a new event takes a table over the cap,
+     * rows are evicted according to {@link #setQueueEvictionPolicy(String)}.
+     *
+     * @param queueMaxRows the maximum number of rows per queue table, 0 for no limit
+     */
+    @SuppressWarnings({"unused"})
+    public void setQueueMaxRows(int queueMaxRows) {
+        this.queueMaxRows = Math.max(0, queueMaxRows);
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public long getQueueMaxBytes() {
+        return queueMaxBytes;
+    }
+
+    /**
+     * Caps the stored size of the events in each offline queue table. When a new event takes a table over the cap,
+     * rows are evicted according to {@link #setQueueEvictionPolicy(String)}.
+     *
+     * @param queueMaxBytes the maximum payload bytes per queue table, 0 for no limit
+     */
+    @SuppressWarnings({"unused"})
+    public void setQueueMaxBytes(long queueMaxBytes) {
+        this.queueMaxBytes = Math.max(0, queueMaxBytes);
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public String getQueueEvictionPolicy() {
+        return queueEvictionPolicy;
+    }
+
+    /**
+     * Chooses which queued events are dropped when a queue table is over quota. Whatever the policy, the oldest
+     * events are dropped if it doesn't free enough.
+     *
+     * @param queueEvictionPolicy one of {@link Constants#QUEUE_EVICTION_DROP_OLDEST},
+     *                            {@link Constants#QUEUE_EVICTION_DROP_LOW_PRIORITY} or
+     *                            {@link Constants#QUEUE_EVICTION_COLLAPSE_NOTIFICATION_VIEWED}
+     */
+    @SuppressWarnings({"unused"})
+    public void setQueueEvictionPolicy(String queueEvictionPolicy) {
+        this.queueEvictionPolicy = queueEvictionPolicy;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public String[] getLowPriorityEventNames() {
+        return lowPriorityEventNames;
+    }
+
+    /**
+     * @param lowPriorityEventNames the event names dropped first under
+     *                              {@link Constants#QUEUE_EVICTION_DROP_LOW_PRIORITY}
+     */
+    @SuppressWarnings({"unused"})
+    public void setLowPriorityEventNames(String... lowPriorityEventNames) {
+        this.lowPriorityEventNames = lowPriorityEventNames != null ? lowPriorityEventNames
+                : Constants.NULL_STRING_ARRAY;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isMappedEventLogEnabled() {
+        return mappedEventLogEnabled;
+    }
+
+    /**
+     * Keeps the event and Notification Viewed queues in append-only memory mapped log files instead of the
+     * database. Events already queued in the database are still sent.
+     *
+     * @param mappedEventLogEnabled true to queue events in the log files
+     */
+    @SuppressWarnings({"unused"})
+    public void setMappedEventLogEnabled(boolean mappedEventLogEnabled) {
+        this.mappedEventLogEnabled = mappedEventLogEnabled;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isStreamingResponseParsing() {
+        return streamingResponseParsing;
+    }
+
+    /**
+     * Parses queue responses straight off the connection, keeping only the sections the SDK handles, instead of
+     * reading the whole response into a string first.
+     *
+     * @param streamingResponseParsing true to parse responses as they stream in
+     */
+    @SuppressWarnings({"unused"})
+    public void setStreamingResponseParsing(boolean streamingResponseParsing) {
+        this.streamingResponseParsing = streamingResponseParsing;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isPipelinedFlush() {
+        return pipelinedFlush;
+    }
+
+    /**
+     * Reads the next batch of queued events while the current one is being uploaded, and removes sent batches in
+     * the background, which speeds up draining a large backlog.
+     *
+     * @param pipelinedFlush true to overlap reading the queue with uploading it
+     */
+    @SuppressWarnings({"unused"})
+    public void setPipelinedFlush(boolean pipelinedFlush) {
+        this.pipelinedFlush = pipelinedFlush;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isAdaptiveBatchSizing() {
+        return adaptiveBatchSizing;
+    }
+
+    /**
+     * Sizes queue uploads by bytes instead of a fixed 50 events, growing batches while uploads are fast and
+     * shrinking them after slow or failed uploads, within {@link #setBatchMinBytes(int)} and
+     * {@link #setBatchMaxBytes(int)}.
+     *
+     * @param adaptiveBatchSizing true to adapt the upload size to the connection
+     */
+    @SuppressWarnings({"unused"})
+    public void setAdaptiveBatchSizing(boolean adaptiveBatchSizing) {
+        this.adaptiveBatchSizing = adaptiveBatchSizing;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * @param batchMaxBytes the largest upload adaptive batch sizing will grow to, 512 KB by default
+     */
+    @SuppressWarnings({"unused"})
+    public void setBatchMaxBytes(int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getBatchMinBytes() {
+        return batchMinBytes;
+    }
+
+    /**
+     * @param batchMinBytes the smallest upload adaptive batch sizing will shrink to, 16 KB by default
+     */
+    @SuppressWarnings({"unused"})
+    public void setBatchMinBytes(int batchMinBytes) {
+        this.batchMinBytes = batchMinBytes;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isRetryBackoffEnabled() {
+        return retryBackoffEnabled;
+    }
+
+    /**
+     * Retries failed queue uploads with a jittered exponential backoff that honours the server's Retry-After, and
+     * pauses uploading for a while after repeated failures, instead of retrying every few seconds.
+     *
+     * @param retryBackoffEnabled true to back off after failed uploads
+     */
+    @SuppressWarnings({"unused"})
+    public void setRetryBackoffEnabled(boolean retryBackoffEnabled) {
+        this.retryBackoffEnabled = retryBackoffEnabled;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getEventIngestionBufferSize() {
+        return eventIngestionBufferSize;
+    }
+
+    /**
+     * Queues events through a lock-free buffer of the given size. Recording an event then only adds it to the
+     * buffer, and a single background drain enriches, stores and schedules the upload of everything buffered at
+     * once. While the buffer is full events are queued one by one as they are without it, so none are dropped.
+     * A size of 0 (the default) queues every event on its own.
+     *
+     * @param size the number of events the buffer holds, rounded up to a power of two
+     */
+    @SuppressWarnings({"unused"})
+    public void setEventIngestionBufferSize(int size) {
+        this.eventIngestionBufferSize = Math.max(0, size);
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public String getEventRateLimits() {
+        return eventRateLimits;
+    }
+
+    /**
+     * Limits how many events of the given name are recorded. Events over the limit are dropped before they are
+     * queued, and the number dropped is reported in a periodic <i>Events Dropped</i> event. Limits sent by the
+     * server for the same event name take precedence.
+     *
+     * @param eventName    the name of the event
+     * @param maxPerMinute the most events recorded per minute, with bursts of up to as many, or 0 for no cap
+     * @param sampleRate   the share of devices, from 0 to 1, that record the event at all. Devices are picked by
+     *                     their CleverTap ID, so a device is always either in or out of the sample
+     */
+    @SuppressWarnings({"unused"})
+    public void setEventRateLimit(String eventName, int maxPerMinute, double sampleRate) {
+        try {
+            final JSONObject limits = eventRateLimits != null ? new JSONObject(eventRateLimits) : new JSONObject();
+            limits.put(eventName, new JSONObject()
+                    .put(Constants.EVENT_RATE_LIMIT_PER_MINUTE, Math.max(0, maxPerMinute))
+                    .put(Constants.EVENT_SAMPLE_RATE, Math.max(0, Math.min(1, sampleRate))));
+            eventRateLimits = limits.toString();
+        } catch (JSONException e) {
+            getLogger().verbose(getAccountId(), "Invalid rate limit for event " + eventName, e);
+        }
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getBehaviouralQueueWeight() {
+        return behaviouralQueueWeight;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getIdentityQueueWeight() {
+        return identityQueueWeight;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public String[] getPriorityEventNames() {
+        return priorityEventNames;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public int getRevenueQueueWeight() {
+        return revenueQueueWeight;
+    }
+
+    @RestrictTo(Scope.LIBRARY)
+    public boolean isPriorityQueuesEnabled() {
+        return behaviouralQueueWeight > 0;
+    }
+
+    /**
+     * Queues profile updates, <i>Charged</i> events and the events named with
+     * {@link #setPriorityEventNames(String...)} apart from all other events, and sends the queues in turns weighted
+     * by these values. With weights of 4, 4 and 1, up to four batches of profile updates and four batches of revenue
+     * events are sent for every batch of other events, so identity and revenue data go out first after the device
+     * reconnects without holding the rest back indefinitely. By default all events share one queue.
+     *
+     * @param identityWeight    the share of batches for profile updates
+     * @param revenueWeight     the share of batches for Charged and priority events
+     * @param behaviouralWeight the share of batches for all other events
+     */
+    @SuppressWarnings({"unused"})
+    public void setQueueDrainWeights(int identityWeight, int revenueWeight, int behaviouralWeight) {
+        this.identityQueueWeight = Math.max(1, identityWeight);
+        this.revenueQueueWeight = Math.max(1, revenueWeight);
+        this.behaviouralQueueWeight = Math.max(1, behaviouralWeight);
+    }
+
+    /**
+     * @param priorityEventNames events queued and sent along with <i>Charged</i> events once
+     *                           {@link #setQueueDrainWeights(int, int, int)} is set
+     */
+    @SuppressWarnings({"unused"})
+    public void setPriorityEventNames(String... priorityEventNames) {
+        this.priorityEventNames = priorityEventNames != null ? priorityEventNames : Constants.NULL_STRING_ARRAY;
+    }
+
     public boolean isCreatedPostAppLaunch() {
         return createdPostAppLaunch;
     }
@@ -433,6 +959,29 @@ public class CleverTapInstanceConfig implements Parcelable {
             configJsonObject.put(Constants.KEY_PACKAGE_NAME, getPackageName());
             configJsonObject.put(Constants.KEY_BETA, isBeta());
             configJsonObject.put(Constants.KEY_ALLOWED_PUSH_TYPES, toJsonArray(allowedPushTypes));
+            configJsonObject.put(Constants.KEY_EVENT_GROUP_COMMIT_WINDOW, eventGroupCommitWindow);
+            configJsonObject.put(Constants.KEY_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE, eventGroupCommitMaxBatchSize);
+            configJsonObject.put(Constants.KEY_PERSISTENT_DB_CONNECTION, persistentDbConnection);
+            configJsonObject.put(Constants.KEY_COMPRESS_QUEUED_EVENTS, compressQueuedEvents);
+            configJsonObject.put(Constants.KEY_FLUSH_RAW_EVENT_PAYLOADS, flushRawEventPayloads);
+            configJsonObject.put(Constants.KEY_QUEUE_MAX_ROWS, queueMaxRows);
+            configJsonObject.put(Constants.KEY_QUEUE_MAX_BYTES, queueMaxBytes);
+            configJsonObject.put(Constants.KEY_QUEUE_EVICTION_POLICY, queueEvictionPolicy);
+            configJsonObject.put(Constants.KEY_LOW_PRIORITY_EVENT_NAMES,
+                    toJsonArray(Arrays.asList(lowPriorityEventNames)));
+            configJsonObject.put(Constants.KEY_MAPPED_EVENT_LOG_ENABLED, mappedEventLogEnabled);
+            configJsonObject.put(Constants.KEY_STREAMING_RESPONSE_PARSING, streamingResponseParsing);
+            configJsonObject.put(Constants.KEY_PIPELINED_FLUSH, pipelinedFlush);
+            configJsonObject.put(Constants.KEY_ADAPTIVE_BATCH_SIZING, adaptiveBatchSizing);
+            configJsonObject.put(Constants.KEY_BATCH_MIN_BYTES, batchMinBytes);
+            configJsonObject.put(Constants.KEY_BATCH_MAX_BYTES, batchMaxBytes);
+            configJsonObject.put(Constants.KEY_RETRY_BACKOFF_ENABLED, retryBackoffEnabled);
+            configJsonObject.put(Constants.KEY_EVENT_INGESTION_BUFFER_SIZE, eventIngestionBufferSize);
+            configJsonObject.put(Constants.KEY_EVENT_RATE_LIMITS, eventRateLimits);
+            configJsonObject.put(Constants.KEY_IDENTITY_QUEUE_WEIGHT, identityQueueWeight);
+            configJsonObject.put(Constants.KEY_REVENUE_QUEUE_WEIGHT, revenueQueueWeight);
+            configJsonObject.put(Constants.KEY_BEHAVIOURAL_QUEUE_WEIGHT, behaviouralQueueWeight);
+            configJsonObject.put(Constants.KEY_PRIORITY_EVENT_NAMES, toJsonArray(Arrays.asList(priorityEventNames)));
             return configJsonObject.toString();
         } catch (Throwable e) {
             Logger.v("Unable to convert config to JSON : ", e.getCause());
@@ -117,9 +117,14 @@ public interface Constants {
     String HEADER_DOMAIN_NAME = "X-WZRK-RD";
     String SPIKY_HEADER_DOMAIN_NAME = "X-WZRK-SPIKY-RD";
     String HEADER_MUTE = "X-WZRK-MUTE";
+    String HEADER_GZIP_REQUESTS = "X-WZRK-GZIP-REQ";
+    String HEADER_RETRY_AFTER = "Retry-After";
+    String HEADER_BATCH_ID = "X-WZRK-BATCH-ID";
+    String KEY_GZIP_REQUESTS = "comms_gzip_req";
     String NAMESPACE_IJ = "IJ";
     String KEY_LAST_TS = "comms_last_ts";
     String KEY_FIRST_TS = "comms_first_ts";
+    String KEY_BATCH_PIN = "comms_batch_pin";
     String KEY_I = "comms_i";
     String KEY_J = "comms_j";
     String CACHED_GUIDS_KEY = "cachedGUIDsKey";
@@ -189,6 +194,28 @@ public interface Constants {
     String KEY_PACKAGE_NAME = "packageName";
     String KEY_ALLOWED_PUSH_TYPES = "allowedPushTypes";
     String KEY_IDENTITY_TYPES = "identityTypes";
+    String KEY_EVENT_GROUP_COMMIT_WINDOW = "eventGroupCommitWindow";
+    String KEY_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE = "eventGroupCommitMaxBatchSize";
+    String KEY_PERSISTENT_DB_CONNECTION = "persistentDbConnection";
+    String KEY_COMPRESS_QUEUED_EVENTS = "compressQueuedEvents";
+    String KEY_FLUSH_RAW_EVENT_PAYLOADS = "flushRawEventPayloads";
+    String KEY_QUEUE_MAX_ROWS = "queueMaxRows";
+    String KEY_QUEUE_MAX_BYTES = "queueMaxBytes";
+    String KEY_QUEUE_EVICTION_POLICY = "queueEvictionPolicy";
+    String KEY_LOW_PRIORITY_EVENT_NAMES = "lowPriorityEventNames";
+    String KEY_MAPPED_EVENT_LOG_ENABLED = "mappedEventLogEnabled";
+    String KEY_STREAMING_RESPONSE_PARSING = "streamingResponseParsing";
+    String KEY_PIPELINED_FLUSH = "pipelinedFlush";
+    String KEY_ADAPTIVE_BATCH_SIZING = "adaptiveBatchSizing";
+    String KEY_BATCH_MIN_BYTES = "batchMinBytes";
+    String KEY_BATCH_MAX_BYTES = "batchMaxBytes";
+    String KEY_RETRY_BACKOFF_ENABLED = "retryBackoffEnabled";
+    String KEY_EVENT_INGESTION_BUFFER_SIZE = "eventIngestionBufferSize";
+    String KEY_EVENT_RATE_LIMITS = "eventRateLimits";
+    String KEY_IDENTITY_QUEUE_WEIGHT = "identityQueueWeight";
+    String KEY_REVENUE_QUEUE_WEIGHT = "revenueQueueWeight";
+    String KEY_BEHAVIOURAL_QUEUE_WEIGHT = "behaviouralQueueWeight";
+    String KEY_PRIORITY_EVENT_NAMES = "priorityEventNames";
     String WZRK_PUSH_ID = "wzrk_pid";
     String EXTRAS_FROM = "extras_from";
     String NOTIF_MSG = "nm";
@@ -286,6 +313,33 @@ public interface Constants {
     HashSet<String> ALL_IDENTITY_KEYS = new HashSet<>(Arrays.asList(TYPE_IDENTITY, TYPE_EMAIL, TYPE_PHONE));
 
     int MAX_DELAY_FREQUENCY = 1000 * 60 * 10;
+    int DEFAULT_EVENT_GROUP_COMMIT_MAX_BATCH_SIZE = 50;
+    String QUEUE_EVICTION_DROP_OLDEST = "dropOldest";
+    String QUEUE_EVICTION_DROP_LOW_PRIORITY = "dropLowPriority";
+    String QUEUE_EVICTION_COLLAPSE_NOTIFICATION_VIEWED = "collapseNotificationViewed";
+    int DEFAULT_BATCH_MIN_BYTES = 16 * 1024;
+    int DEFAULT_BATCH_MAX_BYTES = 512 * 1024;
+    int MAX_ADAPTIVE_BATCH_SIZE = 1000;
+    int RETRY_CIRCUIT_BREAKER_THRESHOLD = 8;
+    int RETRY_CIRCUIT_OPEN_MS = 1000 * 60 * 15;
+    String FLUSH_LANE_SUFFIX = "_flush_";
+    long AGGREGATE_MIN_WINDOW_MILLIS = 1000;
+    String AGGREGATE_COUNT = "ct_count";
+    String AGGREGATE_WINDOW_START = "ct_window_start";
+    String AGGREGATE_WINDOW_END = "ct_window_end";
+    String AGGREGATE_SUM_SUFFIX = "_sum";
+    String AGGREGATE_MIN_SUFFIX = "_min";
+    String AGGREGATE_MAX_SUFFIX = "_max";
+    String AGGREGATE_LAST_SUFFIX = "_last";
+    String EVENT_RATE_LIMITS_JSON_KEY = "e_rl";
+    String EVENT_RATE_LIMIT_PER_MINUTE = "rpm";
+    String EVENT_SAMPLE_RATE = "sr";
+    String KEY_REMOTE_EVENT_RATE_LIMITS = "remote_event_rate_limits";
+    String DROPPED_EVENTS_SUMMARY_EVENT = "Events Dropped";
+    int DROPPED_EVENTS_SUMMARY_INTERVAL_MS = 1000 * 60 * 10;
+    String DROPPED_EVENT_NAME = "event";
+    String DROPPED_SAMPLED_OUT = "sampled_out";
+    String DROPPED_RATE_LIMITED = "rate_limited";
 
     String[] NULL_STRING_ARRAY = new String[0];
     String PT_NOTIF_ID = "notificationId";
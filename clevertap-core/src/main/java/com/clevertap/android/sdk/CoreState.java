@@ -3,6 +3,7 @@ package com.clevertap.android.sdk;
 import android.content.Context;
 import com.clevertap.android.sdk.db.BaseDatabaseManager;
 import com.clevertap.android.sdk.events.BaseEventQueueManager;
+import com.clevertap.android.sdk.events.EventAggregator;
 import com.clevertap.android.sdk.events.EventMediator;
 import com.clevertap.android.sdk.inapp.InAppController;
 import com.clevertap.android.sdk.login.LoginController;
@@ -25,6 +26,8 @@ public class CoreState extends CleverTapState {
 
     private DeviceInfo deviceInfo;
 
+    private EventAggregator eventAggregator;
+
     private EventMediator eventMediator;
 
     private LocalDataStore localDataStore;
@@ -214,6 +217,14 @@ public class CoreState extends CleverTapState {
         this.baseLocationManager = baseLocationManager;
     }
 
+    public EventAggregator getEventAggregator() {
+        return eventAggregator;
+    }
+
+    public void setEventAggregator(final EventAggregator eventAggregator) {
+        this.eventAggregator = eventAggregator;
+    }
+
     public EventMediator getEventMediator() {
         return eventMediator;
     }
@@ -17,6 +17,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @RestrictTo(Scope.LIBRARY)
@@ -30,6 +31,9 @@ public class InAppFCManager {
 
     private String deviceId;
 
+    // the imp and tlc header fields, built from prefs on the first upload after the counts change
+    private JSONObject headerFields;
+
     private final ArrayList<String> mDismissedThisSession = new ArrayList<>();
 
     private final HashMap<String, Integer> mShownThisSession = new HashMap<>();
@@ -116,13 +120,25 @@ public class InAppFCManager {
         StorageHelper
                 .putInt(context, storageKeyWithSuffix(getKeyWithDeviceId(Constants.KEY_COUNTS_SHOWN_TODAY, deviceId)),
                         ++shownToday);
+        invalidateHeaderFields();
     }
 
     public void attachToHeader(final Context context, JSONObject header) {
         try {
+            final JSONObject fields = getHeaderFields(context);
+            header.put("imp", fields.get("imp"));
+            header.put("tlc", fields.get("tlc"));
+        } catch (Throwable t) {
+            Logger.v("Failed to attach FC to header", t);
+        }
+    }
+
+    private synchronized JSONObject getHeaderFields(final Context context) throws JSONException {
+        if (headerFields == null) {
+            final JSONObject fields = new JSONObject();
             // Trigger reset for dates
 
-            header.put("imp", getIntFromPrefs(getKeyWithDeviceId(Constants.KEY_COUNTS_SHOWN_TODAY, deviceId), 0));
+            fields.put("imp", getIntFromPrefs(getKeyWithDeviceId(Constants.KEY_COUNTS_SHOWN_TODAY, deviceId), 0));
 
             // tlc: [[targetID, todayCount, lifetime]]
             JSONArray arr = new JSONArray();
@@ -143,10 +159,17 @@ public class InAppFCManager {
                 }
             }
 
-            header.put("tlc", arr);
-        } catch (Throwable t) {
-            Logger.v("Failed to attach FC to header", t);
+            fields.put("tlc", arr);
+            headerFields = fields;
         }
+        return headerFields;
+    }
+
+    /**
+     * To be called after the counts in prefs change, so that the next header is built from them again.
+     */
+    private synchronized void invalidateHeaderFields() {
+        headerFields = null;
     }
 
     public void processResponse(final Context context, final JSONObject response) {
@@ -173,6 +196,7 @@ public class InAppFCManager {
             }
 
             StorageHelper.persist(editor);
+            invalidateHeaderFields();
         } catch (Throwable t) {
             Logger.v("Failed to purge out stale targets", t);
         }
@@ -393,6 +417,7 @@ public class InAppFCManager {
 
                 StorageHelper.persist(editor);
             }
+            invalidateHeaderFields();
         } catch (Exception e) {
             getConfigLogger()
                     .verbose(getConfigAccountId(), "Failed to init inapp manager " + e.getLocalizedMessage());
@@ -12,6 +12,7 @@ import com.clevertap.android.sdk.db.DBAdapter;
 import com.clevertap.android.sdk.events.EventDetail;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -36,6 +37,11 @@ public class LocalDataStore {
 
     private final HashMap<String, Object> PROFILE_FIELDS_IN_THIS_SESSION = new HashMap<>();
 
+    /**
+     * Keys set or removed since the profile was last persisted, guarded by PROFILE_FIELDS_IN_THIS_SESSION.
+     */
+    private final HashSet<String> dirtyProfileKeys = new HashSet<>();
+
     private final CleverTapInstanceConfig config;
 
     private final Context context;
@@ -304,6 +310,7 @@ public class LocalDataStore {
         synchronized (PROFILE_FIELDS_IN_THIS_SESSION) {
             try {
                 PROFILE_FIELDS_IN_THIS_SESSION.remove(key);
+                dirtyProfileKeys.add(key);
 
             } catch (Throwable t) {
                 getConfigLogger()
@@ -319,6 +326,7 @@ public class LocalDataStore {
 
         synchronized (PROFILE_FIELDS_IN_THIS_SESSION) {
             PROFILE_FIELDS_IN_THIS_SESSION.put(key, value);
+            dirtyProfileKeys.add(key);
         }
     }
 
@@ -425,7 +433,7 @@ public class LocalDataStore {
                 }
                 synchronized (PROFILE_FIELDS_IN_THIS_SESSION) {
                     try {
-                        JSONObject profile = dbAdapter.fetchUserProfileById(accountID);
+                        JSONObject profile = dbAdapter.fetchUserProfileFieldsById(accountID);
 
                         if (profile == null) {
                             return;
@@ -505,8 +513,23 @@ public class LocalDataStore {
             @Override
             public void run() {
                 synchronized (PROFILE_FIELDS_IN_THIS_SESSION) {
-                    long status = dbAdapter
-                            .storeUserProfile(profileID, new JSONObject(PROFILE_FIELDS_IN_THIS_SESSION));
+                    if (dirtyProfileKeys.isEmpty()) {
+                        return;
+                    }
+                    // only the keys that changed are written
+                    final HashMap<String, Object> changed = new HashMap<>();
+                    final ArrayList<String> removed = new ArrayList<>();
+                    for (String key : dirtyProfileKeys) {
+                        if (PROFILE_FIELDS_IN_THIS_SESSION.containsKey(key)) {
+                            changed.put(key, PROFILE_FIELDS_IN_THIS_SESSION.get(key));
+                        } else {
+                            removed.add(key);
+                        }
+                    }
+                    boolean status = dbAdapter.storeUserProfileFields(profileID, changed, removed);
+                    if (status) {
+                        dirtyProfileKeys.clear();
+                    }
                     getConfigLogger().verbose(getConfigAccountId(),
                             "Persist Local Profile complete with status " + status + " for id " + profileID);
                 }
@@ -620,6 +643,7 @@ public class LocalDataStore {
 
         synchronized (PROFILE_FIELDS_IN_THIS_SESSION) {
             PROFILE_FIELDS_IN_THIS_SESSION.clear();
+            dirtyProfileKeys.clear();
         }
 
         final String accountID = getUserProfileID();
@@ -2,7 +2,9 @@ package com.clevertap.android.sdk;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import com.clevertap.android.sdk.events.EventAggregator;
 import com.clevertap.android.sdk.events.EventDetail;
+import com.clevertap.android.sdk.events.EventRateLimiter;
 import com.clevertap.android.sdk.validation.Validator;
 
 public class SessionManager extends BaseSessionManager {
@@ -15,13 +17,19 @@ public class SessionManager extends BaseSessionManager {
 
     private final CleverTapInstanceConfig config;
 
+    private final EventAggregator eventAggregator;
+
+    private final EventRateLimiter eventRateLimiter;
+
     private final LocalDataStore localDataStore;
 
     private final Validator validator;
 
     public SessionManager(CleverTapInstanceConfig config, CoreMetaData coreMetaData, Validator validator,
-            LocalDataStore localDataStore) {
+            LocalDataStore localDataStore, EventAggregator eventAggregator, EventRateLimiter eventRateLimiter) {
         this.config = config;
+        this.eventAggregator = eventAggregator;
+        this.eventRateLimiter = eventRateLimiter;
         cleverTapMetaData = coreMetaData;
         this.validator = validator;
         this.localDataStore = localDataStore;
@@ -42,6 +50,7 @@ public class SessionManager extends BaseSessionManager {
 
     @Override
     public void destroySession() {
+        flushAggregatedEvents();
         cleverTapMetaData.setCurrentSessionId(0);
         cleverTapMetaData.setAppLaunchPushed(false);
         if (cleverTapMetaData.isFirstSession()) {
@@ -54,6 +63,19 @@ public class SessionManager extends BaseSessionManager {
         cleverTapMetaData.clearWzrkParams();
     }
 
+    /**
+     * Emits the summary of every open aggregation window and the counts of events dropped so far, so that no
+     * summary spans two sessions or two users.
+     */
+    public void flushAggregatedEvents() {
+        if (eventAggregator != null) {
+            eventAggregator.flushAll();
+        }
+        if (eventRateLimiter != null) {
+            eventRateLimiter.flushDroppedSummaries();
+        }
+    }
+
     public long getAppLastSeen() {
         return appLastSeen;
     }
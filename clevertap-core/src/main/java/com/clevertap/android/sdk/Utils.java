@@ -24,6 +24,7 @@ import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import androidx.annotation.RestrictTo;
 import androidx.core.content.ContextCompat;
+import com.clevertap.android.sdk.network.NetworkManager;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,7 +35,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import javax.net.ssl.HttpsURLConnection;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -152,25 +152,22 @@ public final class Utils {
         srcUrl = srcUrl.replace("http:/", "http://");
         srcUrl = srcUrl.replace("https:/", "https://");
         HttpURLConnection connection = null;
+        boolean responded = false;
         try {
             URL url = new URL(srcUrl);
-            connection = (HttpURLConnection) url.openConnection();
+            connection = NetworkManager.getHttpTransport().open(url);
             connection.setDoInput(true);
             connection.connect();
             InputStream input = connection.getInputStream();
-            return BitmapFactory.decodeStream(input);
+            final Bitmap bitmap = BitmapFactory.decodeStream(input);
+            responded = true;
+            return bitmap;
         } catch (IOException e) {
 
             Logger.v("Couldn't download the notification icon. URL was: " + srcUrl);
             return null;
         } finally {
-            try {
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            } catch (Throwable t) {
-                Logger.v("Couldn't close connection!", t);
-            }
+            NetworkManager.releaseConnection(connection, responded);
         }
     }
 
@@ -179,10 +176,11 @@ public final class Utils {
         srcUrl = srcUrl.replace("//", "/");
         srcUrl = srcUrl.replace("http:/", "http://");
         srcUrl = srcUrl.replace("https:/", "https://");
-        HttpsURLConnection connection = null;
+        HttpURLConnection connection = null;
+        boolean responded = false;
         try {
             URL url = new URL(srcUrl);
-            connection = (HttpsURLConnection) url.openConnection();
+            connection = NetworkManager.getHttpTransport().open(url);
             InputStream is = connection.getInputStream();
             byte[] buffer = new byte[8192];
             int bytesRead;
@@ -190,18 +188,13 @@ public final class Utils {
             while ((bytesRead = is.read(buffer)) != -1) {
                 baos.write(buffer, 0, bytesRead);
             }
+            responded = true;
             return baos.toByteArray();
         } catch (IOException e) {
             Logger.v("Error processing image bytes from url: " + srcUrl);
             return null;
         } finally {
-            try {
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            } catch (Throwable t) {
-                Logger.v("Couldn't close connection!", t);
-            }
+            NetworkManager.releaseConnection(connection, responded);
         }
     }
 
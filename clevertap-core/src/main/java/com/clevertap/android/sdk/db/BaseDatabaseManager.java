@@ -11,24 +11,71 @@ public abstract class BaseDatabaseManager {
 
     public abstract void clearQueues(final Context context);
 
+    /**
+     * @return how many times the queues have been cleared. Clearing them also clears i, j and the request
+     * timestamps, so copies of those kept in memory are stale once this changes.
+     */
+    public abstract int getQueueClearCount();
+
     public abstract QueueCursor getQueuedEvents(final Context context, final int batchSize,
             final QueueCursor previousCursor,
             final EventGroup eventGroup);
 
+    /**
+     * Same as {@link #getQueuedEvents(Context, int, QueueCursor, EventGroup)}, but also ends the batch once its
+     * events reach maxBytes.
+     *
+     * @param maxBytes the byte budget of the batch, or 0 to only limit it by count
+     */
+    public abstract QueueCursor getQueuedEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor previousCursor, final EventGroup eventGroup);
+
+    /**
+     * Reads the batch that follows a batch that has not been removed yet.
+     *
+     * @param maxBytes       the byte budget of the batch, or 0 to only limit it by count
+     * @param inFlightCursor the batch being sent
+     * @return the next batch, or null if there is none
+     */
+    public abstract QueueCursor getNextQueuedEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor inFlightCursor);
+
+    /**
+     * Returns the id to upload a batch with. A batch that is read again after an upload that wasn't acknowledged
+     * holds exactly the same events and gets the id it was first sent with, so the server can tell it is a retry.
+     * Any other batch gets a new id, which is kept until the batch is removed.
+     */
+    public abstract String getBatchId(final Context context, final QueueCursor cursor);
+
+    /**
+     * Removes a batch returned by {@link #getNextQueuedEvents} or {@link #getQueuedEvents} once it has been sent.
+     */
+    public abstract void removeSentQueuedEvents(final Context context, final QueueCursor sentCursor);
+
     public abstract void queueEventToDB(final Context context, final JSONObject event, final int type);
 
+    public abstract void commitPendingEvents(final Context context);
+
+    /**
+     * Holds the events queued from now on in memory, as group commit does, until {@link #endEventBatch(Context)}
+     * writes them all at once.
+     */
+    public abstract void beginEventBatch();
+
+    public abstract void endEventBatch(final Context context);
+
     abstract QueueCursor updateCursorForDBObject(JSONObject dbObject, QueueCursor cursor);
 
     public abstract DBAdapter loadDBAdapter(Context context);
 
     abstract QueueCursor getQueueCursor(final Context context, DBAdapter.Table table, final int batchSize,
-            final QueueCursor previousCursor);
+            final int maxBytes, final QueueCursor previousCursor);
 
-    abstract QueueCursor getQueuedDBEvents(final Context context, final int batchSize,
+    abstract QueueCursor getQueuedDBEvents(final Context context, final int batchSize, final int maxBytes,
             final QueueCursor previousCursor);
 
     abstract QueueCursor getPushNotificationViewedQueuedEvents(final Context context, final int batchSize,
-            final QueueCursor previousCursor);
+            final int maxBytes, final QueueCursor previousCursor);
 
     public abstract void queuePushNotificationViewedEventToDB(final Context context, final JSONObject event);
 
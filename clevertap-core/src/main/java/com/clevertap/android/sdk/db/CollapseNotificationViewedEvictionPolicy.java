@@ -0,0 +1,36 @@
+package com.clevertap.android.sdk.db;
+
+import com.clevertap.android.sdk.Constants;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * Drops repeated Notification Viewed events for the same notification, keeping the first one raised.
+ */
+class CollapseNotificationViewedEvictionPolicy implements EvictionPolicy {
+
+    @Override
+    public List<Long> selectEvictions(DBAdapter.Table table, List<QueuedEvent> candidates, int count) {
+        final ArrayList<Long> ids = new ArrayList<>();
+        final HashSet<String> seen = new HashSet<>();
+        for (QueuedEvent candidate : candidates) {
+            if (ids.size() >= count) {
+                break;
+            }
+            if (!Constants.NOTIFICATION_VIEWED_EVENT_NAME.equals(candidate.getEventName())) {
+                continue;
+            }
+            final JSONObject evtData = candidate.getEvent().optJSONObject("evtData");
+            if (evtData == null) {
+                continue;
+            }
+            final String pushId = evtData.optString(Constants.WZRK_PUSH_ID, null);
+            if (pushId != null && !seen.add(pushId)) {
+                ids.add(candidate.getId());
+            }
+        }
+        return ids;
+    }
+}
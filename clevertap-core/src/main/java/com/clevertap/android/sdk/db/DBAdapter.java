@@ -18,7 +18,15 @@ import com.clevertap.android.sdk.Logger;
 import com.clevertap.android.sdk.inbox.CTMessageDAO;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -32,9 +40,14 @@ public class DBAdapter {
 
         private final File databaseFile;
 
-        DatabaseHelper(Context context, String dbName) {
+        private final SQLiteStatementCache statementCache;
+
+        DatabaseHelper(Context context, String dbName, boolean writeAheadLogging,
+                SQLiteStatementCache statementCache) {
             super(context, dbName, null, DATABASE_VERSION);
             databaseFile = context.getDatabasePath(dbName);
+            this.statementCache = statementCache;
+            setWriteAheadLoggingEnabled(writeAheadLogging);
         }
 
         @SuppressLint("SQLiteString")
@@ -50,10 +63,18 @@ public class DBAdapter {
             Logger.v("Executing - " + CREATE_PROFILE_EVENTS_TABLE);
             sqLiteStatement.execute();
 
+            sqLiteStatement = db.compileStatement(CREATE_PRIORITY_EVENTS_TABLE);
+            Logger.v("Executing - " + CREATE_PRIORITY_EVENTS_TABLE);
+            sqLiteStatement.execute();
+
             sqLiteStatement = db.compileStatement(CREATE_USER_PROFILES_TABLE);
             Logger.v("Executing - " + CREATE_USER_PROFILES_TABLE);
             sqLiteStatement.execute();
 
+            sqLiteStatement = db.compileStatement(CREATE_USER_PROFILE_FIELDS_TABLE);
+            Logger.v("Executing - " + CREATE_USER_PROFILE_FIELDS_TABLE);
+            sqLiteStatement.execute();
+
             sqLiteStatement = db.compileStatement(CREATE_INBOX_MESSAGES_TABLE);
             Logger.v("Executing - " + CREATE_INBOX_MESSAGES_TABLE);
             sqLiteStatement.execute();
@@ -78,6 +99,10 @@ public class DBAdapter {
             Logger.v("Executing - " + PROFILE_EVENTS_TIME_INDEX);
             sqLiteStatement.execute();
 
+            sqLiteStatement = db.compileStatement(PRIORITY_EVENTS_TIME_INDEX);
+            Logger.v("Executing - " + PRIORITY_EVENTS_TIME_INDEX);
+            sqLiteStatement.execute();
+
             sqLiteStatement = db.compileStatement(UNINSTALL_TS_INDEX);
             Logger.v("Executing - " + UNINSTALL_TS_INDEX);
             sqLiteStatement.execute();
@@ -90,6 +115,14 @@ public class DBAdapter {
             Logger.v("Executing - " + INBOX_MESSAGES_COMP_ID_USERID_INDEX);
             sqLiteStatement.execute();
 
+            sqLiteStatement = db.compileStatement(INBOX_MESSAGES_USERID_DATE_INDEX);
+            Logger.v("Executing - " + INBOX_MESSAGES_USERID_DATE_INDEX);
+            sqLiteStatement.execute();
+
+            sqLiteStatement = db.compileStatement(INBOX_MESSAGES_USERID_EXPIRES_INDEX);
+            Logger.v("Executing - " + INBOX_MESSAGES_USERID_EXPIRES_INDEX);
+            sqLiteStatement.execute();
+
             sqLiteStatement = db.compileStatement(NOTIFICATION_VIEWED_INDEX);
             Logger.v("Executing - " + NOTIFICATION_VIEWED_INDEX);
             sqLiteStatement.execute();
@@ -99,6 +132,8 @@ public class DBAdapter {
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             Logger.v("Upgrading CleverTap DB to version " + newVersion);
+            // statements compiled against the old schema must not be reused
+            statementCache.clear();
             SQLiteStatement sqLiteStatement;
             switch (oldVersion) {
                 case 1:
@@ -162,6 +197,131 @@ public class DBAdapter {
                     sqLiteStatement.execute();
                     break;
             }
+
+            if (oldVersion < 4) {
+                // For DB Version 4, adding the payload encoding column to the queue tables.
+                // Existing rows keep the default text encoding, so no data has to be rewritten.
+                addColumnIfMissing(db, Table.EVENTS, KEY_ENCODING, "INTEGER NOT NULL DEFAULT 0");
+                addColumnIfMissing(db, Table.PROFILE_EVENTS, KEY_ENCODING, "INTEGER NOT NULL DEFAULT 0");
+                addColumnIfMissing(db, Table.PUSH_NOTIFICATION_VIEWED, KEY_ENCODING, "INTEGER NOT NULL DEFAULT 0");
+            }
+
+            if (oldVersion < 5) {
+                // For DB Version 5, giving each created_at index its own name
+                for (String sql : new String[]{DROP_LEGACY_TIME_INDEX, EVENTS_TIME_INDEX, PROFILE_EVENTS_TIME_INDEX,
+                        UNINSTALL_TS_INDEX, PUSH_NOTIFICATIONS_TIME_INDEX, NOTIFICATION_VIEWED_INDEX}) {
+                    sqLiteStatement = db.compileStatement(sql);
+                    Logger.v("Executing - " + sql);
+                    sqLiteStatement.execute();
+                }
+            }
+
+            if (oldVersion < 6) {
+                // For DB Version 6, indexing inbox messages for paged reads and expiry, and flagging the messages
+                // with video or audio so that pages can skip them
+                for (String sql : new String[]{INBOX_MESSAGES_USERID_DATE_INDEX,
+                        INBOX_MESSAGES_USERID_EXPIRES_INDEX}) {
+                    sqLiteStatement = db.compileStatement(sql);
+                    Logger.v("Executing - " + sql);
+                    sqLiteStatement.execute();
+                }
+                addColumnIfMissing(db, Table.INBOX_MESSAGES, HAS_MEDIA, "INTEGER NOT NULL DEFAULT 0");
+                migrateInboxMediaFlags(db);
+            }
+
+            if (oldVersion < 7) {
+                // For DB Version 7, storing the local profile as one row per key
+                sqLiteStatement = db.compileStatement(CREATE_USER_PROFILE_FIELDS_TABLE);
+                Logger.v("Executing - " + CREATE_USER_PROFILE_FIELDS_TABLE);
+                sqLiteStatement.execute();
+                migrateUserProfiles(db);
+            }
+
+            if (oldVersion < 8) {
+                // For DB Version 8, queueing Charged and priority events apart from the rest
+                for (String sql : new String[]{CREATE_PRIORITY_EVENTS_TABLE, PRIORITY_EVENTS_TIME_INDEX}) {
+                    sqLiteStatement = db.compileStatement(sql);
+                    Logger.v("Executing - " + sql);
+                    sqLiteStatement.execute();
+                }
+            }
+        }
+
+        /**
+         * Flags the stored messages with video or audio.
+         */
+        private void migrateInboxMediaFlags(SQLiteDatabase db) {
+            final String tName = Table.INBOX_MESSAGES.getName();
+            Cursor cursor = db.query(tName, new String[]{_ID, USER_ID, KEY_DATA}, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    final CTMessageDAO messageDAO = new CTMessageDAO();
+                    try {
+                        messageDAO.setJsonData(new JSONObject(cursor.getString(2)));
+                    } catch (JSONException e) {
+                        continue;
+                    }
+                    if (messageDAO.containsVideoOrAudio()) {
+                        final ContentValues cv = new ContentValues();
+                        cv.put(HAS_MEDIA, 1);
+                        db.update(tName, cv, _ID + " = ? AND " + USER_ID + " = ?",
+                                new String[]{cursor.getString(0), cursor.getString(1)});
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Splits the whole-profile JSON rows into key/value rows.
+         */
+        private void migrateUserProfiles(SQLiteDatabase db) {
+            Cursor cursor = db.query(Table.USER_PROFILES.getName(), null, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    final String profileId = cursor.getString(cursor.getColumnIndex("_id"));
+                    final JSONObject profile;
+                    try {
+                        profile = new JSONObject(cursor.getString(cursor.getColumnIndex(KEY_DATA)));
+                    } catch (JSONException e) {
+                        continue;
+                    }
+                    final Iterator<String> keys = profile.keys();
+                    while (keys.hasNext()) {
+                        final String key = keys.next();
+                        final ContentValues cv = new ContentValues();
+                        cv.put(PROFILE_ID, profileId);
+                        cv.put(PROFILE_KEY, key);
+                        ProfileFieldCodec.encode(cv, profile.opt(key));
+                        db.insertWithOnConflict(Table.USER_PROFILE_FIELDS.getName(), null, cv,
+                                SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            db.delete(Table.USER_PROFILES.getName(), null, null);
+        }
+
+        /**
+         * Tables recreated by an earlier upgrade step already have the latest columns, so check before altering.
+         */
+        @SuppressLint("SQLiteString")
+        private void addColumnIfMissing(SQLiteDatabase db, Table table, String column, String definition) {
+            Cursor cursor = db.rawQuery("PRAGMA table_info(" + table.getName() + ")", null);
+            try {
+                while (cursor.moveToNext()) {
+                    if (column.equals(cursor.getString(cursor.getColumnIndex("name")))) {
+                        return;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            final String sql = "ALTER TABLE " + table.getName() + " ADD COLUMN " + column + " " + definition;
+            Logger.v("Executing - " + sql);
+            db.compileStatement(sql).execute();
         }
 
 
@@ -176,15 +336,17 @@ public class DBAdapter {
 
         void deleteDatabase() {
             close();
-            //noinspection ResultOfMethodCallIgnored
-            databaseFile.delete();
+            // also removes the -journal, -wal and -shm files
+            SQLiteDatabase.deleteDatabase(databaseFile);
         }
     }
 
     public enum Table {
         EVENTS("events"),
         PROFILE_EVENTS("profileEvents"),
+        PRIORITY_EVENTS("priorityEvents"),
         USER_PROFILES("userProfiles"),
+        USER_PROFILE_FIELDS("userProfileFields"),
         INBOX_MESSAGES("inboxMessages"),
         PUSH_NOTIFICATIONS("pushNotifications"),
         UNINSTALL_TS("uninstallTimestamp"),
@@ -208,7 +370,20 @@ public class DBAdapter {
 
     private static final String KEY_CREATED_AT = "created_at";
 
-    private static final long DATA_EXPIRATION = 1000L * 60 * 60 * 24 * 5;
+    private static final String KEY_ENCODING = "encoding";
+
+    static final long DATA_EXPIRATION = 1000L * 60 * 60 * 24 * 5;
+
+    // rows stored in one group commit share created_at, so the row id keeps them in insertion order
+    private static final String QUEUE_ORDER = KEY_CREATED_AT + " ASC, _id ASC";
+
+    // stale rows are deleted in chunks of this size, releasing the lock in between
+    private static final int CLEANUP_CHUNK_SIZE = 500;
+
+    // how many of the oldest events an eviction policy gets to choose from
+    private static final int EVICTION_SCAN_LIMIT = 1000;
+
+    private static final int MAX_EVICTION_PASSES = 3;
 
     //Notification Inbox Messages Table fields
     private static final String _ID = "_id";
@@ -221,32 +396,57 @@ public class DBAdapter {
 
     private static final String USER_ID = "messageUser";
 
+    private static final String PROFILE_ID = "profileId";
+
+    private static final String PROFILE_KEY = "key";
+
     private static final String CAMPAIGN = "campaignId";
 
     private static final String WZRKPARAMS = "wzrkParams";
 
+    // whether the message would be dropped by an app that doesn't support video, see CTMessageDAO#containsVideoOrAudio
+    private static final String HAS_MEDIA = "hasMedia";
+
     private static final int DB_UPDATE_ERROR = -1;
 
     private static final int DB_OUT_OF_MEMORY_ERROR = -2;
 
     private static final String DATABASE_NAME = "clevertap";
 
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 8;
 
     private static final String CREATE_EVENTS_TABLE =
             "CREATE TABLE " + Table.EVENTS.getName() + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     KEY_DATA + " STRING NOT NULL, " +
-                    KEY_CREATED_AT + " INTEGER NOT NULL);";
+                    KEY_CREATED_AT + " INTEGER NOT NULL, " +
+                    KEY_ENCODING + " INTEGER NOT NULL DEFAULT 0);";
 
     private static final String CREATE_PROFILE_EVENTS_TABLE =
             "CREATE TABLE " + Table.PROFILE_EVENTS.getName() + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     KEY_DATA + " STRING NOT NULL, " +
-                    KEY_CREATED_AT + " INTEGER NOT NULL);";
+                    KEY_CREATED_AT + " INTEGER NOT NULL, " +
+                    KEY_ENCODING + " INTEGER NOT NULL DEFAULT 0);";
+
+    private static final String CREATE_PRIORITY_EVENTS_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + Table.PRIORITY_EVENTS.getName() +
+                    " (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    KEY_DATA + " STRING NOT NULL, " +
+                    KEY_CREATED_AT + " INTEGER NOT NULL, " +
+                    KEY_ENCODING + " INTEGER NOT NULL DEFAULT 0);";
 
     private static final String CREATE_USER_PROFILES_TABLE =
             "CREATE TABLE " + Table.USER_PROFILES.getName() + " (_id STRING UNIQUE PRIMARY KEY, " +
                     KEY_DATA + " STRING NOT NULL);";
 
+    private static final String CREATE_USER_PROFILE_FIELDS_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + Table.USER_PROFILE_FIELDS.getName() + " (" +
+                    PROFILE_ID + " STRING NOT NULL, " +
+                    PROFILE_KEY + " STRING NOT NULL, " +
+                    ProfileFieldCodec.KEY_TYPE + " INTEGER NOT NULL, " +
+                    // no declared type, so numbers are kept as numbers and text as text
+                    ProfileFieldCodec.KEY_VALUE + " NOT NULL, " +
+                    "PRIMARY KEY (" + PROFILE_ID + ", " + PROFILE_KEY + "));";
+
     private static final String CREATE_INBOX_MESSAGES_TABLE =
             "CREATE TABLE " + Table.INBOX_MESSAGES.getName() + " (_id STRING NOT NULL, " +
                     KEY_DATA + " TEXT NOT NULL, " +
@@ -256,18 +456,39 @@ public class DBAdapter {
                     IS_READ + " INTEGER NOT NULL DEFAULT 0, " +
                     EXPIRES + " INTEGER NOT NULL, " +
                     KEY_CREATED_AT + " INTEGER NOT NULL, " +
-                    USER_ID + " STRING NOT NULL);";
+                    USER_ID + " STRING NOT NULL, " +
+                    HAS_MEDIA + " INTEGER NOT NULL DEFAULT 0);";
+
+    private static final String INBOX_MESSAGES_USERID_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS userid_date_idx ON " + Table.INBOX_MESSAGES.getName() +
+                    " (" + USER_ID + "," + KEY_CREATED_AT + "," + _ID + ");";
+
+    private static final String INBOX_MESSAGES_USERID_EXPIRES_INDEX =
+            "CREATE INDEX IF NOT EXISTS userid_expires_idx ON " + Table.INBOX_MESSAGES.getName() +
+                    " (" + USER_ID + "," + EXPIRES + ");";
+
+    // newest first, the message id breaks ties between messages with the same date
+    private static final String INBOX_ORDER = KEY_CREATED_AT + " DESC, " + _ID + " DESC";
+
+    // messages with no expiry store 0
+    private static final String INBOX_NOT_EXPIRED = " AND (" + EXPIRES + " = 0 OR " + EXPIRES + " > ?)";
+
+    private static final String INBOX_NO_VIDEO_OR_AUDIO = " AND " + HAS_MEDIA + " = 0";
 
     private static final String INBOX_MESSAGES_COMP_ID_USERID_INDEX =
             "CREATE UNIQUE INDEX IF NOT EXISTS userid_id_idx ON " + Table.INBOX_MESSAGES.getName() +
                     " (" + USER_ID + "," + _ID + ");";
 
     private static final String EVENTS_TIME_INDEX =
-            "CREATE INDEX IF NOT EXISTS time_idx ON " + Table.EVENTS.getName() +
+            "CREATE INDEX IF NOT EXISTS events_time_idx ON " + Table.EVENTS.getName() +
                     " (" + KEY_CREATED_AT + ");";
 
     private static final String PROFILE_EVENTS_TIME_INDEX =
-            "CREATE INDEX IF NOT EXISTS time_idx ON " + Table.PROFILE_EVENTS.getName() +
+            "CREATE INDEX IF NOT EXISTS profile_events_time_idx ON " + Table.PROFILE_EVENTS.getName() +
+                    " (" + KEY_CREATED_AT + ");";
+
+    private static final String PRIORITY_EVENTS_TIME_INDEX =
+            "CREATE INDEX IF NOT EXISTS priority_events_time_idx ON " + Table.PRIORITY_EVENTS.getName() +
                     " (" + KEY_CREATED_AT + ");";
 
     private static final String CREATE_PUSH_NOTIFICATIONS_TABLE =
@@ -277,7 +498,7 @@ public class DBAdapter {
                     IS_READ + " INTEGER NOT NULL);";
 
     private static final String PUSH_NOTIFICATIONS_TIME_INDEX =
-            "CREATE INDEX IF NOT EXISTS time_idx ON " + Table.PUSH_NOTIFICATIONS.getName() +
+            "CREATE INDEX IF NOT EXISTS push_notifications_time_idx ON " + Table.PUSH_NOTIFICATIONS.getName() +
                     " (" + KEY_CREATED_AT + ");";
 
     private static final String CREATE_UNINSTALL_TS_TABLE =
@@ -285,18 +506,22 @@ public class DBAdapter {
                     KEY_CREATED_AT + " INTEGER NOT NULL);";
 
     private static final String UNINSTALL_TS_INDEX =
-            "CREATE INDEX IF NOT EXISTS time_idx ON " + Table.UNINSTALL_TS.getName() +
+            "CREATE INDEX IF NOT EXISTS uninstall_ts_time_idx ON " + Table.UNINSTALL_TS.getName() +
                     " (" + KEY_CREATED_AT + ");";
 
     private static final String CREATE_NOTIFICATION_VIEWED_TABLE =
             "CREATE TABLE " + Table.PUSH_NOTIFICATION_VIEWED.getName() + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     KEY_DATA + " STRING NOT NULL, " +
-                    KEY_CREATED_AT + " INTEGER NOT NULL);";
+                    KEY_CREATED_AT + " INTEGER NOT NULL, " +
+                    KEY_ENCODING + " INTEGER NOT NULL DEFAULT 0);";
 
     private static final String NOTIFICATION_VIEWED_INDEX =
-            "CREATE INDEX IF NOT EXISTS time_idx ON " + Table.PUSH_NOTIFICATION_VIEWED.getName() +
+            "CREATE INDEX IF NOT EXISTS notification_viewed_time_idx ON " + Table.PUSH_NOTIFICATION_VIEWED.getName() +
                     " (" + KEY_CREATED_AT + ");";
 
+    // every table used to name its index time_idx, so only the first one created ever existed
+    private static final String DROP_LEGACY_TIME_INDEX = "DROP INDEX IF EXISTS time_idx";
+
     private static final String DROP_TABLE_UNINSTALL_TS =
             "DROP TABLE IF EXISTS " + Table.UNINSTALL_TS.getName();
 
@@ -306,20 +531,48 @@ public class DBAdapter {
     private static final String DROP_TABLE_PUSH_NOTIFICATION_VIEWED =
             "DROP TABLE IF EXISTS " + Table.PUSH_NOTIFICATION_VIEWED.getName();
 
-    private CleverTapInstanceConfig config;
+    private final CleverTapInstanceConfig config;
 
     private final DatabaseHelper dbHelper;
 
+    // readers share the lock, writers are exclusive; see readLock()
+    private final ReentrantReadWriteLock dbLock = new ReentrantReadWriteLock();
+
+    private final boolean compressEvents;
+
+    private final EventPayloadCodec payloadCodec = new EventPayloadCodec();
+
+    private final boolean persistentConnection;
+
+    private final SQLiteStatementCache statementCache = new SQLiteStatementCache();
+
     private boolean rtlDirtyFlag = true;
 
-    public DBAdapter(Context context, CleverTapInstanceConfig config) {
-        this(context, getDatabaseName(config));
-        this.config = config;
+    // built from the stored push ids on the first lookup, null until then or after it has to be rebuilt
+    private volatile PushIdBloomFilter pushIdFilter;
 
-    }
+    // row counts of the queue tables, lazily seeded with a COUNT(*) and then kept in sync on every write
+    private final HashMap<Table, Long> rowCounts = new HashMap<>();
 
-    private DBAdapter(Context context, String dbName) {
-        dbHelper = new DatabaseHelper(context, dbName);
+    // stored payload sizes of the queue tables, lazily seeded and dropped whenever rows are deleted
+    private final HashMap<Table, Long> byteCounts = new HashMap<>();
+
+    private final HashMap<Table, Long> evictionCounts = new HashMap<>();
+
+    private EvictionPolicy evictionPolicy;
+
+    private final long queueMaxBytes;
+
+    private final int queueMaxRows;
+
+    public DBAdapter(Context context, CleverTapInstanceConfig config) {
+        this.config = config;
+        this.persistentConnection = config.isPersistentDbConnection();
+        this.compressEvents = config.isCompressQueuedEvents();
+        this.queueMaxRows = config.getQueueMaxRows();
+        this.queueMaxBytes = config.getQueueMaxBytes();
+        this.evictionPolicy = createEvictionPolicy(config);
+        dbHelper = new DatabaseHelper(context, getDatabaseName(config), persistentConnection, statementCache);
     }
 
     /**
@@ -330,13 +583,15 @@ public class DBAdapter {
      */
     @SuppressWarnings("UnusedReturnValue")
     @WorkerThread
-    public synchronized boolean deleteMessageForId(String messageId, String userId) {
+    public boolean deleteMessageForId(String messageId, String userId) {
         if (messageId == null || userId == null) {
             return false;
         }
 
         final String tName = Table.INBOX_MESSAGES.getName();
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             db.delete(tName, _ID + " = ? AND " + USER_ID + " = ?", new String[]{messageId, userId});
@@ -345,15 +600,67 @@ public class DBAdapter {
             getConfigLogger().verbose("Error removing stale records from " + tName, e);
             return false;
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
-    public synchronized boolean doesPushNotificationIdExist(String id) {
-        return id.equals(fetchPushNotificationId(id));
+    /**
+     * Deletes the user's inbox messages that have expired
+     *
+     * @param userId the inbox user
+     * @return the number of messages deleted
+     */
+    @WorkerThread
+    public int deleteExpiredMessages(String userId) {
+        final String tName = Table.INBOX_MESSAGES.getName();
+
+        final Lock lock = writeLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            return db.delete(tName, USER_ID + " = ? AND " + EXPIRES + " > 0 AND " + EXPIRES + " <= ?",
+                    new String[]{userId, String.valueOf(nowInSeconds())});
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Error removing expired messages from " + tName, e);
+            return 0;
+        } finally {
+            closeDatabaseIfNeeded();
+            lock.unlock();
+        }
     }
 
-    public synchronized String[] fetchPushNotificationIds() {
+    public boolean doesPushNotificationIdExist(String id) {
+        if (!mightContainPushNotificationId(id)) {
+            Logger.v("Checked PID - " + id + " exists: false");
+            return false;
+        }
+
+        final String tName = Table.PUSH_NOTIFICATIONS.getName();
+        boolean exists = false;
+
+        final Lock lock = readLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getReadableDatabase();
+            final SQLiteStatement statement = statementCache.get(db, Table.PUSH_NOTIFICATIONS, "exists",
+                    "SELECT COUNT(*) FROM " + tName + " WHERE " + KEY_DATA + " = ?");
+            synchronized (statement) {
+                statement.bindString(1, id);
+                exists = statement.simpleQueryForLong() > 0;
+                statement.clearBindings();
+            }
+            Logger.v("Checked PID - " + id + " exists: " + exists);
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
+        } finally {
+            closeDatabaseIfNeeded();
+            lock.unlock();
+        }
+        return exists;
+    }
+
+    public String[] fetchPushNotificationIds() {
         if (!rtlDirtyFlag) {
             return new String[0];
         }
@@ -362,6 +669,8 @@ public class DBAdapter {
         Cursor cursor = null;
         List<String> pushIds = new ArrayList<>();
 
+        final Lock lock = readLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getReadableDatabase();
             cursor = db.query(tName, null, IS_READ + " =?", new String[]{"0"}, null, null, null);
@@ -375,53 +684,54 @@ public class DBAdapter {
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
             if (cursor != null) {
                 cursor.close();
             }
+            lock.unlock();
         }
         return pushIds.toArray(new String[0]);
     }
 
-    public synchronized JSONObject fetchUserProfileById(final String id) {
-
-        if (id == null) {
-            return null;
-        }
-
-        final String tName = Table.USER_PROFILES.getName();
-        JSONObject profile = null;
-        Cursor cursor = null;
-
+    /**
+     * @param table the event queue table
+     * @return the number of events dropped from the table to keep it within the queue quota since this adapter was
+     * created
+     */
+    public long getEvictedEventCount(Table table) {
+        final Lock lock = readLock();
+        lock.lock();
         try {
-            final SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-            cursor = db.query(tName, null, "_id =?", new String[]{id}, null, null, null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                try {
-                    profile = new JSONObject(cursor.getString(cursor.getColumnIndex(KEY_DATA)));
-                } catch (final JSONException e) {
-                    // Ignore
-                }
-            }
-        } catch (final SQLiteException e) {
-            getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
+            final Long count = evictionCounts.get(table);
+            return count != null ? count : 0;
         } finally {
-            dbHelper.close();
-            if (cursor != null) {
-                cursor.close();
-            }
+            lock.unlock();
         }
+    }
 
-        return profile;
+    /**
+     * Reads the whole local profile from the key/value profile table.
+     *
+     * @param id the profile id
+     * @return the profile, or null if nothing is stored for it
+     */
+    @WorkerThread
+    public JSONObject fetchUserProfileFieldsById(final String id) {
+        if (id == null) {
+            return null;
+        }
+        final JSONObject profile = new JSONObject();
+        final boolean found = queryUserProfileFields(PROFILE_ID + " = ?", new String[]{id}, profile);
+        return found && profile.length() > 0 ? profile : null;
     }
 
-    public synchronized long getLastUninstallTimestamp() {
+    public long getLastUninstallTimestamp() {
         final String tName = Table.UNINSTALL_TS.getName();
         Cursor cursor = null;
         long timestamp = 0;
 
+        final Lock lock = readLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getReadableDatabase();
             cursor = db.query(tName, null, null, null, null, null, KEY_CREATED_AT + " DESC", "1");
@@ -431,55 +741,60 @@ public class DBAdapter {
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
             if (cursor != null) {
                 cursor.close();
             }
+            lock.unlock();
         }
         return timestamp;
     }
 
     /**
-     * Retrieves list of inbox messages based on given userId
+     * Retrieves list of unexpired inbox messages based on given userId
      *
      * @param userId String userid
      * @return ArrayList of {@link CTMessageDAO}
      */
     @WorkerThread
-    public synchronized ArrayList<CTMessageDAO> getMessages(String userId) {
-        final String tName = Table.INBOX_MESSAGES.getName();
-        Cursor cursor;
-        ArrayList<CTMessageDAO> messageDAOArrayList = new ArrayList<>();
-        try {
-            final SQLiteDatabase db = dbHelper.getWritableDatabase();
-            cursor = db
-                    .query(tName, null, USER_ID + " =?", new String[]{userId}, null, null, KEY_CREATED_AT + " DESC");
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    CTMessageDAO ctMessageDAO = new CTMessageDAO();
-                    ctMessageDAO.setId(cursor.getString(cursor.getColumnIndex(_ID)));
-                    ctMessageDAO.setJsonData(new JSONObject(cursor.getString(cursor.getColumnIndex(KEY_DATA))));
-                    ctMessageDAO.setWzrkParams(new JSONObject(cursor.getString(cursor.getColumnIndex(WZRKPARAMS))));
-                    ctMessageDAO.setDate(cursor.getLong(cursor.getColumnIndex(KEY_CREATED_AT)));
-                    ctMessageDAO.setExpires(cursor.getLong(cursor.getColumnIndex(EXPIRES)));
-                    ctMessageDAO.setRead(cursor.getInt(cursor.getColumnIndex(IS_READ)));
-                    ctMessageDAO.setUserId(cursor.getString(cursor.getColumnIndex(USER_ID)));
-                    ctMessageDAO.setTags(cursor.getString(cursor.getColumnIndex(TAGS)));
-                    ctMessageDAO.setCampaignId(cursor.getString(cursor.getColumnIndex(CAMPAIGN)));
-                    messageDAOArrayList.add(ctMessageDAO);
-                }
-                cursor.close();
-            }
-            return messageDAOArrayList;
-        } catch (final SQLiteException e) {
-            getConfigLogger().verbose("Error retrieving records from " + tName, e);
-            return null;
-        } catch (JSONException e) {
-            getConfigLogger().verbose("Error retrieving records from " + tName, e.getMessage());
-            return null;
-        } finally {
-            dbHelper.close();
+    public ArrayList<CTMessageDAO> getMessages(String userId) {
+        return queryMessages(USER_ID + " = ?" + INBOX_NOT_EXPIRED,
+                new String[]{userId, String.valueOf(nowInSeconds())}, null);
+    }
+
+    /**
+     * Reads a page of the user's unexpired inbox messages, newest first. Pages are keyed on the date and id of the
+     * last message of the previous page rather than an offset, so messages arriving or being deleted in between
+     * don't shift or end later pages.
+     *
+     * @param userId         the inbox user
+     * @param afterDate      the date of the last message of the previous page
+     * @param afterMessageId the id of the last message of the previous page, or null for the first page
+     * @param limit          the maximum number of messages to return
+     * @param unreadOnly     true to skip messages that have been read
+     * @param mediaSupported false to skip the messages with video or audio that the inbox drops
+     * @return the page of messages, or null if the DB couldn't be read
+     */
+    @WorkerThread
+    public ArrayList<CTMessageDAO> getMessages(String userId, long afterDate, String afterMessageId, int limit,
+            boolean unreadOnly, boolean mediaSupported) {
+        final StringBuilder selection = new StringBuilder(USER_ID + " = ?" + INBOX_NOT_EXPIRED);
+        final ArrayList<String> args = new ArrayList<>();
+        args.add(userId);
+        args.add(String.valueOf(nowInSeconds()));
+        if (unreadOnly) {
+            selection.append(" AND " + IS_READ + " = 0");
+        }
+        if (!mediaSupported) {
+            selection.append(INBOX_NO_VIDEO_OR_AUDIO);
         }
+        if (afterMessageId != null) {
+            selection.append(" AND (" + KEY_CREATED_AT + " < ? OR (" + KEY_CREATED_AT + " = ? AND " + _ID + " < ?))");
+            args.add(String.valueOf(afterDate));
+            args.add(String.valueOf(afterDate));
+            args.add(afterMessageId);
+        }
+        return queryMessages(selection.toString(), args.toArray(new String[0]), String.valueOf(limit));
     }
 
     /**
@@ -490,51 +805,80 @@ public class DBAdapter {
      */
     @SuppressWarnings("UnusedReturnValue")
     @WorkerThread
-    public synchronized boolean markReadMessageForId(String messageId, String userId) {
+    public boolean markReadMessageForId(String messageId, String userId) {
         if (messageId == null || userId == null) {
             return false;
         }
 
         final String tName = Table.INBOX_MESSAGES.getName();
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(IS_READ, 1);
-            db.update(Table.INBOX_MESSAGES.getName(), cv, _ID + " = ? AND " + USER_ID + " = ?",
-                    new String[]{messageId, userId});
+            final SQLiteStatement statement = statementCache.get(db, Table.INBOX_MESSAGES, "markRead",
+                    "UPDATE " + tName + " SET " + IS_READ + " = 1 WHERE " + _ID + " = ? AND " + USER_ID + " = ?");
+            synchronized (statement) {
+                statement.bindString(1, messageId);
+                statement.bindString(2, userId);
+                statement.executeUpdateDelete();
+                statement.clearBindings();
+            }
             return true;
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error removing stale records from " + tName, e);
             return false;
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
     /**
      * remove the user profile with id from the db.
      */
-    public synchronized void removeUserProfile(String id) {
+    public void removeUserProfile(String id) {
 
         if (id == null) {
             return;
         }
         final String tableName = Table.USER_PROFILES.getName();
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             db.delete(tableName, "_id = ?", new String[]{id});
+            db.delete(Table.USER_PROFILE_FIELDS.getName(), PROFILE_ID + " = ?", new String[]{id});
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error removing user profile from " + tableName + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the policy picked from {@link CleverTapInstanceConfig#getQueueEvictionPolicy()}.
+     *
+     * @param evictionPolicy decides which events are dropped when a queue table is over quota
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        if (evictionPolicy == null) {
+            return;
+        }
+        final Lock lock = writeLock();
+        lock.lock();
+        try {
+            this.evictionPolicy = evictionPolicy;
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Adds a String timestamp representing uninstall flag to the DB.
      */
-    public synchronized void storeUninstallTimestamp() {
+    public void storeUninstallTimestamp() {
 
         if (!this.belowMemThreshold()) {
             getConfigLogger().verbose("There is not enough space left on the device to store data, data discarded");
@@ -542,6 +886,8 @@ public class DBAdapter {
         }
         final String tableName = Table.UNINSTALL_TS.getName();
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             final ContentValues cv = new ContentValues();
@@ -549,48 +895,64 @@ public class DBAdapter {
             db.insert(tableName, null, cv);
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error adding data to table " + tableName + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
 
     }
 
     /**
-     * Adds a JSON string representing to the DB.
+     * Writes only the profile keys that changed, in a single transaction.
      *
-     * @param obj the JSON to record
-     * @return the number of rows in the table, or DB_OUT_OF_MEMORY_ERROR/DB_UPDATE_ERROR
+     * @param id      the profile id
+     * @param changed the keys that were set, with their new values
+     * @param removed the keys that were removed
+     * @return true if the changes were stored
      */
     @WorkerThread
-    public synchronized long storeUserProfile(String id, JSONObject obj) {
-
+    public boolean storeUserProfileFields(String id, Map<String, Object> changed, Collection<String> removed) {
         if (id == null) {
-            return DB_UPDATE_ERROR;
+            return false;
         }
 
         if (!this.belowMemThreshold()) {
             getConfigLogger().verbose("There is not enough space left on the device to store data, data discarded");
-            return DB_OUT_OF_MEMORY_ERROR;
+            return false;
         }
 
-        final String tableName = Table.USER_PROFILES.getName();
-
-        long ret = DB_UPDATE_ERROR;
+        final String tableName = Table.USER_PROFILE_FIELDS.getName();
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
-            final ContentValues cv = new ContentValues();
-            cv.put(KEY_DATA, obj.toString());
-            cv.put("_id", id);
-            ret = db.insertWithOnConflict(tableName, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+            db.beginTransaction();
+            try {
+                for (Map.Entry<String, Object> field : changed.entrySet()) {
+                    final ContentValues cv = new ContentValues();
+                    cv.put(PROFILE_ID, id);
+                    cv.put(PROFILE_KEY, field.getKey());
+                    ProfileFieldCodec.encode(cv, field.getValue());
+                    db.insertWithOnConflict(tableName, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                for (String key : removed) {
+                    db.delete(tableName, PROFILE_ID + " = ? AND " + PROFILE_KEY + " = ?", new String[]{id, key});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return true;
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error adding data to table " + tableName + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
+            return false;
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
-        return ret;
     }
 
     /**
@@ -599,12 +961,14 @@ public class DBAdapter {
      * @param inboxMessages ArrayList of type {@link CTMessageDAO}
      */
     @WorkerThread
-    public synchronized void upsertMessages(ArrayList<CTMessageDAO> inboxMessages) {
+    public void upsertMessages(ArrayList<CTMessageDAO> inboxMessages) {
         if (!this.belowMemThreshold()) {
             Logger.v("There is not enough space left on the device to store data, data discarded");
             return;
         }
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             for (CTMessageDAO messageDAO : inboxMessages) {
@@ -618,21 +982,33 @@ public class DBAdapter {
                 cv.put(EXPIRES, messageDAO.getExpires());
                 cv.put(KEY_CREATED_AT, messageDAO.getDate());
                 cv.put(USER_ID, messageDAO.getUserId());
+                cv.put(HAS_MEDIA, messageDAO.containsVideoOrAudio());
                 db.insertWithOnConflict(Table.INBOX_MESSAGES.getName(), null, cv, SQLiteDatabase.CONFLICT_REPLACE);
             }
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error adding data to table " + Table.INBOX_MESSAGES.getName());
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
-    synchronized void cleanUpPushNotifications() {
+    void cleanUpPushNotifications() {
         //In Push_Notifications, KEY_CREATED_AT is stored as a future epoch, i.e. currentTimeMillis() + ttl,
         //so comparing to the current time for removal is correct
         cleanInternal(Table.PUSH_NOTIFICATIONS, 0);
     }
 
+    /**
+     * Builds the filter of stored push ids ahead of the first incoming push
+     */
+    @WorkerThread
+    void loadPushNotificationIds() {
+        if (pushIdFilter == null) {
+            loadPushIdFilter();
+        }
+    }
+
     /**
      * Removes sent events with an _id <= last_id from table
      *
@@ -640,21 +1016,31 @@ public class DBAdapter {
      * @param table  the table to remove events
      */
     @WorkerThread
-    synchronized void cleanupEventsFromLastId(String lastId, Table table) {
+    void cleanupEventsFromLastId(String lastId, Table table) {
         final String tName = table.getName();
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
-            db.delete(tName, "_id <= " + lastId, null);
+            final SQLiteStatement statement = statementCache.get(db, table, "deleteUpTo",
+                    "DELETE FROM " + tName + " WHERE _id <= ?");
+            synchronized (statement) {
+                statement.bindString(1, lastId);
+                updateRowCount(table, -statement.executeUpdateDelete());
+                byteCounts.remove(table);
+                statement.clearBindings();
+            }
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error removing sent data from table " + tName + " Recreating DB");
             deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
-    public synchronized void storePushNotificationId(String id, long ttl) {
+    public void storePushNotificationId(String id, long ttl) {
 
         if (id == null) {
             return;
@@ -670,20 +1056,25 @@ public class DBAdapter {
             ttl = System.currentTimeMillis() + Constants.DEFAULT_PUSH_TTL;
         }
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             final ContentValues cv = new ContentValues();
             cv.put(KEY_DATA, id);
             cv.put(KEY_CREATED_AT, ttl);
             cv.put(IS_READ, 0);
-            db.insert(tableName, null, cv);
+            if (db.insert(tableName, null, cv) >= 0) {
+                addToPushIdFilter(id);
+            }
             rtlDirtyFlag = true;
             Logger.v("Stored PN - " + id + " with TTL - " + ttl);
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error adding data to table " + tableName + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
@@ -692,7 +1083,7 @@ public class DBAdapter {
      *
      * @param table the table to remove events
      */
-    synchronized void cleanupStaleEvents(Table table) {
+    void cleanupStaleEvents(Table table) {
         cleanInternal(table, DATA_EXPIRATION);
     }
 
@@ -703,39 +1094,66 @@ public class DBAdapter {
      * @param table the table to read from
      * @return JSONObject containing the max row ID and a JSONArray of the JSONObject events or null
      */
-    synchronized JSONObject fetchEvents(Table table, final int limit) {
+    JSONObject fetchEvents(Table table, final int limit) {
+        return fetchEvents(table, limit, null, 0, null);
+    }
+
+    /**
+     * Same as {@link #fetchEvents(Table, int)}, but starts after the given row, so that the next batch can be read
+     * while the previous one is still waiting to be removed.
+     *
+     * @param afterId  the last id of the previous batch, or null to start from the oldest event
+     * @param maxBytes stop once the events read reach this many characters, or 0 to only limit by count
+     * @param cursor   receives the size of the events read, may be null
+     */
+    JSONObject fetchEvents(Table table, final int limit, final String afterId, final int maxBytes,
+            final QueueCursor cursor) {
         final String tName = table.getName();
-        Cursor cursor = null;
+        Cursor dbCursor = null;
         String lastId = null;
+        int bytes = 0;
 
         final JSONArray events = new JSONArray();
 
+        final Lock lock = readLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getReadableDatabase();
-            cursor = db.query(tName, null, null, null, null, null, KEY_CREATED_AT + " ASC", String.valueOf(limit));
+            dbCursor = db.query(tName, null, afterId != null ? "_id > ?" : null,
+                    afterId != null ? new String[]{afterId} : null, null, null, QUEUE_ORDER, String.valueOf(limit));
 
-            while (cursor.moveToNext()) {
-                if (cursor.isLast()) {
-                    lastId = cursor.getString(cursor.getColumnIndex("_id"));
-                }
+            while (dbCursor.moveToNext()) {
+                // the last row read marks the end of the batch, whether it ended on the limit or the byte budget
+                lastId = dbCursor.getString(dbCursor.getColumnIndex("_id"));
                 try {
-                    final JSONObject j = new JSONObject(cursor.getString(cursor.getColumnIndex(KEY_DATA)));
+                    final String payload = readPayload(dbCursor);
+                    bytes += payload.length();
+                    final JSONObject j = new JSONObject(payload);
                     events.put(j);
                 } catch (final JSONException e) {
                     // Ignore
+                } catch (final DataFormatException e) {
+                    getConfigLogger().verbose("Dropping unreadable compressed event from " + tName, e);
+                }
+                if (maxBytes > 0 && bytes >= maxBytes) {
+                    break;
                 }
             }
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
             lastId = null;
         } finally {
-            dbHelper.close();
-            if (cursor != null) {
-                cursor.close();
+            closeDatabaseIfNeeded();
+            if (dbCursor != null) {
+                dbCursor.close();
             }
+            lock.unlock();
         }
 
         if (lastId != null) {
+            if (cursor != null) {
+                cursor.setByteCount(bytes);
+            }
             try {
                 final JSONObject ret = new JSONObject();
                 ret.put(lastId, events);
@@ -748,8 +1166,72 @@ public class DBAdapter {
         return null;
     }
 
+    /**
+     * Reads the oldest events of the table into the cursor as they were stored, without parsing them.
+     *
+     * @param table  the table to read from
+     * @param limit  the maximum number of events to read
+     * @param cursor the cursor to fill with the max row ID and the event payloads
+     */
+    void fetchEventPayloads(Table table, final int limit, QueueCursor cursor) {
+        fetchEventPayloads(table, limit, null, 0, cursor);
+    }
+
+    /**
+     * Same as {@link #fetchEventPayloads(Table, int, QueueCursor)}, but starts after the given row.
+     *
+     * @param afterId  the last id of the previous batch, or null to start from the oldest event
+     * @param maxBytes stop once the payloads read reach this many characters, or 0 to only limit by count
+     */
+    void fetchEventPayloads(Table table, final int limit, final String afterId, final int maxBytes,
+            QueueCursor cursor) {
+        final String tName = table.getName();
+        Cursor dbCursor = null;
+        String lastId = null;
+        int bytes = 0;
+
+        final ArrayList<String> payloads = new ArrayList<>();
+
+        final Lock lock = readLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getReadableDatabase();
+            dbCursor = db.query(tName, null, afterId != null ? "_id > ?" : null,
+                    afterId != null ? new String[]{afterId} : null, null, null, QUEUE_ORDER, String.valueOf(limit));
+
+            while (dbCursor.moveToNext()) {
+                lastId = dbCursor.getString(dbCursor.getColumnIndex("_id"));
+                try {
+                    final String payload = readPayload(dbCursor);
+                    bytes += payload.length();
+                    payloads.add(payload);
+                } catch (final DataFormatException e) {
+                    getConfigLogger().verbose("Dropping unreadable compressed event from " + tName, e);
+                }
+                if (maxBytes > 0 && bytes >= maxBytes) {
+                    break;
+                }
+            }
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
+            lastId = null;
+        } finally {
+            closeDatabaseIfNeeded();
+            if (dbCursor != null) {
+                dbCursor.close();
+            }
+            lock.unlock();
+        }
+
+        if (lastId != null) {
+            cursor.setLastId(lastId);
+            cursor.setPayloads(payloads);
+            cursor.setByteCount(bytes);
+        }
+    }
+
     @WorkerThread
-    public synchronized void updatePushNotificationIds(String[] ids) {
+    public void updatePushNotificationIds(String[] ids) {
         if (ids.length == 0) {
             return;
         }
@@ -759,6 +1241,8 @@ public class DBAdapter {
             return;
         }
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             final ContentValues cv = new ContentValues();
@@ -774,9 +1258,10 @@ public class DBAdapter {
         } catch (final SQLiteException e) {
             getConfigLogger()
                     .verbose("Error adding data to table " + Table.PUSH_NOTIFICATIONS.getName() + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
@@ -788,7 +1273,7 @@ public class DBAdapter {
      * @return the number of rows in the table, or DB_OUT_OF_MEMORY_ERROR/DB_UPDATE_ERROR
      */
     @WorkerThread
-    synchronized int storeObject(JSONObject obj, Table table) {
+    int storeObject(JSONObject obj, Table table) {
         if (!this.belowMemThreshold()) {
             Logger.v("There is not enough space left on the device to store data, data discarded");
             return DB_OUT_OF_MEMORY_ERROR;
@@ -798,22 +1283,69 @@ public class DBAdapter {
 
         long count = DB_UPDATE_ERROR;
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            if (insertEvent(db, table, obj.toString(), System.currentTimeMillis()) >= 0) {
+                updateRowCount(table, 1);
+            }
+            enforceQuota(db, table);
+            count = getRowCount(db, table);
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Error adding data to table " + tableName + " Recreating DB");
+            deleteDB();
+        } finally {
+            closeDatabaseIfNeeded();
+            lock.unlock();
+        }
+        return (int) count;
+    }
 
-            final ContentValues cv = new ContentValues();
-            cv.put(KEY_DATA, obj.toString());
-            cv.put(KEY_CREATED_AT, System.currentTimeMillis());
-            db.insert(tableName, null, cv);
+    /**
+     * Adds a list of JSON strings to the DB in a single transaction.
+     *
+     * @param objs  the serialised JSONs to record, in order
+     * @param table the table to insert into
+     * @return the number of rows in the table, or DB_OUT_OF_MEMORY_ERROR/DB_UPDATE_ERROR
+     */
+    @WorkerThread
+    int storeObjects(List<String> objs, Table table) {
+        if (!this.belowMemThreshold()) {
+            Logger.v("There is not enough space left on the device to store data, data discarded");
+            return DB_OUT_OF_MEMORY_ERROR;
+        }
+
+        final String tableName = table.getName();
 
-            String sql = "SELECT COUNT(*) FROM " + tableName;
-            SQLiteStatement statement = db.compileStatement(sql);
-            count = statement.simpleQueryForLong();
+        long count = DB_UPDATE_ERROR;
+
+        final Lock lock = writeLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            final long now = System.currentTimeMillis();
+            int inserted = 0;
+            db.beginTransaction();
+            try {
+                for (String obj : objs) {
+                    if (insertEvent(db, table, obj, now) >= 0) {
+                        inserted++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            updateRowCount(table, inserted);
+            enforceQuota(db, table);
+            count = getRowCount(db, table);
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error adding data to table " + tableName + " Recreating DB");
-            dbHelper.deleteDatabase();
+            deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
         return (int) count;
     }
@@ -823,17 +1355,22 @@ public class DBAdapter {
      *
      * @param table the table to remove events
      */
-    synchronized void removeEvents(Table table) {
+    void removeEvents(Table table) {
         final String tName = table.getName();
 
+        final Lock lock = writeLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getWritableDatabase();
             db.delete(tName, null, null);
+            rowCounts.put(table, 0L);
+            byteCounts.put(table, 0L);
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Error removing all events from table " + tName + " Recreating DB");
             deleteDB();
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
+            lock.unlock();
         }
     }
 
@@ -848,43 +1385,378 @@ public class DBAdapter {
         final long time = (System.currentTimeMillis() - expiration) / 1000;
         final String tName = table.getName();
 
-        try {
-            final SQLiteDatabase db = dbHelper.getWritableDatabase();
-            db.delete(tName, KEY_CREATED_AT + " <= " + time, null);
-        } catch (final SQLiteException e) {
-            getConfigLogger().verbose("Error removing stale event records from " + tName + ". Recreating DB.", e);
-            deleteDB();
-        } finally {
+        int deleted;
+        do {
+            deleted = 0;
+            final Lock lock = writeLock();
+            lock.lock();
+            try {
+                final SQLiteDatabase db = dbHelper.getWritableDatabase();
+                final SQLiteStatement statement = statementCache.get(db, table, "deleteStale",
+                        "DELETE FROM " + tName + " WHERE _id IN (SELECT _id FROM " + tName + " WHERE "
+                                + KEY_CREATED_AT + " <= ? LIMIT " + CLEANUP_CHUNK_SIZE + ")");
+                synchronized (statement) {
+                    statement.bindLong(1, time);
+                    deleted = statement.executeUpdateDelete();
+                    statement.clearBindings();
+                }
+                updateRowCount(table, -deleted);
+                if (deleted > 0) {
+                    byteCounts.remove(table);
+                    if (table == Table.PUSH_NOTIFICATIONS) {
+                        // rebuild without the expired ids
+                        pushIdFilter = null;
+                    }
+                }
+            } catch (final SQLiteException e) {
+                getConfigLogger().verbose("Error removing stale event records from " + tName + ". Recreating DB.", e);
+                deleteDB();
+            } finally {
+                closeDatabaseIfNeeded();
+                lock.unlock();
+            }
+        } while (deleted >= CLEANUP_CHUNK_SIZE);
+    }
+
+    /**
+     * Closes the database after an operation, unless the connection is kept open for the life of the adapter.
+     */
+    private void closeDatabaseIfNeeded() {
+        if (!persistentConnection) {
+            statementCache.clear();
             dbHelper.close();
         }
-
     }
 
     private void deleteDB() {
+        rowCounts.clear();
+        byteCounts.clear();
+        pushIdFilter = null;
+        statementCache.clear();
         dbHelper.deleteDatabase();
     }
 
-    synchronized private String fetchPushNotificationId(String id) {
+    private long insertEvent(SQLiteDatabase db, Table table, String data, long createdAt) {
+        final SQLiteStatement statement = statementCache.get(db, table, "insert",
+                "INSERT INTO " + table.getName() + " (" + KEY_DATA + ", " + KEY_CREATED_AT + ", " + KEY_ENCODING
+                        + ") VALUES (?, ?, ?)");
+        synchronized (statement) {
+            final long storedLength;
+            if (compressEvents) {
+                final byte[] compressed = payloadCodec.compress(data);
+                storedLength = compressed.length;
+                statement.bindBlob(1, compressed);
+                statement.bindLong(3, EventPayloadCodec.ENCODING_DEFLATE_V1);
+            } else {
+                storedLength = data.length();
+                statement.bindString(1, data);
+                statement.bindLong(3, EventPayloadCodec.ENCODING_TEXT);
+            }
+            statement.bindLong(2, createdAt);
+            final long rowId = statement.executeInsert();
+            statement.clearBindings();
+            if (rowId >= 0) {
+                updateByteCount(table, storedLength);
+            }
+            return rowId;
+        }
+    }
+
+    /**
+     * Called with the write lock held, after the id has been stored
+     */
+    private void addToPushIdFilter(String id) {
+        final PushIdBloomFilter filter = pushIdFilter;
+        if (filter == null) {
+            return;
+        }
+        filter.put(id);
+        if (filter.isFull()) {
+            pushIdFilter = null;
+        }
+    }
+
+    /**
+     * @return false only if the id is definitely not stored, building the filter from the DB if needed
+     */
+    private boolean mightContainPushNotificationId(String id) {
+        PushIdBloomFilter filter = pushIdFilter;
+        if (filter == null) {
+            filter = loadPushIdFilter();
+        }
+        return filter == null || filter.mightContain(id);
+    }
+
+    private PushIdBloomFilter loadPushIdFilter() {
         final String tName = Table.PUSH_NOTIFICATIONS.getName();
         Cursor cursor = null;
-        String pushId = "";// TODO: fix dupe failing
 
+        final Lock lock = readLock();
+        lock.lock();
         try {
             final SQLiteDatabase db = dbHelper.getReadableDatabase();
-            cursor = db.query(tName, null, KEY_DATA + " =?", new String[]{id}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                pushId = cursor.getString(cursor.getColumnIndex(KEY_DATA));
+            cursor = db.query(tName, new String[]{KEY_DATA}, null, null, null, null, null);
+            final PushIdBloomFilter filter = new PushIdBloomFilter(cursor.getCount() * 2);
+            while (cursor.moveToNext()) {
+                filter.put(cursor.getString(0));
             }
-            Logger.v("Fetching PID for check - " + pushId);
+            // writers hold the write lock, so no id can have been stored since the query
+            pushIdFilter = filter;
+            return filter;
         } catch (final SQLiteException e) {
             getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
+            return null;
         } finally {
-            dbHelper.close();
+            closeDatabaseIfNeeded();
             if (cursor != null) {
                 cursor.close();
             }
+            lock.unlock();
         }
-        return pushId;
+    }
+
+    private ArrayList<CTMessageDAO> queryMessages(String selection, String[] selectionArgs, String limit) {
+        final String tName = Table.INBOX_MESSAGES.getName();
+        Cursor cursor;
+        ArrayList<CTMessageDAO> messageDAOArrayList = new ArrayList<>();
+        final Lock lock = readLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            cursor = db.query(tName, null, selection, selectionArgs, null, null, INBOX_ORDER, limit);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    CTMessageDAO ctMessageDAO = new CTMessageDAO();
+                    ctMessageDAO.setId(cursor.getString(cursor.getColumnIndex(_ID)));
+                    ctMessageDAO.setJsonData(new JSONObject(cursor.getString(cursor.getColumnIndex(KEY_DATA))));
+                    ctMessageDAO.setWzrkParams(new JSONObject(cursor.getString(cursor.getColumnIndex(WZRKPARAMS))));
+                    ctMessageDAO.setDate(cursor.getLong(cursor.getColumnIndex(KEY_CREATED_AT)));
+                    ctMessageDAO.setExpires(cursor.getLong(cursor.getColumnIndex(EXPIRES)));
+                    ctMessageDAO.setRead(cursor.getInt(cursor.getColumnIndex(IS_READ)));
+                    ctMessageDAO.setUserId(cursor.getString(cursor.getColumnIndex(USER_ID)));
+                    ctMessageDAO.setTags(cursor.getString(cursor.getColumnIndex(TAGS)));
+                    ctMessageDAO.setCampaignId(cursor.getString(cursor.getColumnIndex(CAMPAIGN)));
+                    messageDAOArrayList.add(ctMessageDAO);
+                }
+                cursor.close();
+            }
+            return messageDAOArrayList;
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Error retrieving records from " + tName, e);
+            return null;
+        } catch (JSONException e) {
+            getConfigLogger().verbose("Error retrieving records from " + tName, e.getMessage());
+            return null;
+        } finally {
+            closeDatabaseIfNeeded();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the table couldn't be read
+     */
+    private boolean queryUserProfileFields(String selection, String[] selectionArgs, JSONObject profile) {
+        final String tName = Table.USER_PROFILE_FIELDS.getName();
+        Cursor cursor = null;
+
+        final Lock lock = readLock();
+        lock.lock();
+        try {
+            final SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.query(tName, null, selection, selectionArgs, null, null, null);
+            while (cursor.moveToNext()) {
+                final Object value = ProfileFieldCodec.decode(cursor);
+                if (value != null) {
+                    profile.put(cursor.getString(cursor.getColumnIndex(PROFILE_KEY)), value);
+                }
+            }
+            return true;
+        } catch (final SQLiteException e) {
+            getConfigLogger().verbose("Could not fetch records out of database " + tName + ".", e);
+            return false;
+        } catch (final JSONException e) {
+            getConfigLogger().verbose("Could not read profile value from " + tName + ".", e);
+            return false;
+        } finally {
+            closeDatabaseIfNeeded();
+            if (cursor != null) {
+                cursor.close();
+            }
+            lock.unlock();
+        }
+    }
+
+    private static long nowInSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Reads the event payload of the current row, inflating it if it was stored compressed.
+     */
+    private String readPayload(Cursor cursor) throws DataFormatException {
+        final int dataIndex = cursor.getColumnIndex(KEY_DATA);
+        if (cursor.getInt(cursor.getColumnIndex(KEY_ENCODING)) == EventPayloadCodec.ENCODING_DEFLATE_V1) {
+            return payloadCodec.decompress(cursor.getBlob(dataIndex));
+        }
+        return cursor.getString(dataIndex);
+    }
+
+    private long getRowCount(SQLiteDatabase db, Table table) {
+        Long count = rowCounts.get(table);
+        if (count == null) {
+            SQLiteStatement statement = db.compileStatement("SELECT COUNT(*) FROM " + table.getName());
+            try {
+                count = statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+            rowCounts.put(table, count);
+        }
+        return count;
+    }
+
+    private void updateRowCount(Table table, long delta) {
+        Long count = rowCounts.get(table);
+        if (count != null) {
+            rowCounts.put(table, Math.max(0, count + delta));
+        }
+    }
+
+    private long getByteCount(SQLiteDatabase db, Table table) {
+        Long count = byteCounts.get(table);
+        if (count == null) {
+            SQLiteStatement statement = db.compileStatement(
+                    "SELECT TOTAL(LENGTH(" + KEY_DATA + ")) FROM " + table.getName());
+            try {
+                count = statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+            byteCounts.put(table, count);
+        }
+        return count;
+    }
+
+    private void updateByteCount(Table table, long delta) {
+        Long count = byteCounts.get(table);
+        if (count != null) {
+            byteCounts.put(table, Math.max(0, count + delta));
+        }
+    }
+
+    /**
+     * Evicts events until the table is within the configured quota. Eviction goes a tenth below the quota so that
+     * a queue sitting at its limit isn't scanned again on every insert.
+     */
+    private void enforceQuota(SQLiteDatabase db, Table table) {
+        if (queueMaxRows <= 0 && queueMaxBytes <= 0) {
+            return;
+        }
+        for (int pass = 0; pass < MAX_EVICTION_PASSES; pass++) {
+            final long rows = getRowCount(db, table);
+            long count = 0;
+            if (queueMaxRows > 0 && rows > queueMaxRows) {
+                count = rows - (queueMaxRows - queueMaxRows / 10);
+            }
+            if (queueMaxBytes > 0 && rows > 0) {
+                final long bytes = getByteCount(db, table);
+                if (bytes > queueMaxBytes) {
+                    final long averageBytes = Math.max(1, bytes / rows);
+                    final long bytesToFree = bytes - (queueMaxBytes - queueMaxBytes / 10);
+                    count = Math.max(count, (bytesToFree + averageBytes - 1) / averageBytes);
+                }
+            }
+            if (count <= 0 || evict(db, table, (int) Math.min(count, rows)) <= 0) {
+                return;
+            }
+        }
+    }
+
+    private int evict(SQLiteDatabase db, Table table, int count) {
+        final String tName = table.getName();
+
+        final ArrayList<QueuedEvent> candidates = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(tName, new String[]{"_id", KEY_DATA, KEY_ENCODING}, null, null, null, null,
+                    QUEUE_ORDER, String.valueOf(Math.max(count, EVICTION_SCAN_LIMIT)));
+            while (cursor.moveToNext()) {
+                String payload;
+                try {
+                    payload = readPayload(cursor);
+                } catch (final DataFormatException e) {
+                    payload = "";
+                }
+                candidates.add(new QueuedEvent(cursor.getLong(0), payload));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        final LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        try {
+            for (Long id : evictionPolicy.selectEvictions(table, candidates, count)) {
+                if (ids.size() >= count) {
+                    break;
+                }
+                ids.add(id);
+            }
+        } catch (Throwable t) {
+            getConfigLogger().verbose("Eviction policy failed, dropping the oldest events from " + tName, t);
+        }
+        for (QueuedEvent candidate : candidates) {
+            if (ids.size() >= count) {
+                break;
+            }
+            ids.add(candidate.getId());
+        }
+
+        int deleted = 0;
+        final StringBuilder idList = new StringBuilder();
+        final Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            idList.setLength(0);
+            for (int i = 0; i < CLEANUP_CHUNK_SIZE && iterator.hasNext(); i++) {
+                if (i > 0) {
+                    idList.append(',');
+                }
+                idList.append(iterator.next());
+            }
+            deleted += db.delete(tName, "_id IN (" + idList + ")", null);
+        }
+
+        updateRowCount(table, -deleted);
+        byteCounts.remove(table);
+        final Long evicted = evictionCounts.get(table);
+        evictionCounts.put(table, (evicted != null ? evicted : 0) + deleted);
+        getConfigLogger().verbose("Evicted " + deleted + " events from " + tName + " to stay within the queue quota");
+        return deleted;
+    }
+
+    private static EvictionPolicy createEvictionPolicy(CleverTapInstanceConfig config) {
+        final String policy = config.getQueueEvictionPolicy();
+        if (Constants.QUEUE_EVICTION_DROP_LOW_PRIORITY.equals(policy)) {
+            return new LowPriorityEvictionPolicy(config.getLowPriorityEventNames());
+        }
+        if (Constants.QUEUE_EVICTION_COLLAPSE_NOTIFICATION_VIEWED.equals(policy)) {
+            return new CollapseNotificationViewedEvictionPolicy();
+        }
+        return new DropOldestEvictionPolicy();
+    }
+
+    /**
+     * With a persistent WAL connection readers can run concurrently. Otherwise every operation closes the
+     * database when it is done, so reads must be as exclusive as writes.
+     */
+    private Lock readLock() {
+        return persistentConnection ? dbLock.readLock() : dbLock.writeLock();
+    }
+
+    private Lock writeLock() {
+        return dbLock.writeLock();
     }
 
     private Logger getConfigLogger() {
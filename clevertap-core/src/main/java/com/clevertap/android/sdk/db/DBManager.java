@@ -9,22 +9,70 @@ import com.clevertap.android.sdk.Constants;
 import com.clevertap.android.sdk.StorageHelper;
 import com.clevertap.android.sdk.db.DBAdapter.Table;
 import com.clevertap.android.sdk.events.EventGroup;
+import com.clevertap.android.sdk.task.CTExecutorFactory;
+import com.clevertap.android.sdk.task.MainLooperHandler;
+import com.clevertap.android.sdk.task.Task;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class DBManager extends BaseDatabaseManager {
 
+    // the range and id of the last batch sent from each table, until it is removed; guarded by the event lock
+    private final HashMap<DBAdapter.Table, String[]> batchPins = new HashMap<>();
+
     private DBAdapter dbAdapter;
 
     private final CTLockManager ctLockManager;
 
+    // events are held for commit while this is above 0; guarded by the event lock
+    private int eventBatchDepth = 0;
+
     private final CleverTapInstanceConfig config;
 
+    // picks the table of the next batch when priority queues are enabled, null otherwise; guarded by the event lock
+    private final QueueDrainScheduler drainScheduler;
+
+    private Runnable groupCommitRunnable = null;
+
+    private boolean groupCommitScheduled = false;
+
+    private final MainLooperHandler mainLooperHandler;
+
+    private int pendingEventCount = 0;
+
+    private volatile int queueClearCount = 0;
+
+    // serialised events waiting for the next group commit, keyed by destination table; guarded by the event lock
+    private final HashMap<DBAdapter.Table, ArrayList<String>> pendingEvents = new HashMap<>();
+
+    private final HashSet<String> priorityEventNames = new HashSet<>();
+
     public DBManager(CleverTapInstanceConfig config,
-            CTLockManager ctLockManager) {
+            CTLockManager ctLockManager,
+            MainLooperHandler mainLooperHandler) {
         this.config = config;
         this.ctLockManager = ctLockManager;
+        this.mainLooperHandler = mainLooperHandler;
+        if (config.isPriorityQueuesEnabled()) {
+            drainScheduler = new QueueDrainScheduler(
+                    new DBAdapter.Table[]{DBAdapter.Table.PROFILE_EVENTS, DBAdapter.Table.PRIORITY_EVENTS,
+                            DBAdapter.Table.EVENTS},
+                    new int[]{config.getIdentityQueueWeight(), config.getRevenueQueueWeight(),
+                            config.getBehaviouralQueueWeight()});
+            priorityEventNames.add(Constants.CHARGED_EVENT);
+            priorityEventNames.addAll(Arrays.asList(config.getPriorityEventNames()));
+        } else {
+            drainScheduler = null;
+        }
     }
 
     @WorkerThread
@@ -32,14 +80,30 @@ public class DBManager extends BaseDatabaseManager {
     public DBAdapter loadDBAdapter(final Context context) {
         if (dbAdapter == null) {
             dbAdapter = new DBAdapter(context, config);
-            dbAdapter.cleanupStaleEvents(DBAdapter.Table.EVENTS);
-            dbAdapter.cleanupStaleEvents(DBAdapter.Table.PROFILE_EVENTS);
-            dbAdapter.cleanupStaleEvents(DBAdapter.Table.PUSH_NOTIFICATION_VIEWED);
-            dbAdapter.cleanUpPushNotifications();
+            cleanupStaleEventsAsync(dbAdapter);
         }
         return dbAdapter;
     }
 
+    /**
+     * Removes expired rows in the background, so that a large offline backlog doesn't hold up the first caller
+     */
+    private void cleanupStaleEventsAsync(final DBAdapter adapter) {
+        Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+        task.execute("DBManager#cleanupStaleEvents", new Callable<Void>() {
+            @Override
+            public Void call() {
+                adapter.cleanupStaleEvents(DBAdapter.Table.EVENTS);
+                adapter.cleanupStaleEvents(DBAdapter.Table.PROFILE_EVENTS);
+                adapter.cleanupStaleEvents(DBAdapter.Table.PRIORITY_EVENTS);
+                adapter.cleanupStaleEvents(DBAdapter.Table.PUSH_NOTIFICATION_VIEWED);
+                adapter.cleanUpPushNotifications();
+                adapter.loadPushNotificationIds();
+                return null;
+            }
+        });
+    }
+
     /**
      * Only call async
      */
@@ -47,14 +111,18 @@ public class DBManager extends BaseDatabaseManager {
     public void clearQueues(final Context context) {
         synchronized (ctLockManager.getEventLock()) {
 
-            DBAdapter adapter = loadDBAdapter(context);
-            DBAdapter.Table tableName = DBAdapter.Table.EVENTS;
+            commitPendingEvents(context);
 
-            adapter.removeEvents(tableName);
-            tableName = DBAdapter.Table.PROFILE_EVENTS;
-            adapter.removeEvents(tableName);
+            removeQueuedEvents(context, DBAdapter.Table.EVENTS);
+            removeQueuedEvents(context, DBAdapter.Table.PROFILE_EVENTS);
+            removeQueuedEvents(context, DBAdapter.Table.PRIORITY_EVENTS);
+            setBatchPin(context, DBAdapter.Table.EVENTS, null);
+            setBatchPin(context, DBAdapter.Table.PROFILE_EVENTS, null);
+            setBatchPin(context, DBAdapter.Table.PRIORITY_EVENTS, null);
 
             clearUserContext(context);
+            // only after the prefs are cleared, so that nothing reads the old values back into a cache
+            queueClearCount++;
         }
     }
 
@@ -86,40 +154,116 @@ public class DBManager extends BaseDatabaseManager {
 
     @Override
     QueueCursor getPushNotificationViewedQueuedEvents(final Context context, final int batchSize,
-            final QueueCursor previousCursor) {
-        return getQueueCursor(context, DBAdapter.Table.PUSH_NOTIFICATION_VIEWED, batchSize, previousCursor);
+            final int maxBytes, final QueueCursor previousCursor) {
+        return getQueueCursor(context, DBAdapter.Table.PUSH_NOTIFICATION_VIEWED, batchSize, maxBytes,
+                previousCursor);
     }
 
     @Override
-    QueueCursor getQueueCursor(final Context context, final Table table, final int batchSize,
+    QueueCursor getQueueCursor(final Context context, final Table table, final int batchSize, final int maxBytes,
             final QueueCursor previousCursor) {
         synchronized (ctLockManager.getEventLock()) {
-            DBAdapter adapter = loadDBAdapter(context);
+            // make sure events still waiting for a group commit go out with this flush
+            commitPendingEvents(context);
+
             DBAdapter.Table tableName = (previousCursor != null) ? previousCursor.getTableName() : table;
 
             // if previousCursor that means the batch represented by the previous cursor was processed so remove those from the db
             if (previousCursor != null) {
-                adapter.cleanupEventsFromLastId(previousCursor.getLastId(), previousCursor.getTableName());
+                removeSentBatch(context, previousCursor);
             }
 
             // grab the new batch
             QueueCursor newCursor = new QueueCursor();
             newCursor.setTableName(tableName);
-            JSONObject queuedDBEvents = adapter.fetchEvents(tableName, batchSize);
-            newCursor = updateCursorForDBObject(queuedDBEvents, newCursor);
+            return fetchHeadBatch(context, tableName, batchSize, maxBytes, newCursor);
+        }
+    }
+
+    @Override
+    public QueueCursor getNextQueuedEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor inFlightCursor) {
+        synchronized (ctLockManager.getEventLock()) {
+            commitPendingEvents(context);
+
+            if (drainScheduler != null) {
+                return getNextPriorityQueuedEvents(context, batchSize, maxBytes, inFlightCursor);
+            }
+
+            final DBAdapter.Table tableName = inFlightCursor.getTableName();
+            QueueCursor newCursor = new QueueCursor();
+            newCursor.setTableName(tableName);
+            newCursor = fetchQueuedEvents(context, tableName, batchSize, maxBytes, inFlightCursor, newCursor);
+
+            // same order as getQueuedDBEvents, profile events follow the regular ones
+            if (newCursor.isEmpty() && tableName.equals(DBAdapter.Table.EVENTS)) {
+                newCursor = new QueueCursor();
+                newCursor.setTableName(DBAdapter.Table.PROFILE_EVENTS);
+                newCursor = fetchHeadBatch(context, DBAdapter.Table.PROFILE_EVENTS, batchSize, maxBytes, newCursor);
+            }
+
+            if (newCursor.isEmpty() && !newCursor.getTableName().equals(DBAdapter.Table.PRIORITY_EVENTS)) {
+                newCursor = new QueueCursor();
+                newCursor.setTableName(DBAdapter.Table.PRIORITY_EVENTS);
+                newCursor = fetchHeadBatch(context, DBAdapter.Table.PRIORITY_EVENTS, batchSize, maxBytes, newCursor);
+            }
+
+            return newCursor.isEmpty() ? null : newCursor;
+        }
+    }
 
-            return newCursor;
+    @Override
+    public int getQueueClearCount() {
+        return queueClearCount;
+    }
+
+    @Override
+    public void removeSentQueuedEvents(final Context context, final QueueCursor sentCursor) {
+        synchronized (ctLockManager.getEventLock()) {
+            removeSentBatch(context, sentCursor);
         }
     }
 
     @Override
-    QueueCursor getQueuedDBEvents(final Context context, final int batchSize, final QueueCursor previousCursor) {
+    public String getBatchId(final Context context, final QueueCursor cursor) {
+        synchronized (ctLockManager.getEventLock()) {
+            final DBAdapter.Table table = cursor.getTableName();
+            final String count = String.valueOf(cursor.length());
+            final String[] pin = getBatchPin(context, table);
+            final String end = getBatchEnd(cursor);
+            if (pin != null && pin[0].equals(end) && pin[1].equals(count)) {
+                return pin[2];
+            }
+            // the random part keeps ids unique when row ids or log offsets start over after the queue is cleared
+            final String batchId = table.getName() + ":" + end + ":" + UUID.randomUUID();
+            setBatchPin(context, table, new String[]{end, count, batchId});
+            return batchId;
+        }
+    }
+
+    @Override
+    QueueCursor getQueuedDBEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor previousCursor) {
 
         synchronized (ctLockManager.getEventLock()) {
-            QueueCursor newCursor = getQueueCursor(context, DBAdapter.Table.EVENTS, batchSize, previousCursor);
+            if (drainScheduler != null) {
+                commitPendingEvents(context);
+                if (previousCursor != null) {
+                    removeSentBatch(context, previousCursor);
+                }
+                return getNextPriorityQueuedEvents(context, batchSize, maxBytes, null);
+            }
+
+            QueueCursor newCursor = getQueueCursor(context, DBAdapter.Table.EVENTS, batchSize, maxBytes,
+                    previousCursor);
 
             if (newCursor.isEmpty() && newCursor.getTableName().equals(DBAdapter.Table.EVENTS)) {
-                newCursor = getQueueCursor(context, DBAdapter.Table.PROFILE_EVENTS, batchSize, null);
+                newCursor = getQueueCursor(context, DBAdapter.Table.PROFILE_EVENTS, batchSize, maxBytes, null);
+            }
+
+            // left behind if priority queues were turned off after they were queued
+            if (newCursor.isEmpty() && !newCursor.getTableName().equals(DBAdapter.Table.PRIORITY_EVENTS)) {
+                newCursor = getQueueCursor(context, DBAdapter.Table.PRIORITY_EVENTS, batchSize, maxBytes, null);
             }
 
             return newCursor.isEmpty() ? null : newCursor;
@@ -129,21 +273,38 @@ public class DBManager extends BaseDatabaseManager {
     @SuppressWarnings("SameParameterValue")
     public QueueCursor getQueuedEvents(final Context context, final int batchSize, final QueueCursor previousCursor,
             final EventGroup eventGroup) {
+        return getQueuedEvents(context, batchSize, 0, previousCursor, eventGroup);
+    }
+
+    @Override
+    public QueueCursor getQueuedEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor previousCursor, final EventGroup eventGroup) {
         if (eventGroup == EventGroup.PUSH_NOTIFICATION_VIEWED) {
             config.getLogger().verbose(config.getAccountId(), "Returning Queued Notification Viewed events");
-            return getPushNotificationViewedQueuedEvents(context, batchSize, previousCursor);
+            return getPushNotificationViewedQueuedEvents(context, batchSize, maxBytes, previousCursor);
         } else {
             config.getLogger().verbose(config.getAccountId(), "Returning Queued events");
-            return getQueuedDBEvents(context, batchSize, previousCursor);
+            return getQueuedDBEvents(context, batchSize, maxBytes, previousCursor);
         }
     }
 
+    /**
+     * Queues an event to the DB. When group commit is enabled on the config the event may be held in memory for
+     * up to the commit window, but it is always written before the queue is read for a flush or cleared. With
+     * priority queues enabled, Charged and priority events are queued in a table of their own.
+     */
     //Event
     @WorkerThread
     @Override
     public void queueEventToDB(final Context context, final JSONObject event, final int type) {
-        DBAdapter.Table table = (type == Constants.PROFILE_EVENT) ? DBAdapter.Table.PROFILE_EVENTS
-                : DBAdapter.Table.EVENTS;
+        DBAdapter.Table table;
+        if (type == Constants.PROFILE_EVENT) {
+            table = DBAdapter.Table.PROFILE_EVENTS;
+        } else if (type == Constants.RAISED_EVENT && priorityEventNames.contains(event.optString("evtName"))) {
+            table = DBAdapter.Table.PRIORITY_EVENTS;
+        } else {
+            table = DBAdapter.Table.EVENTS;
+        }
         queueEventInternal(context, event, table);
     }
 
@@ -174,11 +335,199 @@ public class DBManager extends BaseDatabaseManager {
         return cursor;
     }
 
+    @Override
+    public void beginEventBatch() {
+        synchronized (ctLockManager.getEventLock()) {
+            eventBatchDepth++;
+        }
+    }
+
+    @WorkerThread
+    @Override
+    public void endEventBatch(final Context context) {
+        synchronized (ctLockManager.getEventLock()) {
+            if (eventBatchDepth > 0) {
+                eventBatchDepth--;
+            }
+            if (eventBatchDepth == 0) {
+                commitPendingEvents(context);
+            }
+        }
+    }
+
+    /**
+     * Writes all events held for group commit to the database, one transaction per table.
+     */
+    @WorkerThread
+    @Override
+    public void commitPendingEvents(final Context context) {
+        synchronized (ctLockManager.getEventLock()) {
+            if (pendingEventCount == 0) {
+                return;
+            }
+            for (Map.Entry<DBAdapter.Table, ArrayList<String>> entry : pendingEvents.entrySet()) {
+                ArrayList<String> events = entry.getValue();
+                if (events.isEmpty()) {
+                    continue;
+                }
+                int returnCode = storeQueuedEvents(context, entry.getKey(), events);
+                if (returnCode > 0) {
+                    config.getLogger().verbose(config.getAccountId(),
+                            "Group committed " + events.size() + " events to DB table " + entry.getKey());
+                } else {
+                    config.getLogger().verbose(config.getAccountId(), "Failed to group commit " + events.size()
+                            + " events to DB table " + entry.getKey() + ", error code " + returnCode);
+                }
+                events.clear();
+            }
+            pendingEventCount = 0;
+        }
+    }
+
+    /**
+     * Reads the next batch of the table into the cursor. Called with the event lock held.
+     *
+     * @param maxBytes the byte budget of the batch, or 0 to only limit it by count
+     * @param after    a batch of the same table that is still queued, to read the batch that follows it, or null
+     *                 to read from the head of the queue
+     */
+    QueueCursor fetchQueuedEvents(final Context context, final DBAdapter.Table table, final int batchSize,
+            final int maxBytes, final QueueCursor after, final QueueCursor cursor) {
+        DBAdapter adapter = loadDBAdapter(context);
+        final String afterId = after != null ? after.getLastId() : null;
+        if (config.isFlushRawEventPayloads()) {
+            adapter.fetchEventPayloads(table, batchSize, afterId, maxBytes, cursor);
+            return cursor;
+        }
+        JSONObject queuedDBEvents = adapter.fetchEvents(table, batchSize, afterId, maxBytes, cursor);
+        return updateCursorForDBObject(queuedDBEvents, cursor);
+    }
+
+    /**
+     * Reads the next batch from the table picked by the drain scheduler, moving on to the next table in its order
+     * while the picked one is empty. Only the in-flight batch may still be queued, earlier batches must have been
+     * removed. The batch is charged to its table once it has been sent and removed. Called with the event lock held.
+     *
+     * @param inFlightCursor the batch being sent, which the batch read from its table has to follow, or null
+     * @return the batch, or null if every table is empty
+     */
+    private QueueCursor getNextPriorityQueuedEvents(final Context context, final int batchSize, final int maxBytes,
+            final QueueCursor inFlightCursor) {
+        final DBAdapter.Table inFlightTable = inFlightCursor != null ? inFlightCursor.getTableName() : null;
+        for (DBAdapter.Table table : drainScheduler.getDrainOrder(inFlightTable)) {
+            QueueCursor newCursor = new QueueCursor();
+            newCursor.setTableName(table);
+            if (inFlightCursor != null && table.equals(inFlightCursor.getTableName())) {
+                newCursor = fetchQueuedEvents(context, table, batchSize, maxBytes, inFlightCursor, newCursor);
+            } else {
+                newCursor = fetchHeadBatch(context, table, batchSize, maxBytes, newCursor);
+            }
+            if (!newCursor.isEmpty()) {
+                return newCursor;
+            }
+            drainScheduler.onEmpty(table);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the batch at the head of the table. A batch that was sent without being removed is read again with
+     * exactly its own events, whatever the batch size is now, so that it keeps its batch id. Called with the event
+     * lock held.
+     */
+    private QueueCursor fetchHeadBatch(final Context context, final DBAdapter.Table table, final int batchSize,
+            final int maxBytes, final QueueCursor cursor) {
+        final String[] pin = getBatchPin(context, table);
+        if (pin != null) {
+            return fetchQueuedEvents(context, table, Integer.parseInt(pin[1]), 0, null, cursor);
+        }
+        return fetchQueuedEvents(context, table, batchSize, maxBytes, null, cursor);
+    }
+
+    /**
+     * @return the last id, event count and batch id of the last batch sent from the table, or null
+     */
+    private String[] getBatchPin(final Context context, final DBAdapter.Table table) {
+        if (!batchPins.containsKey(table)) {
+            final String stored = StorageHelper.getString(context, getBatchPinKey(table), null);
+            final String[] pin = stored != null ? stored.split("\\|", 3) : null;
+            batchPins.put(table, pin != null && pin.length == 3 ? pin : null);
+        }
+        return batchPins.get(table);
+    }
+
+    /**
+     * @return where the batch ends, telling row ids and event log offsets apart
+     */
+    private String getBatchEnd(final QueueCursor cursor) {
+        return cursor.isFromEventLog() ? "log" + cursor.getLastId() : cursor.getLastId();
+    }
+
+    private String getBatchPinKey(final DBAdapter.Table table) {
+        return StorageHelper.storageKeyWithSuffix(config, Constants.KEY_BATCH_PIN + ":" + table.getName());
+    }
+
+    private void removeSentBatch(final Context context, final QueueCursor sentCursor) {
+        removeSentEvents(context, sentCursor);
+        if (drainScheduler != null) {
+            drainScheduler.onDrained(sentCursor.getTableName());
+        }
+        final String[] pin = getBatchPin(context, sentCursor.getTableName());
+        if (pin != null && pin[0].equals(getBatchEnd(sentCursor))) {
+            setBatchPin(context, sentCursor.getTableName(), null);
+        }
+    }
+
+    private void setBatchPin(final Context context, final DBAdapter.Table table, final String[] pin) {
+        batchPins.put(table, pin);
+        if (pin != null) {
+            StorageHelper.putString(context, getBatchPinKey(table), pin[0] + "|" + pin[1] + "|" + pin[2]);
+        } else {
+            StorageHelper.remove(context, getBatchPinKey(table));
+        }
+    }
+
+    /**
+     * Removes all events of the table. Called with the event lock held.
+     */
+    void removeQueuedEvents(final Context context, final DBAdapter.Table table) {
+        loadDBAdapter(context).removeEvents(table);
+    }
+
+    /**
+     * Removes the events of a batch that has been sent. Called with the event lock held.
+     */
+    void removeSentEvents(final Context context, final QueueCursor sentCursor) {
+        loadDBAdapter(context).cleanupEventsFromLastId(sentCursor.getLastId(), sentCursor.getTableName());
+    }
+
+    /**
+     * Stores one event. Called with the event lock held.
+     *
+     * @return the number of events in the table, or a DBAdapter error code
+     */
+    int storeQueuedEvent(final Context context, final DBAdapter.Table table, final JSONObject event) {
+        return loadDBAdapter(context).storeObject(event, table);
+    }
+
+    /**
+     * Stores serialised events in order. Called with the event lock held.
+     *
+     * @return the number of events in the table, or a DBAdapter error code
+     */
+    int storeQueuedEvents(final Context context, final DBAdapter.Table table, final List<String> events) {
+        return loadDBAdapter(context).storeObjects(events, table);
+    }
+
     @WorkerThread
     private void queueEventInternal(final Context context, final JSONObject event, DBAdapter.Table table) {
         synchronized (ctLockManager.getEventLock()) {
-            DBAdapter adapter = loadDBAdapter(context);
-            int returnCode = adapter.storeObject(event, table);
+            if (config.getEventGroupCommitWindow() > 0 || eventBatchDepth > 0) {
+                queueEventForGroupCommit(context, event, table);
+                return;
+            }
+
+            int returnCode = storeQueuedEvent(context, table, event);
 
             if (returnCode > 0) {
                 config.getLogger().debug(config.getAccountId(), "Queued event: " + event.toString());
@@ -188,4 +537,52 @@ public class DBManager extends BaseDatabaseManager {
             }
         }
     }
-}
\ No newline at end of file
+
+    private void queueEventForGroupCommit(final Context context, final JSONObject event, DBAdapter.Table table) {
+        ArrayList<String> events = pendingEvents.get(table);
+        if (events == null) {
+            events = new ArrayList<>();
+            pendingEvents.put(table, events);
+        }
+        // serialise now so that later changes to the event object can't leak into the stored payload
+        final String payload = event.toString();
+        events.add(payload);
+        pendingEventCount++;
+        config.getLogger().debug(config.getAccountId(), "Queued event: " + payload);
+        config.getLogger().verbose(config.getAccountId(),
+                "Held event for group commit to DB table " + table + ": " + payload);
+
+        if (pendingEventCount >= config.getEventGroupCommitMaxBatchSize()) {
+            commitPendingEvents(context);
+        } else {
+            scheduleGroupCommit(context);
+        }
+    }
+
+    private void scheduleGroupCommit(final Context context) {
+        // the window starts with the first pending event so that no event waits longer than the window
+        if (groupCommitScheduled || config.getEventGroupCommitWindow() <= 0) {
+            return;
+        }
+        if (groupCommitRunnable == null) {
+            groupCommitRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+                    task.execute("DBManager#commitPendingEvents", new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            synchronized (ctLockManager.getEventLock()) {
+                                groupCommitScheduled = false;
+                                commitPendingEvents(context);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            };
+        }
+        groupCommitScheduled = true;
+        mainLooperHandler.postDelayed(groupCommitRunnable, config.getEventGroupCommitWindow());
+    }
+}
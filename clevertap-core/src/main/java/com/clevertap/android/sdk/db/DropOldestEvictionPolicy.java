@@ -0,0 +1,22 @@
+package com.clevertap.android.sdk.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops the oldest events first, so the queue keeps the most recent activity.
+ */
+class DropOldestEvictionPolicy implements EvictionPolicy {
+
+    @Override
+    public List<Long> selectEvictions(DBAdapter.Table table, List<QueuedEvent> candidates, int count) {
+        final ArrayList<Long> ids = new ArrayList<>();
+        for (QueuedEvent candidate : candidates) {
+            if (ids.size() >= count) {
+                break;
+            }
+            ids.add(candidate.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,407 @@
+package com.clevertap.android.sdk.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only queue of event payloads, stored as a series of memory mapped segment files.
+ * <p>
+ * Every event is a record of {@code [length][crc32][UTF-8 payload]}. Positions in the log are logical offsets that
+ * keep growing across segments; each segment file is named after the offset of its first record. Consumers read
+ * from the committed offset and commit the offset after the last record they've sent, which replaces deleting rows
+ * by id. Segments that lie entirely before the committed offset are deleted.
+ * <p>
+ * The log can be capped at a number of segments, beyond which the oldest segment is dropped whether it was sent or
+ * not, and segments last written before a cutoff can be dropped with {@link #expire(long)}. A new segment is only
+ * created while the disk has room for it, otherwise the append fails.
+ * <p>
+ * Writes go through the page cache like any mapped file, so they survive the process dying but not necessarily a
+ * power loss. A record torn by a crash fails its CRC and ends the log there when it is reopened. The committed offset
+ * is synced to disk, but a batch that was sent and not yet committed when the process died is read and sent again,
+ * so delivery is at least once.
+ * <p>
+ * Java can't unmap a buffer, so the mapping of a deleted segment, and the disk space behind it, is only released once
+ * the buffer has been garbage collected. The log holds on to at most the active segment and the one being read.
+ */
+class EventLog {
+
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final String COMMIT_FILE_NAME = "commit";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private MappedByteBuffer activeBuffer;
+
+    private long activeBase;
+
+    private long committedOffset;
+
+    private final CRC32 crc = new CRC32();
+
+    private final File directory;
+
+    private final int maxSegments;
+
+    private ByteBuffer readBuffer;
+
+    private long readBase = -1;
+
+    private final int segmentSize;
+
+    // segment files keyed by the logical offset of their first record
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+
+    EventLog(File directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, 0);
+    }
+
+    /**
+     * @param maxSegments the number of segments to keep at most, dropping the oldest one beyond it, or 0 for no cap
+     */
+    EventLog(File directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create event log directory " + directory);
+        }
+
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())),
+                                file);
+                    } catch (NumberFormatException e) {
+                        // not one of ours
+                    }
+                }
+            }
+        }
+
+        committedOffset = readCommittedOffset();
+
+        if (segments.isEmpty()) {
+            openSegment(committedOffset, segmentSize);
+        } else {
+            final Map.Entry<Long, File> last = segments.lastEntry();
+            activeBase = last.getKey();
+            activeBuffer = map(last.getValue(), last.getValue().length());
+            recoverActiveSegment();
+        }
+
+        if (committedOffset < segments.firstKey()) {
+            committedOffset = segments.firstKey();
+        }
+        if (committedOffset > getWriteOffset()) {
+            committedOffset = getWriteOffset();
+        }
+    }
+
+    /**
+     * Appends the payloads in order.
+     */
+    synchronized void append(List<String> payloads) throws IOException {
+        for (String payload : payloads) {
+            append(payload);
+        }
+    }
+
+    synchronized void append(String payload) throws IOException {
+        final byte[] data = toUtf8(payload);
+        final int recordSize = RECORD_HEADER_SIZE + data.length;
+        if (activeBuffer.remaining() < recordSize) {
+            openSegment(getWriteOffset(), Math.max(segmentSize, recordSize));
+        }
+
+        crc.reset();
+        crc.update(data, 0, data.length);
+
+        final int position = activeBuffer.position();
+        activeBuffer.putInt(position + 4, (int) crc.getValue());
+        activeBuffer.position(position + RECORD_HEADER_SIZE);
+        activeBuffer.put(data);
+        // the length goes in last, a reader treats a zero length as the end of the log
+        activeBuffer.putInt(position, data.length);
+    }
+
+    /**
+     * Drops every record written so far.
+     */
+    synchronized void clear() throws IOException {
+        commit(getWriteOffset());
+    }
+
+    /**
+     * Marks everything before the offset as consumed and deletes the segments that are no longer needed.
+     *
+     * @param offset the offset returned by {@link #read(long, int, List)} for the last batch that was sent
+     */
+    synchronized void commit(long offset) throws IOException {
+        if (offset <= committedOffset) {
+            return;
+        }
+        committedOffset = Math.min(offset, getWriteOffset());
+        writeCommittedOffset();
+
+        // a segment can go once the next one starts at or before the committed offset
+        Long base = segments.firstKey();
+        Long next = segments.higherKey(base);
+        while (next != null && next <= committedOffset) {
+            final File file = segments.remove(base);
+            if (!file.delete()) {
+                throw new IOException("Unable to delete event log segment " + file);
+            }
+            if (base == readBase) {
+                readBase = -1;
+                readBuffer = null;
+            }
+            base = next;
+            next = segments.higherKey(base);
+        }
+    }
+
+    /**
+     * Drops every segment last written before the cutoff, committing past it.
+     *
+     * @param maxAgeMillis how old the newest record of a segment may be
+     * @return whether any records were dropped
+     */
+    synchronized boolean expire(long maxAgeMillis) throws IOException {
+        final long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        long offset = committedOffset;
+        for (Map.Entry<Long, File> entry : segments.entrySet()) {
+            if (entry.getValue().lastModified() >= cutoff) {
+                break;
+            }
+            final Long next = segments.higherKey(entry.getKey());
+            offset = next != null ? next : getWriteOffset();
+        }
+        if (offset <= committedOffset) {
+            return false;
+        }
+        commit(offset);
+        return true;
+    }
+
+    synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    synchronized long getWriteOffset() {
+        return activeBase + activeBuffer.position();
+    }
+
+    synchronized boolean isEmpty() {
+        return committedOffset >= getWriteOffset();
+    }
+
+    /**
+     * Reads up to limit payloads starting at the offset.
+     *
+     * @param from     the offset to start at, usually {@link #getCommittedOffset()}
+     * @param limit    the maximum number of payloads to read
+     * @param payloads receives the payloads in order
+     * @return the offset just past the last payload read
+     */
+    synchronized long read(long from, int limit, List<String> payloads) throws IOException {
+        return read(from, limit, 0, payloads);
+    }
+
+    /**
+     * Same as {@link #read(long, int, List)}, but also stops once the payloads read reach maxBytes, so a batch goes
+     * over the budget by at most one payload.
+     *
+     * @param maxBytes the byte budget, or 0 for no budget
+     */
+    synchronized long read(long from, int limit, int maxBytes, List<String> payloads) throws IOException {
+        long offset = Math.max(from, segments.firstKey());
+        long bytes = 0;
+        final long end = getWriteOffset();
+
+        while (payloads.size() < limit && (maxBytes <= 0 || bytes < maxBytes) && offset < end) {
+            final long base = segments.floorKey(offset);
+            final Long next = segments.higherKey(base);
+            final ByteBuffer buffer = segmentBuffer(base);
+
+            int position = (int) (offset - base);
+            boolean segmentEnded = false;
+            while (payloads.size() < limit && (maxBytes <= 0 || bytes < maxBytes)) {
+                final byte[] data = readRecord(buffer, position);
+                if (data == null) {
+                    segmentEnded = true;
+                    break;
+                }
+                payloads.add(fromUtf8(data));
+                bytes += data.length;
+                position += RECORD_HEADER_SIZE + data.length;
+            }
+            offset = base + position;
+
+            if (!segmentEnded || next == null) {
+                break;
+            }
+            // nothing more in this segment, including any corrupt tail, which can only be skipped
+            offset = next;
+        }
+        return offset;
+    }
+
+    private MappedByteBuffer map(File file, long size) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the channel is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Drops the oldest segments beyond the cap, moving the committed offset past them.
+     */
+    private void dropOldestSegments() throws IOException {
+        boolean dropped = false;
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            final Map.Entry<Long, File> oldest = segments.pollFirstEntry();
+            if (!oldest.getValue().delete()) {
+                throw new IOException("Unable to delete event log segment " + oldest.getValue());
+            }
+            if (oldest.getKey() == readBase) {
+                readBase = -1;
+                readBuffer = null;
+            }
+            dropped = true;
+        }
+        if (dropped && committedOffset < segments.firstKey()) {
+            committedOffset = segments.firstKey();
+            writeCommittedOffset();
+        }
+    }
+
+    private void openSegment(long base, int size) throws IOException {
+        if (directory.getUsableSpace() < size) {
+            throw new IOException("Not enough space for another event log segment in " + directory);
+        }
+        if (activeBuffer != null) {
+            // every record in the segment being closed is older than this, which is what expire() goes by
+            //noinspection ResultOfMethodCallIgnored
+            segments.get(activeBase).setLastModified(System.currentTimeMillis());
+        }
+        final File file = new File(directory, String.format(Locale.US, "%020d", base) + SEGMENT_SUFFIX);
+        activeBuffer = map(file, size);
+        activeBase = base;
+        segments.put(base, file);
+        dropOldestSegments();
+    }
+
+    private long readCommittedOffset() throws IOException {
+        final File file = new File(directory, COMMIT_FILE_NAME);
+        if (!file.exists() || file.length() < 8) {
+            return segments.isEmpty() ? 0 : segments.firstKey();
+        }
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return randomAccessFile.readLong();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return the payload of the record at the position, or null if there's no complete, intact record there
+     */
+    private byte[] readRecord(ByteBuffer buffer, int position) {
+        if (position + RECORD_HEADER_SIZE > buffer.limit()) {
+            return null;
+        }
+        final int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.limit() - position - RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        final byte[] data = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(data);
+
+        crc.reset();
+        crc.update(data, 0, length);
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? data : null;
+    }
+
+    /**
+     * Finds the end of the last segment's valid records and wipes whatever a crash left behind it.
+     */
+    private void recoverActiveSegment() {
+        int position = 0;
+        byte[] data;
+        while ((data = readRecord(activeBuffer, position)) != null) {
+            position += RECORD_HEADER_SIZE + data.length;
+        }
+        if (position + 4 <= activeBuffer.limit() && activeBuffer.getInt(position) != 0) {
+            for (int i = position; i < activeBuffer.limit(); i++) {
+                activeBuffer.put(i, (byte) 0);
+            }
+        }
+        activeBuffer.position(position);
+    }
+
+    private ByteBuffer segmentBuffer(long base) throws IOException {
+        if (base == activeBase) {
+            return activeBuffer.duplicate();
+        }
+        if (base != readBase) {
+            final File file = segments.get(base);
+            readBuffer = map(file, file.length());
+            readBase = base;
+        }
+        return readBuffer;
+    }
+
+    private void writeCommittedOffset() throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(new File(directory, COMMIT_FILE_NAME), "rw");
+        try {
+            randomAccessFile.seek(0);
+            randomAccessFile.writeLong(committedOffset);
+            // so that sent events aren't sent again after a power loss
+            randomAccessFile.getFD().sync();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static String fromUtf8(byte[] data) {
+        try {
+            return new String(data, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toUtf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
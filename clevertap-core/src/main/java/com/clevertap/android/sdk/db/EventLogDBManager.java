@@ -0,0 +1,260 @@
+package com.clevertap.android.sdk.db;
+
+import android.content.Context;
+import com.clevertap.android.sdk.CTLockManager;
+import com.clevertap.android.sdk.CleverTapInstanceConfig;
+import com.clevertap.android.sdk.db.DBAdapter.Table;
+import com.clevertap.android.sdk.task.MainLooperHandler;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the event and Notification Viewed queues in append-only {@link EventLog}s instead of SQLite. Profile events
+ * and everything else {@link DBAdapter} stores stay in SQLite.
+ * <p>
+ * Once a log write fails, later events of that table are queued in SQLite until its SQLite queue has been flushed,
+ * so the log only ever holds events older than the ones in SQLite and is flushed first. Events queued in SQLite
+ * before the log was enabled are flushed before the log takes new events.
+ * <p>
+ * Like the SQLite queues, the logs drop events that have waited longer than five days and are held to the byte quota
+ * of the queues, or to 20 MB without one, by dropping their oldest segment. The row quota and payload compression
+ * only apply to SQLite.
+ */
+public class EventLogDBManager extends DBManager {
+
+    private static final String EVENT_LOG_DIRECTORY = "clevertap_event_log";
+
+    // the same 20 MB the SQLite database is held to
+    private static final int MAX_LOG_SEGMENTS = 20;
+
+    private final CleverTapInstanceConfig config;
+
+    private final HashSet<Table> failedLogs = new HashSet<>();
+
+    private final HashMap<Table, EventLog> logs = new HashMap<>();
+
+    // tables whose SQLite queue may still hold events, which new events have to queue behind; guarded by the event
+    // lock like the rest of the queue
+    private final HashSet<Table> sqliteBacklog = new HashSet<>(
+            Arrays.asList(Table.EVENTS, Table.PUSH_NOTIFICATION_VIEWED));
+
+    public EventLogDBManager(CleverTapInstanceConfig config,
+            CTLockManager ctLockManager,
+            MainLooperHandler mainLooperHandler) {
+        super(config, ctLockManager, mainLooperHandler);
+        this.config = config;
+    }
+
+    @Override
+    QueueCursor fetchQueuedEvents(final Context context, final Table table, final int batchSize,
+            final int maxBytes, final QueueCursor after, final QueueCursor cursor) {
+        final EventLog log = getLog(context, table);
+        if (log == null) {
+            return super.fetchQueuedEvents(context, table, batchSize, maxBytes, after, cursor);
+        }
+
+        if (after != null && !after.isFromEventLog()) {
+            // the log was already flushed up to the SQLite batch in flight
+            return super.fetchQueuedEvents(context, table, batchSize, maxBytes, after, cursor);
+        }
+
+        if (after == null) {
+            expire(log, table);
+        }
+
+        // anything in the log is older than what's in SQLite
+        final long from = after != null ? Long.parseLong(after.getLastId()) : log.getCommittedOffset();
+        try {
+            long offset = from;
+            while (true) {
+                final ArrayList<String> payloads = new ArrayList<>();
+                final long next = log.read(offset, batchSize, maxBytes, payloads);
+                if (payloads.isEmpty()) {
+                    break;
+                }
+
+                if (config.isFlushRawEventPayloads()) {
+                    cursor.setPayloads(payloads);
+                } else {
+                    final JSONArray data = new JSONArray();
+                    for (String payload : payloads) {
+                        try {
+                            data.put(new JSONObject(payload));
+                        } catch (JSONException e) {
+                            config.getLogger().verbose(config.getAccountId(),
+                                    "Dropping unreadable event from the " + table + " log", e);
+                        }
+                    }
+                    if (data.length() == 0) {
+                        // nothing in this batch can be sent, skip past it
+                        if (offset == log.getCommittedOffset()) {
+                            log.commit(next);
+                        }
+                        offset = next;
+                        continue;
+                    }
+                    cursor.setData(data);
+                }
+                int bytes = 0;
+                for (String payload : payloads) {
+                    bytes += payload.length();
+                }
+                cursor.setByteCount(bytes);
+                cursor.setFromEventLog(true);
+                cursor.setLastId(String.valueOf(next));
+                return cursor;
+            }
+        } catch (IOException e) {
+            config.getLogger().verbose(config.getAccountId(), "Could not read events from the " + table + " log", e);
+            return cursor;
+        }
+
+        if (!sqliteBacklog.contains(table)) {
+            return cursor;
+        }
+        return super.fetchQueuedEvents(context, table, batchSize, maxBytes, null, cursor);
+    }
+
+    @Override
+    void removeQueuedEvents(final Context context, final Table table) {
+        super.removeQueuedEvents(context, table);
+        final EventLog log = getLog(context, table);
+        if (log != null) {
+            try {
+                log.clear();
+            } catch (IOException e) {
+                config.getLogger().verbose(config.getAccountId(), "Could not clear the " + table + " log", e);
+            }
+        }
+    }
+
+    @Override
+    void removeSentEvents(final Context context, final QueueCursor sentCursor) {
+        if (!sentCursor.isFromEventLog()) {
+            super.removeSentEvents(context, sentCursor);
+            return;
+        }
+        final EventLog log = getLog(context, sentCursor.getTableName());
+        if (log == null) {
+            return;
+        }
+        try {
+            log.commit(Long.parseLong(sentCursor.getLastId()));
+        } catch (IOException e) {
+            config.getLogger().verbose(config.getAccountId(),
+                    "Could not commit sent events to the " + sentCursor.getTableName() + " log", e);
+        }
+    }
+
+    @Override
+    int storeQueuedEvent(final Context context, final Table table, final JSONObject event) {
+        final EventLog log = getLog(context, table);
+        if (log != null && !hasSqliteBacklog(context, table)) {
+            try {
+                log.append(event.toString());
+                return 1;
+            } catch (IOException e) {
+                onAppendFailed(table, e);
+            }
+        }
+        return super.storeQueuedEvent(context, table, event);
+    }
+
+    @Override
+    int storeQueuedEvents(final Context context, final Table table, final List<String> events) {
+        final EventLog log = getLog(context, table);
+        int appended = 0;
+        if (log != null && !hasSqliteBacklog(context, table)) {
+            try {
+                for (String event : events) {
+                    log.append(event);
+                    appended++;
+                }
+                return appended;
+            } catch (IOException e) {
+                onAppendFailed(table, e);
+            }
+        }
+        // only the events that didn't make it into the log
+        return super.storeQueuedEvents(context, table, events.subList(appended, events.size()));
+    }
+
+    /**
+     * Opens the log kept in the directory.
+     */
+    EventLog openLog(final File directory) throws IOException {
+        int maxSegments = MAX_LOG_SEGMENTS;
+        if (config.getQueueMaxBytes() > 0) {
+            // the active segment is mostly empty, so round up and keep at least one more
+            maxSegments = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(2, (config.getQueueMaxBytes() + EventLog.DEFAULT_SEGMENT_SIZE - 1)
+                            / EventLog.DEFAULT_SEGMENT_SIZE));
+        }
+        return new EventLog(directory, EventLog.DEFAULT_SEGMENT_SIZE, maxSegments);
+    }
+
+    private void expire(final EventLog log, final Table table) {
+        try {
+            if (log.expire(DBAdapter.DATA_EXPIRATION)) {
+                config.getLogger().verbose(config.getAccountId(), "Dropped stale events from the " + table + " log");
+            }
+        } catch (IOException e) {
+            config.getLogger().verbose(config.getAccountId(), "Could not drop stale events from the " + table + " log",
+                    e);
+        }
+    }
+
+    /**
+     * @return the log for the table, or null if the table isn't kept in a log or its log can't be opened
+     */
+    private EventLog getLog(final Context context, final Table table) {
+        if (table != Table.EVENTS && table != Table.PUSH_NOTIFICATION_VIEWED) {
+            return null;
+        }
+        EventLog log = logs.get(table);
+        if (log == null && !failedLogs.contains(table)) {
+            final File directory = new File(context.getDir(EVENT_LOG_DIRECTORY, Context.MODE_PRIVATE),
+                    config.getAccountId() + "_" + table.getName());
+            try {
+                log = openLog(directory);
+                logs.put(table, log);
+                expire(log, table);
+            } catch (IOException e) {
+                config.getLogger().verbose(config.getAccountId(),
+                        "Could not open the " + table + " log, queueing in the DB instead", e);
+                failedLogs.add(table);
+            }
+        }
+        return log;
+    }
+
+    /**
+     * @return whether new events of the table have to go to SQLite to stay behind the events already queued there
+     */
+    private boolean hasSqliteBacklog(final Context context, final Table table) {
+        if (!sqliteBacklog.contains(table)) {
+            return false;
+        }
+        final QueueCursor head = new QueueCursor();
+        head.setTableName(table);
+        if (!super.fetchQueuedEvents(context, table, 1, 0, null, head).isEmpty()) {
+            return true;
+        }
+        sqliteBacklog.remove(table);
+        return false;
+    }
+
+    private void onAppendFailed(final Table table, final IOException e) {
+        config.getLogger().verbose(config.getAccountId(),
+                "Could not append to the " + table + " log, queueing in the DB until it has been flushed", e);
+        sqliteBacklog.add(table);
+    }
+}
@@ -0,0 +1,85 @@
+package com.clevertap.android.sdk.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes queued event payloads for storage.
+ * <p>
+ * {@link #ENCODING_TEXT} rows hold the event JSON as text, exactly as before DB version 4.
+ * {@link #ENCODING_DEFLATE_V1} rows hold the UTF-8 JSON deflated with {@link #DICTIONARY_V1} as the preset
+ * dictionary, which lets even a single small event compress well. The dictionary is part of the stored format: if
+ * it ever changes a new encoding id must be added so that rows already on disk can still be inflated.
+ */
+class EventPayloadCodec {
+
+    static final int ENCODING_TEXT = 0;
+
+    static final int ENCODING_DEFLATE_V1 = 1;
+
+    // zlib favours matches near the end of the dictionary, so the most frequent fragments go last
+    private static final String DICTIONARY_V1 = "\"Carrier\":\"\"cc\":\"\"tz\":\"Asia/\"profile\":{"
+            + "\"wzrk_error\":{\"c\":\"d\":\"\"pai\":\"\"wzrk_pivot\":\"wzrk_acct_id\":\"\"wzrk_id\":\""
+            + "\"Notification Viewed\"\"Notification Clicked\"\"App Launched\"\"Charged\"\"Items\":[{"
+            + "\"Amount\":\"Product Name\":\"Category\":\"Product Viewed\"\"Added To Cart\"\"Screen\":\""
+            + "\"type\":\"profile\",\"type\":\"page\",\"type\":\"ping\",\"dsync\":true,\"dsync\":false,"
+            + "\"n\":\"\"f\":false,\"f\":true,\"lsl\":0,\"lsl\":\"pg\":1,\"pg\":\"s\":1"
+            + "\"evtData\":{},\"evtData\":{\"\"type\":\"event\",\"ep\":1\"}\"},\"evtName\":\"";
+
+    private static final byte[] DICTIONARY_V1_BYTES = toUtf8(DICTIONARY_V1);
+
+    private final byte[] buffer = new byte[4096];
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final Inflater inflater = new Inflater();
+
+    synchronized byte[] compress(String payload) {
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY_V1_BYTES);
+        deflater.setInput(toUtf8(payload));
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length() / 2);
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    synchronized String decompress(byte[] data) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0) {
+                if (inflater.needsDictionary()) {
+                    inflater.setDictionary(DICTIONARY_V1_BYTES);
+                } else if (inflater.needsInput()) {
+                    throw new DataFormatException("Truncated event payload");
+                }
+            }
+            out.write(buffer, 0, count);
+        }
+        try {
+            return out.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toUtf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.clevertap.android.sdk.db;
+
+import java.util.List;
+
+/**
+ * Decides which queued events are dropped when an event queue table goes over the quota set with
+ * {@link com.clevertap.android.sdk.CleverTapInstanceConfig#setQueueMaxRows(int)} or
+ * {@link com.clevertap.android.sdk.CleverTapInstanceConfig#setQueueMaxBytes(long)}.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * @param table      the table that is over quota
+     * @param candidates the oldest events of the table, oldest first
+     * @param count      the number of events that need to be dropped
+     * @return the ids of the events to drop. If fewer than count are returned, the oldest of the remaining events
+     * are dropped to make up the difference.
+     */
+    List<Long> selectEvictions(DBAdapter.Table table, List<QueuedEvent> candidates, int count);
+}
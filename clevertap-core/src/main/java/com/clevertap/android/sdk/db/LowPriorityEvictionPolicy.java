@@ -0,0 +1,35 @@
+package com.clevertap.android.sdk.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Drops the oldest events whose names are in the configured low priority set before anything else.
+ */
+class LowPriorityEvictionPolicy implements EvictionPolicy {
+
+    private final HashSet<String> lowPriorityEventNames;
+
+    LowPriorityEvictionPolicy(String[] lowPriorityEventNames) {
+        this.lowPriorityEventNames = new HashSet<>(Arrays.asList(lowPriorityEventNames));
+    }
+
+    @Override
+    public List<Long> selectEvictions(DBAdapter.Table table, List<QueuedEvent> candidates, int count) {
+        final ArrayList<Long> ids = new ArrayList<>();
+        if (lowPriorityEventNames.isEmpty()) {
+            return ids;
+        }
+        for (QueuedEvent candidate : candidates) {
+            if (ids.size() >= count) {
+                break;
+            }
+            if (lowPriorityEventNames.contains(candidate.getEventName())) {
+                ids.add(candidate.getId());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,85 @@
+package com.clevertap.android.sdk.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encodes single profile values for the key/value profile table, keeping numbers and booleans as SQLite numbers so
+ * that they come back with the same type they were stored with.
+ */
+final class ProfileFieldCodec {
+
+    static final String KEY_TYPE = "valueType";
+
+    static final String KEY_VALUE = "value";
+
+    private static final int TYPE_STRING = 0;
+
+    private static final int TYPE_LONG = 1;
+
+    private static final int TYPE_DOUBLE = 2;
+
+    private static final int TYPE_BOOLEAN = 3;
+
+    private static final int TYPE_JSON_OBJECT = 4;
+
+    private static final int TYPE_JSON_ARRAY = 5;
+
+    private ProfileFieldCodec() {
+    }
+
+    /**
+     * @return the value of the row the cursor is on, or null if it can't be decoded
+     */
+    static Object decode(Cursor cursor) {
+        final int valueIndex = cursor.getColumnIndex(KEY_VALUE);
+        try {
+            switch (cursor.getInt(cursor.getColumnIndex(KEY_TYPE))) {
+                case TYPE_LONG:
+                    final long value = cursor.getLong(valueIndex);
+                    // JSON parsing yields an Integer for values that fit, keep doing the same
+                    return value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value);
+                case TYPE_DOUBLE:
+                    return cursor.getDouble(valueIndex);
+                case TYPE_BOOLEAN:
+                    return cursor.getLong(valueIndex) != 0;
+                case TYPE_JSON_OBJECT:
+                    return new JSONObject(cursor.getString(valueIndex));
+                case TYPE_JSON_ARRAY:
+                    return new JSONArray(cursor.getString(valueIndex));
+                default:
+                    return cursor.getString(valueIndex);
+            }
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Puts the value and its type into the content values.
+     */
+    static void encode(ContentValues cv, Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            cv.put(KEY_TYPE, TYPE_LONG);
+            cv.put(KEY_VALUE, ((Number) value).longValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            cv.put(KEY_TYPE, TYPE_DOUBLE);
+            cv.put(KEY_VALUE, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            cv.put(KEY_TYPE, TYPE_BOOLEAN);
+            cv.put(KEY_VALUE, (Boolean) value ? 1 : 0);
+        } else if (value instanceof JSONObject) {
+            cv.put(KEY_TYPE, TYPE_JSON_OBJECT);
+            cv.put(KEY_VALUE, value.toString());
+        } else if (value instanceof JSONArray) {
+            cv.put(KEY_TYPE, TYPE_JSON_ARRAY);
+            cv.put(KEY_VALUE, value.toString());
+        } else {
+            cv.put(KEY_TYPE, TYPE_STRING);
+            cv.put(KEY_VALUE, String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.clevertap.android.sdk.db;
+
+/**
+ * Bloom filter of the push notification ids stored in the DB, so that checking a new push id only reads the DB when
+ * the id might have been seen. It can answer "maybe" for an id that isn't stored, but never "no" for one that is.
+ * <p>
+ * Ids are never removed. Once more ids than the filter was sized for have been added, {@link #isFull()} reports that
+ * it should be rebuilt to keep false positives down.
+ */
+class PushIdBloomFilter {
+
+    // 10 bits per id with 7 hashes gives about 1% false positives at capacity
+    private static final int BITS_PER_ID = 10;
+
+    private static final int HASH_COUNT = 7;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final int bitCount;
+
+    private final long[] bits;
+
+    private final int capacity;
+
+    private int size;
+
+    PushIdBloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, MIN_CAPACITY);
+        this.bitCount = this.capacity * BITS_PER_ID;
+        this.bits = new long[(bitCount + 63) / 64];
+    }
+
+    synchronized boolean isFull() {
+        return size > capacity;
+    }
+
+    synchronized boolean mightContain(String id) {
+        final int hash1 = id.hashCode();
+        final int hash2 = secondaryHash(id);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized void put(String id) {
+        final int hash1 = id.hashCode();
+        final int hash2 = secondaryHash(id);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+    }
+
+    /**
+     * FNV-1a, forced odd so that successive probes never collapse onto the same bit
+     */
+    private static int secondaryHash(String id) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+}
@@ -1,5 +1,6 @@
 package com.clevertap.android.sdk.db;
 
+import java.util.List;
 import org.json.JSONArray;
 
 @SuppressWarnings("unused")
@@ -9,13 +10,21 @@ public final class QueueCursor {
 
     private String lastId; // the id of the last object returned from the db, used to remove sent objects
 
+    private boolean fromEventLog; // whether lastId is an event log offset rather than a row id
+
+    private List<String> payloads; // the db objects as stored, when they are flushed without being parsed
+
     private DBAdapter.Table tableName;
 
+    private int byteCount; // the approximate serialised size of the objects
+
     @Override
     public String toString() {
-        return (this.isEmpty()) ? "tableName: " + tableName + " | numItems: 0" :
-                "tableName: " + tableName + " | lastId: " + lastId + " | numItems: " + data.length() + " | items: "
-                        + data.toString();
+        if (this.isEmpty()) {
+            return "tableName: " + tableName + " | numItems: 0";
+        }
+        return "tableName: " + tableName + " | lastId: " + lastId + " | numItems: " + length() + " | items: "
+                + (data != null ? data.toString() : payloads.toString());
     }
 
     public JSONArray getData() {
@@ -26,6 +35,36 @@ public final class QueueCursor {
         this.data = data;
     }
 
+    /**
+     * @return the stored event payloads, or null if this cursor holds parsed {@link #getData()} instead
+     */
+    public List<String> getPayloads() {
+        return payloads;
+    }
+
+    void setPayloads(List<String> payloads) {
+        this.payloads = payloads;
+    }
+
+    /**
+     * @return the approximate size of the events in this batch, counted in characters of their JSON
+     */
+    public int getByteCount() {
+        return byteCount;
+    }
+
+    void setByteCount(int byteCount) {
+        this.byteCount = byteCount;
+    }
+
+    boolean isFromEventLog() {
+        return fromEventLog;
+    }
+
+    void setFromEventLog(boolean fromEventLog) {
+        this.fromEventLog = fromEventLog;
+    }
+
     String getLastId() {
         return lastId;
     }
@@ -43,12 +82,22 @@ public final class QueueCursor {
     }
 
     public Boolean isEmpty() {
-        return (lastId == null || data == null || data.length() <= 0);
+        return (lastId == null || length() <= 0);
+    }
+
+    public int length() {
+        if (data != null) {
+            return data.length();
+        }
+        return payloads != null ? payloads.size() : 0;
     }
 
     private void resetForTableName(DBAdapter.Table tName) {
         tableName = tName;
         data = null;
+        payloads = null;
+        fromEventLog = false;
+        byteCount = 0;
         lastId = null;
     }
 }
@@ -0,0 +1,118 @@
+package com.clevertap.android.sdk.db;
+
+import java.util.Arrays;
+
+/**
+ * Picks the queue table each batch is read from, by smooth weighted round robin.
+ * <p>
+ * Every turn, each table that may still have events earns its weight in credit, and the table with the most credit
+ * sends the batch and pays back the credit earned by all of them. Over any run of turns each table gets its share
+ * of batches, interleaved rather than in bursts, and ties go to the table listed first. A table found empty loses
+ * its credit, so that it can't save up for a burst while it has nothing to send. A batch only counts once it has
+ * been sent, so a batch that failed is picked again rather than charged to its table.
+ * <p>
+ * Not thread safe, the {@link DBManager} only calls it with the event lock held.
+ */
+final class QueueDrainScheduler {
+
+    private final int[] credits;
+
+    // tables found empty since the last batch was read
+    private final boolean[] empty;
+
+    private final DBAdapter.Table[] tables;
+
+    private final int[] weights;
+
+    /**
+     * @param tables  the tables in order of precedence
+     * @param weights the share of batches of each table, at least 1
+     */
+    QueueDrainScheduler(DBAdapter.Table[] tables, int[] weights) {
+        if (tables.length != weights.length) {
+            throw new IllegalArgumentException("Each table needs a weight");
+        }
+        this.tables = tables.clone();
+        this.weights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = Math.max(1, weights[i]);
+        }
+        credits = new int[tables.length];
+        empty = new boolean[tables.length];
+    }
+
+    /**
+     * @return the tables in the order they should be read for the next batch, until one has events
+     */
+    DBAdapter.Table[] getDrainOrder() {
+        return getDrainOrder(null);
+    }
+
+    /**
+     * @param inFlight the table of a batch that is being sent, ordered as if the batch had been drained already, or
+     *                 null
+     * @return the tables in the order they should be read for the next batch, until one has events
+     */
+    DBAdapter.Table[] getDrainOrder(DBAdapter.Table inFlight) {
+        final int[] credits = inFlight != null ? creditsAfterDrain(indexOf(inFlight)) : this.credits;
+        final DBAdapter.Table[] order = tables.clone();
+        final int[] scores = new int[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            scores[i] = credits[i] + weights[i];
+        }
+        // insertion sort, stable so that ties keep the order of precedence
+        for (int i = 1; i < order.length; i++) {
+            final DBAdapter.Table table = order[i];
+            final int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                order[j + 1] = order[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            order[j + 1] = table;
+            scores[j + 1] = score;
+        }
+        return order;
+    }
+
+    /**
+     * Records that a batch of the table was sent.
+     */
+    void onDrained(DBAdapter.Table table) {
+        final int[] after = creditsAfterDrain(indexOf(table));
+        System.arraycopy(after, 0, credits, 0, credits.length);
+        Arrays.fill(empty, false);
+    }
+
+    /**
+     * Records that the table had nothing to send.
+     */
+    void onEmpty(DBAdapter.Table table) {
+        final int index = indexOf(table);
+        credits[index] = 0;
+        empty[index] = true;
+    }
+
+    private int[] creditsAfterDrain(int drained) {
+        final int[] after = credits.clone();
+        int total = 0;
+        for (int i = 0; i < tables.length; i++) {
+            if (!empty[i] || i == drained) {
+                after[i] += weights[i];
+                total += weights[i];
+            }
+        }
+        after[drained] -= total;
+        return after;
+    }
+
+    private int indexOf(DBAdapter.Table table) {
+        for (int i = 0; i < tables.length; i++) {
+            if (tables[i] == table) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a drained table: " + table);
+    }
+}
@@ -0,0 +1,51 @@
+package com.clevertap.android.sdk.db;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A row of an event queue table, as offered to an {@link EvictionPolicy}.
+ */
+public final class QueuedEvent {
+
+    private JSONObject event;
+
+    private final long id;
+
+    private final String payload;
+
+    QueuedEvent(long id, String payload) {
+        this.id = id;
+        this.payload = payload;
+    }
+
+    /**
+     * @return the event, parsed on first use, or null if the stored payload isn't valid JSON
+     */
+    public JSONObject getEvent() {
+        if (event == null) {
+            try {
+                event = new JSONObject(payload);
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+        return event;
+    }
+
+    /**
+     * @return the event name, or null for events that don't carry one, such as profile pushes
+     */
+    public String getEventName() {
+        final JSONObject event = getEvent();
+        return event != null ? event.optString("evtName", null) : null;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
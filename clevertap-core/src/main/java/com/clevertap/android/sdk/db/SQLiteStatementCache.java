@@ -0,0 +1,49 @@
+package com.clevertap.android.sdk.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import java.util.HashMap;
+
+/**
+ * Cache of compiled {@link SQLiteStatement}s for a single {@link SQLiteDatabase} connection, keyed by table and
+ * operation.
+ * <p>
+ * Compiled statements are only valid for the connection that compiled them, so the cache drops everything as soon
+ * as it is asked for a statement on a different connection, and must be cleared whenever the connection is closed,
+ * the schema is upgraded or the database is deleted.
+ * <p>
+ * Callers must synchronize on the returned statement while binding and executing it.
+ */
+class SQLiteStatementCache {
+
+    private SQLiteDatabase database;
+
+    private final HashMap<String, SQLiteStatement> statements = new HashMap<>();
+
+    synchronized void clear() {
+        for (SQLiteStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (Throwable t) {
+                // Ignore
+            }
+        }
+        statements.clear();
+        database = null;
+    }
+
+    synchronized SQLiteStatement get(SQLiteDatabase db, DBAdapter.Table table, String operation, String sql) {
+        if (db != database) {
+            clear();
+            database = db;
+        }
+
+        final String key = table.getName() + ":" + operation;
+        SQLiteStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+}
@@ -8,8 +8,22 @@ public abstract class BaseEventQueueManager {
 
     public abstract Future<?> queueEvent(final Context context, final JSONObject event, final int eventType);
 
+    /**
+     * Same as {@link #queueEvent(Context, JSONObject, int)}, but keeps the event in a session that may have ended
+     * since, such as a summary emitted as its session closes, instead of the one current when it is queued.
+     *
+     * @param sessionId the session the event belongs to, or 0 for the session current when it is queued
+     */
+    public abstract Future<?> queueEvent(final Context context, final JSONObject event, final int eventType,
+            final int sessionId);
+
     public abstract void addToQueue(final Context context, final JSONObject event, final int eventType);
 
+    /**
+     * Writes the events still held in memory, by group commit or the ingestion buffer, to the database.
+     */
+    public abstract void commitPendingEventsAsync();
+
     public abstract void flush();
 
     public abstract void flushQueueAsync(final Context context, final EventGroup eventGroup);
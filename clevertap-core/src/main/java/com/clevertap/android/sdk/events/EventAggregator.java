@@ -0,0 +1,246 @@
+package com.clevertap.android.sdk.events;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import com.clevertap.android.sdk.CleverTapInstanceConfig;
+import com.clevertap.android.sdk.Constants;
+import com.clevertap.android.sdk.task.MainLooperHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Coalesces high frequency events into one summary event per window.
+ * <p>
+ * Events registered with {@link #register(String, long)} are not queued when pushed. Instead the window counts them
+ * and keeps the sum, minimum, maximum and last value of each numeric property and the last value of every other
+ * property. The window is emitted as a single event of the same name when it elapses, when the event is
+ * unregistered or when {@link #flushAll()} is called at the end of a session. The summary's own keys take
+ * precedence over a pushed property of the same name, which is left out.
+ */
+@RestrictTo(Scope.LIBRARY)
+public class EventAggregator {
+
+    public interface SummaryListener {
+
+        /**
+         * Called once per closed window, outside of the aggregator's lock.
+         *
+         * @param eventName the registered event name
+         * @param summary   the properties of the summary event
+         */
+        void onWindowClosed(String eventName, Map<String, Object> summary);
+    }
+
+    private static final class NumericProperty {
+
+        boolean integral = true;
+
+        Number last;
+
+        double max = -Double.MAX_VALUE;
+
+        double min = Double.MAX_VALUE;
+
+        double sum;
+
+        void add(Number value) {
+            final double d = value.doubleValue();
+            integral &= value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte;
+            sum += d;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+            last = value;
+        }
+
+        Number round(double value) {
+            return integral ? Long.valueOf((long) value) : Double.valueOf(value);
+        }
+    }
+
+    private final class Window implements Runnable {
+
+        int count;
+
+        final String eventName;
+
+        final HashMap<String, Object> lastValues = new HashMap<>();
+
+        final HashMap<String, NumericProperty> numericProperties = new HashMap<>();
+
+        long startMillis;
+
+        Window(String eventName) {
+            this.eventName = eventName;
+        }
+
+        void add(Map<String, Object> properties) {
+            if (count == 0) {
+                startMillis = System.currentTimeMillis();
+            }
+            count++;
+            if (properties == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                final String key = entry.getKey();
+                final Object value = entry.getValue();
+                if (key == null || value == null) {
+                    continue;
+                }
+                if (value instanceof Number) {
+                    NumericProperty property = numericProperties.get(key);
+                    if (property == null) {
+                        property = new NumericProperty();
+                        numericProperties.put(key, property);
+                    }
+                    property.add((Number) value);
+                } else {
+                    lastValues.put(key, value);
+                }
+            }
+        }
+
+        /**
+         * @return the summary of the window, which is then empty again
+         */
+        Map<String, Object> close() {
+            final LinkedHashMap<String, Object> summary = new LinkedHashMap<>();
+            for (Map.Entry<String, NumericProperty> entry : numericProperties.entrySet()) {
+                final String key = entry.getKey();
+                final NumericProperty property = entry.getValue();
+                summary.put(key + Constants.AGGREGATE_SUM_SUFFIX, property.round(property.sum));
+                summary.put(key + Constants.AGGREGATE_MIN_SUFFIX, property.round(property.min));
+                summary.put(key + Constants.AGGREGATE_MAX_SUFFIX, property.round(property.max));
+                summary.put(key + Constants.AGGREGATE_LAST_SUFFIX, property.last);
+            }
+            summary.put(Constants.AGGREGATE_COUNT, count);
+            summary.put(Constants.AGGREGATE_WINDOW_START, startMillis / 1000);
+            summary.put(Constants.AGGREGATE_WINDOW_END, System.currentTimeMillis() / 1000);
+            for (Map.Entry<String, Object> entry : lastValues.entrySet()) {
+                if (summary.containsKey(entry.getKey())) {
+                    config.getLogger().verbose(config.getAccountId(), "Leaving property " + entry.getKey()
+                            + " out of aggregated event " + eventName + ", the summary uses that key");
+                    continue;
+                }
+                summary.put(entry.getKey(), entry.getValue());
+            }
+
+            count = 0;
+            lastValues.clear();
+            numericProperties.clear();
+            return summary;
+        }
+
+        @Override
+        public void run() {
+            emit(this);
+        }
+    }
+
+    private final CleverTapInstanceConfig config;
+
+    private SummaryListener listener;
+
+    private final MainLooperHandler mainLooperHandler;
+
+    private final HashMap<String, Long> windowMillis = new HashMap<>();
+
+    private final HashMap<String, Window> windows = new HashMap<>();
+
+    public EventAggregator(CleverTapInstanceConfig config, MainLooperHandler mainLooperHandler) {
+        this.config = config;
+        this.mainLooperHandler = mainLooperHandler;
+    }
+
+    /**
+     * Adds the event to its window, opening one if needed.
+     *
+     * @return false if the event isn't registered and should be pushed as it is
+     */
+    public boolean aggregate(String eventName, Map<String, Object> properties) {
+        synchronized (this) {
+            final Long window = windowMillis.get(eventName);
+            if (window == null) {
+                return false;
+            }
+            Window current = windows.get(eventName);
+            if (current == null) {
+                current = new Window(eventName);
+                windows.put(eventName, current);
+            }
+            if (current.count == 0) {
+                mainLooperHandler.postDelayed(current, window);
+            }
+            current.add(properties);
+            return true;
+        }
+    }
+
+    /**
+     * Emits every open window.
+     */
+    public void flushAll() {
+        final ArrayList<Window> open;
+        synchronized (this) {
+            open = new ArrayList<>(windows.values());
+        }
+        for (Window window : open) {
+            emit(window);
+        }
+    }
+
+    public synchronized boolean isRegistered(String eventName) {
+        return windowMillis.containsKey(eventName);
+    }
+
+    /**
+     * Aggregates the event from now on. Registering an event again changes the length of windows opened after.
+     *
+     * @param eventName    the name the event is pushed with
+     * @param windowMillis how long a window collects events before its summary is emitted
+     */
+    public synchronized void register(String eventName, long windowMillis) {
+        this.windowMillis.put(eventName, Math.max(Constants.AGGREGATE_MIN_WINDOW_MILLIS, windowMillis));
+        config.getLogger().verbose(config.getAccountId(), "Aggregating event " + eventName + " in windows of "
+                + windowMillis + " ms");
+    }
+
+    public synchronized void setSummaryListener(SummaryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops aggregating the event, emitting its open window first.
+     */
+    public void unregister(String eventName) {
+        final Window window;
+        synchronized (this) {
+            windowMillis.remove(eventName);
+            window = windows.remove(eventName);
+        }
+        if (window != null) {
+            emit(window);
+        }
+    }
+
+    private void emit(Window window) {
+        final Map<String, Object> summary;
+        final SummaryListener listener;
+        synchronized (this) {
+            if (window.count == 0) {
+                return;
+            }
+            mainLooperHandler.removeCallbacks(window);
+            summary = window.close();
+            listener = this.listener;
+        }
+        config.getLogger().verbose(config.getAccountId(),
+                "Emitting aggregated event " + window.eventName + ": " + summary);
+        if (listener != null) {
+            listener.onWindowClosed(window.eventName, summary);
+        }
+    }
+}
@@ -25,16 +25,46 @@ import com.clevertap.android.sdk.task.MainLooperHandler;
 import com.clevertap.android.sdk.task.Task;
 import com.clevertap.android.sdk.validation.ValidationResult;
 import com.clevertap.android.sdk.validation.ValidationResultStack;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.TimeZone;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class EventQueueManager extends BaseEventQueueManager implements FailureFlushListener {
 
-    private Runnable commsRunnable = null;
+    private static final class BufferedEvent {
+
+        final Context context;
+
+        final JSONObject event;
+
+        final int eventType;
+
+        final int sessionId;
+
+        // done once the event has been written, the future handed to whoever queued it
+        final FutureTask<Void> stored = new FutureTask<>(NO_OP, null);
+
+        BufferedEvent(Context context, JSONObject event, int eventType, int sessionId) {
+            this.context = context;
+            this.event = event;
+            this.eventType = eventType;
+            this.sessionId = sessionId;
+        }
+    }
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
 
     private final BaseDatabaseManager baseDatabaseManager;
 
@@ -48,8 +78,29 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
 
     private final DeviceInfo deviceInfo;
 
+    private final Callable<Void> drainCallable = new Callable<Void>() {
+        @Override
+        public Void call() {
+            // reset first, so that an event buffered while draining schedules another drain
+            drainScheduled.set(false);
+            drainIngestionBuffer();
+            return null;
+        }
+    };
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
     private final EventMediator eventMediator;
 
+    private final EnumMap<EventGroup, Runnable> flushRunnables = new EnumMap<>(EventGroup.class);
+
+    // true while buffered events are being drained, to schedule a single flush for all of them; guarded by the
+    // event lock
+    private boolean inIngestionBatch = false;
+
+    // null when events aren't buffered
+    private final EventRingBuffer<BufferedEvent> ingestionBuffer;
+
     private final LocalDataStore localDataStore;
 
     private final Logger logger;
@@ -60,6 +111,10 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
 
     private final BaseNetworkManager networkManager;
 
+    // events queued past a full buffer that haven't been processed yet; while there are any, new events follow
+    // them instead of going into the buffer, so that events recorded by a thread stay in order
+    private final AtomicInteger overflowedEvents = new AtomicInteger(0);
+
     private final SessionManager sessionManager;
 
     private final ValidationResultStack validationResultStack;
@@ -92,6 +147,8 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
         logger = this.config.getLogger();
         cleverTapMetaData = coreMetaData;
         this.ctLockManager = ctLockManager;
+        ingestionBuffer = config.getEventIngestionBufferSize() > 0
+                ? new EventRingBuffer<BufferedEvent>(config.getEventIngestionBufferSize()) : null;
 
         callbackManager.setFailureFlushListener(this);
     }
@@ -120,7 +177,7 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
 
     @Override
     public void flushQueueAsync(final Context context, final EventGroup eventGroup) {
-        Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+        Task<Void> task = getFlushTask(eventGroup);
         task.execute("CommsManager#flushQueueAsync", new Callable<Void>() {
             @Override
             public Void call() {
@@ -175,6 +232,14 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
     }
 
     public void processEvent(final Context context, final JSONObject event, final int eventType) {
+        processEvent(context, event, eventType, 0);
+    }
+
+    /**
+     * @param sessionId the session the event belongs to, or 0 for the current session
+     */
+    public void processEvent(final Context context, final JSONObject event, final int eventType,
+            final int sessionId) {
         synchronized (ctLockManager.getEventLock()) {
             try {
                 if (CoreMetaData.getActivityCount() == 0) {
@@ -213,12 +278,11 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
                     event.put("n", currentActivityName);
                 }
 
-                int session = cleverTapMetaData.getCurrentSessionId();
-                event.put("s", session);
+                event.put("s", sessionId != 0 ? sessionId : cleverTapMetaData.getCurrentSessionId());
+                event.put("f", cleverTapMetaData.isFirstSession());
                 event.put("pg", CoreMetaData.getActivityCount());
                 event.put("type", type);
                 event.put("ep", getNow());
-                event.put("f", cleverTapMetaData.isFirstSession());
                 event.put("lsl", cleverTapMetaData.getLastSessionLength());
                 attachPackageNameIfRequired(context, event);
 
@@ -230,7 +294,9 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
                 localDataStore.setDataSyncFlag(event);
                 baseDatabaseManager.queueEventToDB(context, event, eventType);
                 updateLocalStore(context, event, eventType);
-                scheduleQueueFlush(context);
+                if (!inIngestionBatch) {
+                    scheduleQueueFlush(context);
+                }
 
             } catch (Throwable e) {
                 config.getLogger().verbose(config.getAccountId(), "Failed to queue event: " + event.toString(), e);
@@ -360,62 +426,175 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
      */
     @Override
     public Future<?> queueEvent(final Context context, final JSONObject event, final int eventType) {
+        return queueEvent(context, event, eventType, 0);
+    }
+
+    @Override
+    public Future<?> queueEvent(final Context context, final JSONObject event, final int eventType,
+            final int sessionId) {
+        if (ingestionBuffer != null) {
+            final BufferedEvent buffered = new BufferedEvent(context, event, eventType, sessionId);
+            if (overflowedEvents.get() == 0 && ingestionBuffer.offer(buffered)) {
+                scheduleIngestionDrain();
+                return buffered.stored;
+            }
+            overflowedEvents.incrementAndGet();
+            logger.verbose(config.getAccountId(), "Event buffer is full, queueing event directly");
+        }
         Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
         return task.submit("queueEvent", new Callable<Void>() {
             @Override
             public Void call() {
-                if (eventMediator.shouldDropEvent(event, eventType)) {
+                if (ingestionBuffer == null) {
+                    processQueuedEvent(context, event, eventType, sessionId);
                     return null;
                 }
-                if (eventMediator.shouldDeferProcessingEvent(event, eventType)) {
-                    config.getLogger().debug(config.getAccountId(),
-                            "App Launched not yet processed, re-queuing event " + event + "after 2s");
-                    mainLooperHandler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
-                            task.execute("queueEventWithDelay", new Callable<Void>() {
-                                @Override
-                                public Void call() {
-                                    sessionManager.lazyCreateSession(context);
-                                    pushInitialEventsAsync();
-                                    addToQueue(context, event, eventType);
-                                    return null;
-                                }
-                            });
-                        }
-                    }, 2000);
-                } else {
-                    if (eventType == Constants.FETCH_EVENT) {
-                        addToQueue(context, event, eventType);
-                    } else {
-                        sessionManager.lazyCreateSession(context);
-                        pushInitialEventsAsync();
-                        addToQueue(context, event, eventType);
-                    }
+                try {
+                    // whatever was buffered before this event overflowed goes first
+                    drainIngestionBuffer();
+                    processQueuedEvent(context, event, eventType, sessionId);
+                } finally {
+                    overflowedEvents.decrementAndGet();
                 }
                 return null;
             }
         });
     }
 
+    @Override
+    public void commitPendingEventsAsync() {
+        Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+        task.execute("commitPendingEvents", new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (ingestionBuffer != null) {
+                    drainIngestionBuffer();
+                }
+                baseDatabaseManager.commitPendingEvents(context);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Drains the events buffered so far in one batch: they are enriched in order, written to the database
+     * together and a single flush is scheduled for all of them. Only ever runs on the account's serial executor,
+     * which makes it the buffer's only consumer. The future of each drained event is done once the batch has been
+     * written.
+     */
+    void drainIngestionBuffer() {
+        BufferedEvent buffered = ingestionBuffer.poll();
+        if (buffered == null) {
+            return;
+        }
+        final ArrayList<BufferedEvent> drained = new ArrayList<>();
+        synchronized (ctLockManager.getEventLock()) {
+            inIngestionBatch = true;
+        }
+        baseDatabaseManager.beginEventBatch();
+        try {
+            // at most one buffer's worth, events buffered meanwhile have scheduled another drain
+            do {
+                drained.add(buffered);
+                processQueuedEvent(buffered.context, buffered.event, buffered.eventType, buffered.sessionId);
+            } while (drained.size() < ingestionBuffer.getCapacity() && (buffered = ingestionBuffer.poll()) != null);
+        } finally {
+            synchronized (ctLockManager.getEventLock()) {
+                inIngestionBatch = false;
+            }
+            try {
+                baseDatabaseManager.endEventBatch(context);
+            } finally {
+                for (BufferedEvent event : drained) {
+                    event.stored.run();
+                }
+            }
+        }
+        logger.verbose(config.getAccountId(), "Drained " + drained.size() + " buffered events");
+        scheduleQueueFlush(context);
+    }
+
+    /**
+     * Schedules a flush of every event group, each after its own delay, so that a group that is backing off
+     * doesn't delay the others.
+     */
     @Override
     public void scheduleQueueFlush(final Context context) {
-        if (commsRunnable == null) {
-            commsRunnable = new Runnable() {
+        for (final EventGroup eventGroup : EventGroup.values()) {
+            Runnable flushRunnable = flushRunnables.get(eventGroup);
+            if (flushRunnable == null) {
+                flushRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        flushQueueAsync(context, eventGroup);
+                    }
+                };
+                flushRunnables.put(eventGroup, flushRunnable);
+            }
+            // Cancel any outstanding send runnables, and issue a new delayed one
+            mainLooperHandler.removeCallbacks(flushRunnable);
+
+            mainLooperHandler.postDelayed(flushRunnable, networkManager.getDelayFrequency(eventGroup));
+        }
+
+        logger.verbose(config.getAccountId(), "Scheduling delayed queue flush on main event loop");
+    }
+
+    /**
+     * Same as {@link #addToQueue(Context, JSONObject, int)}, but keeps the event in the given session unless it is 0.
+     */
+    private void addToQueue(final Context context, final JSONObject event, final int eventType,
+            final int sessionId) {
+        if (sessionId == 0) {
+            addToQueue(context, event, eventType);
+        } else {
+            processEvent(context, event, eventType, sessionId);
+        }
+    }
+
+    private void processQueuedEvent(final Context context, final JSONObject event, final int eventType,
+            final int sessionId) {
+        if (eventMediator.shouldDropEvent(event, eventType)) {
+            return;
+        }
+        if (eventMediator.shouldDeferProcessingEvent(event, eventType)) {
+            config.getLogger().debug(config.getAccountId(),
+                    "App Launched not yet processed, re-queuing event " + event + "after 2s");
+            mainLooperHandler.postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    flushQueueAsync(context, EventGroup.REGULAR);
-                    flushQueueAsync(context, EventGroup.PUSH_NOTIFICATION_VIEWED);
+                    Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+                    task.execute("queueEventWithDelay", new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            sessionManager.lazyCreateSession(context);
+                            pushInitialEventsAsync();
+                            addToQueue(context, event, eventType, sessionId);
+                            return null;
+                        }
+                    });
                 }
-            };
+            }, 2000);
+        } else {
+            if (eventType == Constants.FETCH_EVENT || sessionId != 0) {
+                // an event of a session that has already been created, such as a summary, doesn't start one
+                addToQueue(context, event, eventType, sessionId);
+            } else {
+                sessionManager.lazyCreateSession(context);
+                pushInitialEventsAsync();
+                addToQueue(context, event, eventType);
+            }
         }
-        // Cancel any outstanding send runnables, and issue a new delayed one
-        mainLooperHandler.removeCallbacks(commsRunnable);
-
-        mainLooperHandler.postDelayed(commsRunnable, networkManager.getDelayFrequency());
+    }
 
-        logger.verbose(config.getAccountId(), "Scheduling delayed queue flush on main event loop");
+    /**
+     * Schedules a drain of the buffer, unless one is already scheduled that will pick up the event just buffered.
+     */
+    private void scheduleIngestionDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
+            task.execute("drainEventBuffer", drainCallable);
+        }
     }
 
     /**
@@ -451,6 +630,20 @@ public class EventQueueManager extends BaseEventQueueManager implements FailureF
         }
     }
 
+    /**
+     * Regular events are flushed on the account's executor, like the rest of event processing. Every other group
+     * gets its own serial lane, so that a large regular backlog doesn't hold up, for example, Notification Viewed
+     * receipts. Flushes of one group stay in order. Only the uploads run in parallel, the network manager
+     * serialises handshakes, request headers and response handling across the lanes.
+     */
+    private Task<Void> getFlushTask(final EventGroup eventGroup) {
+        if (eventGroup == EventGroup.REGULAR) {
+            return CTExecutorFactory.executors(config).postAsyncSafelyTask();
+        }
+        return CTExecutorFactory.executors(config)
+                .postAsyncSafelyTask(config.getAccountId() + Constants.FLUSH_LANE_SUFFIX + eventGroup.name());
+    }
+
     private String getCleverTapID() {
         return deviceInfo.getDeviceID();
     }
@@ -0,0 +1,278 @@
+package com.clevertap.android.sdk.events;
+
+import android.content.Context;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import com.clevertap.android.sdk.CleverTapInstanceConfig;
+import com.clevertap.android.sdk.Constants;
+import com.clevertap.android.sdk.DeviceInfo;
+import com.clevertap.android.sdk.StorageHelper;
+import com.clevertap.android.sdk.task.MainLooperHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Drops events over their configured volume before they are queued.
+ * <p>
+ * An event name can have a sample rate, which keeps the event on a fixed share of devices picked by hashing the
+ * device id with the event name, and a per minute cap, enforced with a token bucket that allows bursts of up to a
+ * minute's worth. Limits come from {@link CleverTapInstanceConfig#setEventRateLimit(String, int, double)} and from
+ * the ARP, whose limits replace the local ones of the same event and are kept across launches.
+ * <p>
+ * The number of events dropped is kept per event name and emitted to the {@link DroppedEventsListener} as one
+ * summary per name, {@link Constants#DROPPED_EVENTS_SUMMARY_INTERVAL_MS} after the first drop or when
+ * {@link #flushDroppedSummaries()} is called at the end of a session.
+ */
+@RestrictTo(Scope.LIBRARY)
+public class EventRateLimiter {
+
+    public interface DroppedEventsListener {
+
+        /**
+         * Called once per event name with drops, outside of the limiter's lock.
+         *
+         * @param summary the properties of the {@link Constants#DROPPED_EVENTS_SUMMARY_EVENT} event
+         */
+        void onEventsDropped(Map<String, Object> summary);
+    }
+
+    static final class Limit {
+
+        final int maxPerMinute;
+
+        final double sampleRate;
+
+        Limit(int maxPerMinute, double sampleRate) {
+            this.maxPerMinute = maxPerMinute;
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    private static final class Bucket {
+
+        long refilledAt;
+
+        double tokens;
+    }
+
+    private static final class Dropped {
+
+        int rateLimited;
+
+        int sampledOut;
+    }
+
+    private final HashMap<String, Bucket> buckets = new HashMap<>();
+
+    private final CleverTapInstanceConfig config;
+
+    private final Context context;
+
+    private final DeviceInfo deviceInfo;
+
+    private final HashMap<String, Dropped> dropped = new HashMap<>();
+
+    private long droppedSince;
+
+    private final Runnable emitSummaries = new Runnable() {
+        @Override
+        public void run() {
+            flushDroppedSummaries();
+        }
+    };
+
+    private HashMap<String, Limit> limits;
+
+    private DroppedEventsListener listener;
+
+    private final HashMap<String, Limit> localLimits;
+
+    private final MainLooperHandler mainLooperHandler;
+
+    public EventRateLimiter(Context context, CleverTapInstanceConfig config, DeviceInfo deviceInfo,
+            MainLooperHandler mainLooperHandler) {
+        this.context = context;
+        this.config = config;
+        this.deviceInfo = deviceInfo;
+        this.mainLooperHandler = mainLooperHandler;
+        localLimits = parseLimits(config.getEventRateLimits());
+    }
+
+    /**
+     * Emits one summary per event name with drops since the last summaries.
+     */
+    public void flushDroppedSummaries() {
+        final List<Map<String, Object>> summaries;
+        final DroppedEventsListener listener;
+        synchronized (this) {
+            mainLooperHandler.removeCallbacks(emitSummaries);
+            summaries = takeDroppedSummaries(System.currentTimeMillis());
+            listener = this.listener;
+        }
+        if (listener == null) {
+            return;
+        }
+        for (Map<String, Object> summary : summaries) {
+            listener.onEventsDropped(summary);
+        }
+    }
+
+    /**
+     * Replaces the limits sent by the server and keeps them for later launches.
+     *
+     * @param remoteLimits the limits keyed by event name, or null to drop all of the server's limits
+     */
+    public void setRemoteLimits(JSONObject remoteLimits) {
+        final String json = remoteLimits != null ? remoteLimits.toString() : null;
+        StorageHelper.putString(context, config, Constants.KEY_REMOTE_EVENT_RATE_LIMITS, json);
+        synchronized (this) {
+            limits = mergeLimits(json);
+            buckets.clear();
+        }
+        config.getLogger().verbose(config.getAccountId(), "Updated event rate limits: " + json);
+    }
+
+    /**
+     * @param listener called with each summary, outside of the limiter's lock
+     */
+    public synchronized void setDroppedEventsListener(DroppedEventsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Counts the event against its limits.
+     *
+     * @return true if the event should be dropped
+     */
+    public boolean shouldDrop(String eventName) {
+        return shouldDrop(eventName, System.currentTimeMillis());
+    }
+
+    synchronized List<Map<String, Object>> takeDroppedSummaries(long nowMillis) {
+        final ArrayList<Map<String, Object>> summaries = new ArrayList<>();
+        for (Map.Entry<String, Dropped> entry : dropped.entrySet()) {
+            final HashMap<String, Object> summary = new HashMap<>();
+            final Limit limit = getLimits().get(entry.getKey());
+            summary.put(Constants.DROPPED_EVENT_NAME, entry.getKey());
+            summary.put(Constants.DROPPED_SAMPLED_OUT, entry.getValue().sampledOut);
+            summary.put(Constants.DROPPED_RATE_LIMITED, entry.getValue().rateLimited);
+            if (limit != null) {
+                summary.put(Constants.EVENT_SAMPLE_RATE, limit.sampleRate);
+                summary.put(Constants.EVENT_RATE_LIMIT_PER_MINUTE, limit.maxPerMinute);
+            }
+            summary.put(Constants.AGGREGATE_WINDOW_START, droppedSince / 1000);
+            summary.put(Constants.AGGREGATE_WINDOW_END, nowMillis / 1000);
+            summaries.add(summary);
+        }
+        dropped.clear();
+        return summaries;
+    }
+
+    synchronized boolean shouldDrop(String eventName, long nowMillis) {
+        final Limit limit = getLimits().get(eventName);
+        if (limit == null) {
+            return false;
+        }
+        if (limit.sampleRate < 1 && !isSampledIn(deviceInfo.getDeviceID(), eventName, limit.sampleRate)) {
+            countDrop(eventName, nowMillis).sampledOut++;
+            return true;
+        }
+        if (limit.maxPerMinute > 0 && !takeToken(eventName, limit, nowMillis)) {
+            countDrop(eventName, nowMillis).rateLimited++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the device falls within the sample for the event. The same device and event always give the
+     * same answer.
+     */
+    static boolean isSampledIn(String deviceId, String eventName, double sampleRate) {
+        // 32 bit FNV-1a over the device id, a separator and the event name
+        int hash = 0x811c9dc5;
+        final String id = deviceId != null ? deviceId : "";
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x01000193;
+        }
+        hash = (hash ^ ':') * 0x01000193;
+        for (int i = 0; i < eventName.length(); i++) {
+            hash = (hash ^ eventName.charAt(i)) * 0x01000193;
+        }
+        return (hash & 0xffffffffL) < sampleRate * 0x100000000L;
+    }
+
+    private Dropped countDrop(String eventName, long nowMillis) {
+        if (dropped.isEmpty()) {
+            droppedSince = nowMillis;
+            mainLooperHandler.postDelayed(emitSummaries, Constants.DROPPED_EVENTS_SUMMARY_INTERVAL_MS);
+        }
+        Dropped count = dropped.get(eventName);
+        if (count == null) {
+            count = new Dropped();
+            dropped.put(eventName, count);
+        }
+        return count;
+    }
+
+    // the server's limits are read from the preferences on first use rather than when the instance is created
+    private HashMap<String, Limit> getLimits() {
+        if (limits == null) {
+            limits = mergeLimits(StorageHelper.getStringFromPrefs(context, config,
+                    Constants.KEY_REMOTE_EVENT_RATE_LIMITS, null));
+        }
+        return limits;
+    }
+
+    private HashMap<String, Limit> mergeLimits(String remoteJson) {
+        final HashMap<String, Limit> merged = new HashMap<>(localLimits);
+        merged.putAll(parseLimits(remoteJson));
+        return merged;
+    }
+
+    private HashMap<String, Limit> parseLimits(String json) {
+        final HashMap<String, Limit> parsed = new HashMap<>();
+        if (json == null) {
+            return parsed;
+        }
+        try {
+            final JSONObject limitsJson = new JSONObject(json);
+            final Iterator<String> eventNames = limitsJson.keys();
+            while (eventNames.hasNext()) {
+                final String eventName = eventNames.next();
+                final JSONObject limit = limitsJson.optJSONObject(eventName);
+                if (limit == null) {
+                    continue;
+                }
+                parsed.put(eventName, new Limit(Math.max(0, limit.optInt(Constants.EVENT_RATE_LIMIT_PER_MINUTE, 0)),
+                        Math.max(0, Math.min(1, limit.optDouble(Constants.EVENT_SAMPLE_RATE, 1)))));
+            }
+        } catch (JSONException e) {
+            config.getLogger().verbose(config.getAccountId(), "Could not read event rate limits: " + json, e);
+        }
+        return parsed;
+    }
+
+    private boolean takeToken(String eventName, Limit limit, long nowMillis) {
+        Bucket bucket = buckets.get(eventName);
+        if (bucket == null) {
+            bucket = new Bucket();
+            bucket.tokens = limit.maxPerMinute;
+            bucket.refilledAt = nowMillis;
+            buckets.put(eventName, bucket);
+        }
+        final long elapsed = Math.max(0, nowMillis - bucket.refilledAt);
+        bucket.tokens = Math.min(limit.maxPerMinute, bucket.tokens + elapsed * limit.maxPerMinute / 60000d);
+        bucket.refilledAt = nowMillis;
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+}
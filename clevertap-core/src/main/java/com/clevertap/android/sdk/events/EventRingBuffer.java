@@ -0,0 +1,116 @@
+package com.clevertap.android.sdk.events;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ * <p>
+ * Each slot carries a sequence number that tells a producer whether the slot is free for its position and tells the
+ * consumer whether the slot has been published, so producers only contend on one compare-and-set of the tail and
+ * never wait on each other or on the consumer. A full buffer is reported to the producer instead of blocking it.
+ * <p>
+ * {@link #poll()} must only ever be called by one thread at a time.
+ */
+@RestrictTo(Scope.LIBRARY)
+public class EventRingBuffer<E> {
+
+    private final int capacity;
+
+    private final AtomicReferenceArray<E> elements;
+
+    // written by the consumer only, volatile so that size() can be read from any thread
+    private volatile long head;
+
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity the number of elements the buffer can hold, rounded up to a power of two
+     */
+    public EventRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Adds the element at the tail, if there is room.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // publishes the element, the consumer reads the sequence before the element
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the consumer hasn't freed this slot since the last time round
+                return false;
+            } else {
+                // another producer took this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the head. Only called by the consumer.
+     *
+     * @return the element, or null if the buffer is empty or the producer at the head hasn't published yet
+     */
+    public E poll() {
+        final long position = head;
+        final int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        final E element = elements.get(index);
+        elements.lazySet(index, null);
+        // frees the slot for the producer that comes round to it next
+        sequences.set(index, position + capacity);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * @return the number of elements claimed by producers and not yet polled, which may include elements that
+     * are still being published
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head));
+    }
+}
@@ -12,6 +12,9 @@ import com.clevertap.android.sdk.db.DBAdapter;
 import com.clevertap.android.sdk.task.CTExecutorFactory;
 import com.clevertap.android.sdk.task.Task;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.concurrent.Callable;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -46,6 +49,8 @@ public class CTInboxController {
             boolean videoSupported) {
         this.userId = guid;
         this.dbAdapter = adapter;
+        // expired messages are left out of reads, this removes their rows once per inbox
+        this.dbAdapter.deleteExpiredMessages(this.userId);
         this.messages = this.dbAdapter.getMessages(this.userId);
         this.videoSupported = videoSupported;
         this.ctLockManager = ctLockManager;
@@ -87,6 +92,22 @@ public class CTInboxController {
         }
     }
 
+    /**
+     * Reads a page of messages straight from the DB, newest first, without loading the whole inbox
+     *
+     * @param afterDate      the date of the last message of the previous page
+     * @param afterMessageId the id of the last message of the previous page, or null for the first page
+     * @param limit          the maximum number of messages to return
+     * @param unreadOnly     true to skip messages that have been read
+     */
+    @WorkerThread
+    public ArrayList<CTMessageDAO> getMessages(long afterDate, String afterMessageId, int limit,
+            boolean unreadOnly) {
+        ArrayList<CTMessageDAO> page = this.dbAdapter.getMessages(this.userId, afterDate, afterMessageId, limit,
+                unreadOnly, videoSupported);
+        return page != null ? page : new ArrayList<CTMessageDAO>();
+    }
+
     @AnyThread
     public ArrayList<CTMessageDAO> getUnreadMessages() {
         ArrayList<CTMessageDAO> unread = new ArrayList<>();
@@ -156,7 +177,7 @@ public class CTInboxController {
             haveUpdates = true;
             Logger.v("New Notification Inbox messages added");
             synchronized (messagesLock) {
-                this.messages = this.dbAdapter.getMessages(this.userId);
+                mergeMessages(newMessages);
                 trimMessages();
             }
         }
@@ -220,6 +241,37 @@ public class CTInboxController {
         return null;
     }
 
+    /**
+     * Applies upserted messages to the in-memory inbox, in the order the DB returns them, instead of reading the
+     * whole inbox back. Called with the messages lock held.
+     */
+    private void mergeMessages(ArrayList<CTMessageDAO> newMessages) {
+        final HashSet<String> ids = new HashSet<>();
+        for (CTMessageDAO message : newMessages) {
+            ids.add(message.getId());
+        }
+        final ArrayList<CTMessageDAO> merged = new ArrayList<>();
+        if (this.messages != null) {
+            for (CTMessageDAO message : this.messages) {
+                if (!ids.contains(message.getId())) {
+                    merged.add(message);
+                }
+            }
+        }
+        merged.addAll(newMessages);
+        // newest first, the message id breaks ties between messages with the same date
+        Collections.sort(merged, new Comparator<CTMessageDAO>() {
+            @Override
+            public int compare(CTMessageDAO m1, CTMessageDAO m2) {
+                if (m1.getDate() != m2.getDate()) {
+                    return m1.getDate() < m2.getDate() ? 1 : -1;
+                }
+                return m2.getId().compareTo(m1.getId());
+            }
+        });
+        this.messages = merged;
+    }
+
     @AnyThread
     private void trimMessages() {
         ArrayList<CTMessageDAO> toDelete = new ArrayList<>();
@@ -53,8 +53,15 @@ public class CTMessageDAO {
         this.wzrkParams = wzrkParams;
     }
 
-    boolean containsVideoOrAudio() {
-        CTInboxMessageContent content = new CTInboxMessage(this.toJSON()).getInboxMessageContents().get(0);
+    /**
+     * @return whether the first content item of the message plays video or audio
+     */
+    public boolean containsVideoOrAudio() {
+        ArrayList<CTInboxMessageContent> contents = new CTInboxMessage(this.toJSON()).getInboxMessageContents();
+        if (contents == null || contents.isEmpty()) {
+            return false;
+        }
+        CTInboxMessageContent content = contents.get(0);
         return (content.mediaIsVideo() || content.mediaIsAudio());
     }
 
@@ -0,0 +1,29 @@
+package com.clevertap.android.sdk.interfaces;
+
+/**
+ * Notifies about failed queue uploads and the retries scheduled for them, when retry backoff is enabled on the
+ * config. Callbacks are received on a background thread.
+ */
+public interface UploadRetryListener {
+
+    /**
+     * Uploading has been paused after too many failures in a row.
+     *
+     * @param failureCount the number of failures in a row
+     * @param pauseMillis  how long uploading is paused for
+     */
+    void onUploadCircuitOpened(int failureCount, long pauseMillis);
+
+    /**
+     * An upload succeeded after uploading had been paused.
+     */
+    void onUploadCircuitClosed();
+
+    /**
+     * An upload failed and will be retried.
+     *
+     * @param failureCount the number of failures in a row
+     * @param delayMillis  how long until the retry
+     */
+    void onUploadRetryScheduled(int failureCount, long delayMillis);
+}
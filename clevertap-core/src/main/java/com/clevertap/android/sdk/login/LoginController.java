@@ -94,6 +94,8 @@ public class LoginController {
 
     public void asyncProfileSwitchUser(final Map<String, Object> profile, final String cacheGuid,
             final String cleverTapID) {
+        // queue the open aggregation windows ahead of the switch so they are sent for the current user
+        sessionManager.flushAggregatedEvents();
         Task<Void> task = CTExecutorFactory.executors(config).postAsyncSafelyTask();
         task.execute("resetProfile", new Callable<Void>() {
             @Override
@@ -0,0 +1,104 @@
+package com.clevertap.android.sdk.network;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+
+/**
+ * Picks the byte budget of the next queue upload.
+ * <p>
+ * The budget doubles after a full batch uploads quickly, shrinks by a quarter after a slow upload, and is halved on
+ * a failure, or quartered on a timeout, always staying within the configured bounds. Batches that were smaller than
+ * the budget say nothing about the link and leave it alone. The sizes chosen and the round trip times seen are
+ * kept as metrics.
+ */
+@RestrictTo(Scope.LIBRARY)
+public class AdaptiveBatchSizer {
+
+    static final long FAST_ROUND_TRIP_MILLIS = 1000;
+
+    static final long SLOW_ROUND_TRIP_MILLIS = 5000;
+
+    private int batchCount;
+
+    private int failureCount;
+
+    private long lastRoundTripMillis;
+
+    private final int maxBytes;
+
+    private final int minBytes;
+
+    private int targetBytes;
+
+    private long totalBatchBytes;
+
+    private long totalRoundTripMillis;
+
+    public AdaptiveBatchSizer(int minBytes, int maxBytes) {
+        this.minBytes = Math.max(1, Math.min(minBytes, maxBytes));
+        this.maxBytes = Math.max(this.minBytes, maxBytes);
+        this.targetBytes = this.minBytes;
+    }
+
+    /**
+     * @return the mean size of the batches sent so far
+     */
+    public synchronized long getAverageBatchBytes() {
+        return batchCount == 0 ? 0 : totalBatchBytes / batchCount;
+    }
+
+    /**
+     * @return the mean round trip time of the batches sent so far
+     */
+    public synchronized long getAverageRoundTripMillis() {
+        return batchCount == 0 ? 0 : totalRoundTripMillis / batchCount;
+    }
+
+    public synchronized int getBatchCount() {
+        return batchCount;
+    }
+
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    public synchronized long getLastRoundTripMillis() {
+        return lastRoundTripMillis;
+    }
+
+    /**
+     * @return the byte budget for the next batch
+     */
+    public synchronized int getTargetBytes() {
+        return targetBytes;
+    }
+
+    public synchronized void onFailure(boolean timedOut) {
+        failureCount++;
+        targetBytes = Math.max(minBytes, targetBytes / (timedOut ? 4 : 2));
+    }
+
+    /**
+     * @param batchBytes       the size of the batch that was sent
+     * @param roundTripMillis  how long the upload took, from opening the connection to reading the response
+     */
+    public synchronized void onSuccess(int batchBytes, long roundTripMillis) {
+        batchCount++;
+        totalBatchBytes += batchBytes;
+        totalRoundTripMillis += roundTripMillis;
+        lastRoundTripMillis = roundTripMillis;
+
+        if (roundTripMillis >= SLOW_ROUND_TRIP_MILLIS) {
+            targetBytes = Math.max(minBytes, targetBytes - targetBytes / 4);
+        } else if (roundTripMillis <= FAST_ROUND_TRIP_MILLIS && batchBytes >= targetBytes) {
+            targetBytes = (int) Math.min(maxBytes, targetBytes * 2L);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "target: " + targetBytes + " bytes | batches: " + batchCount + " | average: "
+                + getAverageBatchBytes() + " bytes in " + getAverageRoundTripMillis() + " ms | failures: "
+                + failureCount;
+    }
+}
@@ -0,0 +1,65 @@
+package com.clevertap.android.sdk.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Keeps connections alive between requests.
+ * <p>
+ * {@link HttpURLConnection} pools idle sockets per host and port, but only for responses that were read to the end
+ * and closed without calling {@link HttpURLConnection#disconnect()}. Releasing a connection here drains and closes
+ * the response instead of disconnecting, so the next request to the same domain skips the TCP and TLS setup. TLS
+ * sessions are resumed through the client session cache of the socket factory, which is shared across connections.
+ * A response with more than {@link #MAX_DRAIN_BYTES} left unread isn't worth waiting for, its connection is
+ * disconnected instead.
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+    static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    private final byte[] drainBuffer = new byte[4096];
+
+    @Override
+    public void abort(final HttpURLConnection connection) {
+        connection.disconnect();
+    }
+
+    @Override
+    public HttpURLConnection open(final URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    @Override
+    public void release(final HttpURLConnection connection) {
+        InputStream in;
+        try {
+            in = connection.getInputStream();
+        } catch (IOException e) {
+            // non 2xx responses have their body in the error stream
+            in = connection.getErrorStream();
+        }
+        if (in == null) {
+            connection.disconnect();
+            return;
+        }
+        try {
+            int drained = 0;
+            synchronized (drainBuffer) {
+                int read;
+                while ((read = in.read(drainBuffer)) != -1) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_BYTES) {
+                        connection.disconnect();
+                        return;
+                    }
+                }
+            }
+            in.close();
+        } catch (IOException e) {
+            // the socket can't be reused
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.clevertap.android.sdk.network;
+
+import com.clevertap.android.sdk.events.EventGroup;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The upload state of one {@link EventGroup}. Each group is flushed on its own serial executor with its own lane,
+ * so a group that is backed up or failing doesn't hold back the others.
+ */
+class FlushLane {
+
+    final AdaptiveBatchSizer batchSizer;
+
+    final EventGroup eventGroup;
+
+    // written on the lane's executor, read when scheduling the next flush
+    volatile int networkRetryCount = 0;
+
+    final RetryScheduler retryScheduler;
+
+    // reads the next batch and removes sent ones during a pipelined flush
+    private ExecutorService pipelineExecutor;
+
+    FlushLane(EventGroup eventGroup, AdaptiveBatchSizer batchSizer, RetryScheduler retryScheduler) {
+        this.eventGroup = eventGroup;
+        this.batchSizer = batchSizer;
+        this.retryScheduler = retryScheduler;
+    }
+
+    synchronized ExecutorService getPipelineExecutor() {
+        if (pipelineExecutor == null) {
+            pipelineExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    // idle between flushes, it must not keep the process alive
+                    final Thread thread = new Thread(runnable, "CleverTap-" + eventGroup + "-pipeline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return pipelineExecutor;
+    }
+}
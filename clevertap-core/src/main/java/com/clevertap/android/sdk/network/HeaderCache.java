@@ -0,0 +1,83 @@
+package com.clevertap.android.sdk.network;
+
+import java.util.HashMap;
+import org.json.JSONObject;
+
+/**
+ * Keeps the parts of the queue header and request settings that are stored in SharedPreferences in memory, so that
+ * an upload doesn't read them again:
+ * <ul>
+ * <li>the ARP of the current namespace, until an ARP update is stored</li>
+ * <li>i, j and the request timestamps, which {@link NetworkManager} writes through, until the queues and with them
+ * the user context are cleared</li>
+ * <li>the domains and whether requests are gzipped, which {@link NetworkManager} writes through</li>
+ * </ul>
+ * Values are read from prefs and put here while holding this object's lock, and prefs are written before the cache
+ * is updated or invalidated, so a value read while it was being changed never outlives the change.
+ */
+class HeaderCache {
+
+    private JSONObject arp;
+
+    private String arpNamespace;
+
+    // a key mapped to null is a setting known not to be stored
+    private final HashMap<String, Object> settings = new HashMap<>();
+
+    private final HashMap<String, Long> userContextValues = new HashMap<>();
+
+    private int userContextVersion = 0;
+
+    /**
+     * @return the cached ARP of the namespace, or null if it has to be read from prefs
+     */
+    synchronized JSONObject getARP(String namespace) {
+        return namespace.equals(arpNamespace) ? arp : null;
+    }
+
+    /**
+     * @return the cached setting, which may be null, see {@link #hasSetting(String)}
+     */
+    synchronized Object getSetting(String key) {
+        return settings.get(key);
+    }
+
+    /**
+     * @return false if the setting has to be read from prefs
+     */
+    synchronized boolean hasSetting(String key) {
+        return settings.containsKey(key);
+    }
+
+    synchronized void invalidateARP() {
+        arp = null;
+        arpNamespace = null;
+    }
+
+    synchronized void putARP(String namespace, JSONObject arp) {
+        this.arp = arp;
+        arpNamespace = namespace;
+    }
+
+    synchronized void putSetting(String key, Object value) {
+        settings.put(key, value);
+    }
+
+    /**
+     * @param userContextVersion how many times the user context has been cleared, read before the value is
+     * @return the cached value, or null if it has to be read from prefs
+     */
+    synchronized Long getUserContextValue(String key, int userContextVersion) {
+        if (this.userContextVersion != userContextVersion) {
+            userContextValues.clear();
+            this.userContextVersion = userContextVersion;
+        }
+        return userContextValues.get(key);
+    }
+
+    synchronized void putUserContextValue(String key, long value, int userContextVersion) {
+        if (this.userContextVersion == userContextVersion) {
+            userContextValues.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.clevertap.android.sdk.network;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the connections used for the handshake, queue uploads and image downloads. Set a custom one with
+ * {@link com.clevertap.android.sdk.CleverTapAPI#setHttpTransport(HttpTransport)} to route the SDK's requests through
+ * an app's own HTTP client.
+ */
+public interface HttpTransport {
+
+    /**
+     * Called instead of {@link #release} when the request failed before its response was read, for instance while
+     * the body was being written or on a timeout. The connection must not be read from, as that would send a
+     * partly written request.
+     */
+    void abort(HttpURLConnection connection);
+
+    /**
+     * @param url the request url
+     * @return an unconnected connection, which the SDK configures and then hands back to {@link #release} or
+     * {@link #abort}
+     */
+    HttpURLConnection open(URL url) throws IOException;
+
+    /**
+     * Called once the SDK has read the response of a connection and is done with it, whatever the status code.
+     */
+    void release(HttpURLConnection connection);
+}
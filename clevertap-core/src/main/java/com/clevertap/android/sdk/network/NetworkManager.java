@@ -22,6 +22,8 @@ import com.clevertap.android.sdk.StorageHelper;
 import com.clevertap.android.sdk.db.BaseDatabaseManager;
 import com.clevertap.android.sdk.db.QueueCursor;
 import com.clevertap.android.sdk.events.EventGroup;
+import com.clevertap.android.sdk.events.EventRateLimiter;
+import com.clevertap.android.sdk.interfaces.UploadRetryListener;
 import com.clevertap.android.sdk.login.IdentityRepoFactory;
 import com.clevertap.android.sdk.response.ARPResponse;
 import com.clevertap.android.sdk.response.BaseResponse;
@@ -36,23 +38,38 @@ import com.clevertap.android.sdk.response.InboxResponse;
 import com.clevertap.android.sdk.response.MetadataResponse;
 import com.clevertap.android.sdk.response.ProductConfigResponse;
 import com.clevertap.android.sdk.response.PushAmpResponse;
+import com.clevertap.android.sdk.response.ResponseReader;
 import com.clevertap.android.sdk.task.CTExecutorFactory;
 import com.clevertap.android.sdk.task.Task;
 import com.clevertap.android.sdk.validation.ValidationResultStack;
 import com.clevertap.android.sdk.validation.Validator;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @RestrictTo(Scope.LIBRARY)
@@ -62,6 +79,8 @@ public class NetworkManager extends BaseNetworkManager {
 
     private static SSLContext sslContext;
 
+    private static volatile HttpTransport httpTransport = new DefaultHttpTransport();
+
     private final BaseCallbackManager callbackManager;
 
     private CleverTapResponse cleverTapResponse;
@@ -80,14 +99,23 @@ public class NetworkManager extends BaseNetworkManager {
 
     private final DeviceInfo deviceInfo;
 
+    private final HeaderCache headerCache = new HeaderCache();
+
+    private final EnumMap<EventGroup, FlushLane> lanes = new EnumMap<>(EventGroup.class);
+
     private final Logger logger;
 
-    private int networkRetryCount = 0;
+    // serialises the handshake, building request headers and handling responses across the flush lanes, so that
+    // only the uploads themselves run in parallel
+    private final Object requestLock = new Object();
 
     private final ValidationResultStack validationResultStack;
 
     private int responseFailureCount = 0;
 
+    // the time seen by the lanes' retry schedulers, replaceable in tests
+    RetryScheduler.Clock retryClock = RetryScheduler.SYSTEM_CLOCK;
+
     public static boolean isNetworkOnline(Context context) {
 
         try {
@@ -116,7 +144,8 @@ public class NetworkManager extends BaseNetworkManager {
             final BaseCallbackManager callbackManager,
             CTLockManager ctLockManager,
             Validator validator,
-            LocalDataStore localDataStore) {
+            LocalDataStore localDataStore,
+            EventRateLimiter eventRateLimiter) {
         this.context = context;
         this.config = config;
         this.deviceInfo = deviceInfo;
@@ -141,7 +170,8 @@ public class NetworkManager extends BaseNetworkManager {
                 callbackManager, controllerManager);
 
         cleverTapResponse = new ConsoleResponse(cleverTapResponse, config);
-        cleverTapResponse = new ARPResponse(cleverTapResponse, config, this, validator, controllerManager);
+        cleverTapResponse = new ARPResponse(cleverTapResponse, config, this, validator, controllerManager,
+                eventRateLimiter);
         cleverTapResponse = new MetadataResponse(cleverTapResponse, config, deviceInfo, this);
         cleverTapResponse = new InAppResponse(cleverTapResponse, config, controllerManager, false);
 
@@ -149,6 +179,11 @@ public class NetworkManager extends BaseNetworkManager {
 
         setCleverTapResponse(cleverTapResponse);
 
+        for (EventGroup eventGroup : EventGroup.values()) {
+            lanes.put(eventGroup, new FlushLane(eventGroup,
+                    new AdaptiveBatchSizer(config.getBatchMinBytes(), config.getBatchMaxBytes()),
+                    newRetryScheduler(eventGroup)));
+        }
     }
 
     @Override
@@ -156,39 +191,181 @@ public class NetworkManager extends BaseNetworkManager {
         config.getLogger()
                 .verbose(config.getAccountId(), "Somebody has invoked me to send the queue to CleverTap servers");
 
-        QueueCursor cursor;
-        QueueCursor previousCursor = null;
-        boolean loadMore = true;
+        final FlushLane lane = lanes.get(eventGroup);
+        if (config.isRetryBackoffEnabled() && !lane.retryScheduler.allowRequest()) {
+            config.getLogger().verbose(config.getAccountId(),
+                    eventGroup + " upload backing off for " + lane.retryScheduler.getDelayMillis()
+                            + "ms, not sending the queue yet");
+            callbackManager.getFailureFlushListener().failureFlush(context);
+            return;
+        }
+
+        try {
+            if (config.isPipelinedFlush()) {
+                flushDBQueuePipelined(context, lane);
+                return;
+            }
+
+            QueueCursor cursor;
+            QueueCursor previousCursor = null;
+            boolean loadMore = true;
 
-        while (loadMore) {
+            while (loadMore) {
 
-            cursor = databaseManager.getQueuedEvents(context, 50, previousCursor, eventGroup);
+                cursor = databaseManager.getQueuedEvents(context, getBatchSize(), getBatchMaxBytes(lane),
+                        previousCursor, eventGroup);
 
-            if (cursor == null || cursor.isEmpty()) {
-                config.getLogger().verbose(config.getAccountId(), "No events in the queue, failing");
-                break;
+                if (cursor == null || cursor.isEmpty()) {
+                    config.getLogger().verbose(config.getAccountId(), "No events in the queue, failing");
+                    break;
+                }
+
+                previousCursor = cursor;
+
+                if (cursor.length() <= 0) {
+                    config.getLogger().verbose(config.getAccountId(), "No events in the queue, failing");
+                    break;
+                }
+
+                loadMore = sendQueue(context, eventGroup, cursor);
             }
+        } finally {
+            // a trial that ended without an upload, on an empty queue or a request that couldn't be built,
+            // must not keep the circuit shut for good
+            lane.retryScheduler.cancelTrial();
+        }
+    }
+
+    /**
+     * Sends the queue like {@link #flushDBQueue}, but reads batch N+1 while batch N is uploading and removes sent
+     * batches in the background. Batches still go out one at a time and in order, and a batch is only removed
+     * after it was sent successfully, so a failure or crash at most resends it.
+     */
+    private void flushDBQueuePipelined(final Context context, final FlushLane lane) {
+        final EventGroup eventGroup = lane.eventGroup;
+        final ExecutorService executor = lane.getPipelineExecutor();
+        QueueCursor cursor = databaseManager.getQueuedEvents(context, getBatchSize(), getBatchMaxBytes(lane), null,
+                eventGroup);
+        Future<?> lastRemoval = null;
+        try {
+            while (cursor != null && !cursor.isEmpty()) {
+                final QueueCursor inFlight = cursor;
+                final Future<QueueCursor> next = executor.submit(new Callable<QueueCursor>() {
+                    @Override
+                    public QueueCursor call() {
+                        return databaseManager.getNextQueuedEvents(context, getBatchSize(), getBatchMaxBytes(lane),
+                                inFlight);
+                    }
+                });
+
+                if (!sendQueue(context, eventGroup, inFlight)) {
+                    // the batch stays at the head of the queue for the next flush
+                    break;
+                }
 
-            previousCursor = cursor;
-            JSONArray queue = cursor.getData();
+                lastRemoval = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        databaseManager.removeSentQueuedEvents(context, inFlight);
+                    }
+                });
+                cursor = next.get();
+            }
 
-            if (queue == null || queue.length() <= 0) {
-                config.getLogger().verbose(config.getAccountId(), "No events in the queue, failing");
-                break;
+            // the next flush starts from the head of the queue, so the sent batches must be gone by then
+            if (lastRemoval != null) {
+                lastRemoval.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.verbose(config.getAccountId(), "Pipelined flush failed, the rest of the queue will be retried",
+                    e.getCause());
+        }
 
-            loadMore = sendQueue(context, eventGroup, queue);
+        if (cursor == null || cursor.isEmpty()) {
+            config.getLogger().verbose(config.getAccountId(), "No events in the queue, failing");
         }
     }
 
+    private RetryScheduler newRetryScheduler(final EventGroup eventGroup) {
+        final RetryScheduler.Clock clock = new RetryScheduler.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return retryClock.currentTimeMillis();
+            }
+        };
+        return new RetryScheduler(Constants.PUSH_DELAY_MS, Constants.MAX_DELAY_FREQUENCY,
+                Constants.RETRY_CIRCUIT_BREAKER_THRESHOLD, Constants.RETRY_CIRCUIT_OPEN_MS,
+                clock, new SecureRandom(), new UploadRetryListener() {
+            @Override
+            public void onUploadCircuitOpened(int failureCount, long pauseMillis) {
+                logger.debug(config.getAccountId(), failureCount + " " + eventGroup
+                        + " uploads failed in a row, pausing them for " + pauseMillis + "ms");
+                UploadRetryListener listener = callbackManager.getUploadRetryListener();
+                if (listener != null) {
+                    listener.onUploadCircuitOpened(failureCount, pauseMillis);
+                }
+            }
+
+            @Override
+            public void onUploadCircuitClosed() {
+                logger.debug(config.getAccountId(), eventGroup + " upload succeeded, resuming uploads");
+                UploadRetryListener listener = callbackManager.getUploadRetryListener();
+                if (listener != null) {
+                    listener.onUploadCircuitClosed();
+                }
+            }
+
+            @Override
+            public void onUploadRetryScheduled(int failureCount, long delayMillis) {
+                logger.debug(config.getAccountId(),
+                        eventGroup + " upload failure #" + failureCount + ", retrying in " + delayMillis + "ms");
+                UploadRetryListener listener = callbackManager.getUploadRetryListener();
+                if (listener != null) {
+                    listener.onUploadRetryScheduled(failureCount, delayMillis);
+                }
+            }
+        });
+    }
+
+    RetryScheduler getRetryScheduler(EventGroup eventGroup) {
+        return lanes.get(eventGroup).retryScheduler;
+    }
+
+    AdaptiveBatchSizer getBatchSizer(EventGroup eventGroup) {
+        return lanes.get(eventGroup).batchSizer;
+    }
+
+    /**
+     * @return the maximum number of events per upload
+     */
+    private int getBatchSize() {
+        return config.isAdaptiveBatchSizing() ? Constants.MAX_ADAPTIVE_BATCH_SIZE : 50;
+    }
+
+    /**
+     * @return the byte budget of the next upload, or 0 when uploads are only limited by count
+     */
+    private int getBatchMaxBytes(FlushLane lane) {
+        return config.isAdaptiveBatchSizing() ? lane.batchSizer.getTargetBytes() : 0;
+    }
+
     //gives delay frequency based on region
     //randomly adds delay to 1s delay in case of non-EU regions
     @Override
-    public int getDelayFrequency() {
+    public int getDelayFrequency(final EventGroup eventGroup) {
+        final FlushLane lane = lanes.get(eventGroup);
 
+        if (config.isRetryBackoffEnabled()) {
+            // never flush more often than once a second, backed off or not
+            return (int) Math.max(Constants.PUSH_DELAY_MS, lane.retryScheduler.getDelayMillis());
+        }
+
+        final int networkRetryCount = lane.networkRetryCount;
         int minDelayFrequency = 0;
 
-        logger.debug(config.getAccountId(), "Network retry #" + networkRetryCount);
+        logger.debug(config.getAccountId(), eventGroup + " network retry #" + networkRetryCount);
 
         //Retry with delay as 1s for first 10 retries
         if (networkRetryCount < 10) {
@@ -230,53 +407,77 @@ public class NetworkManager extends BaseNetworkManager {
         return "ARP:" + accountId + ":" + deviceInfo.getDeviceID();
     }
 
-    public void incrementResponseFailureCount() {
+    public synchronized void incrementResponseFailureCount() {
         responseFailureCount++;
     }
 
     @Override
     public void initHandshake(final EventGroup eventGroup, final Runnable handshakeSuccessCallback) {
-        responseFailureCount = 0;
-        setDomain(context, null);
-        performHandshakeForDomain(context, eventGroup, handshakeSuccessCallback);
+        final boolean success;
+        synchronized (requestLock) {
+            if (!needsHandshakeForDomain(eventGroup)) {
+                // another lane finished a handshake while this one waited
+                success = true;
+            } else {
+                setResponseFailureCount(0);
+                setDomain(context, null);
+                success = performHandshakeForDomain(context, eventGroup);
+            }
+        }
+        if (success) {
+            handshakeSuccessCallback.run();
+        }
     }
 
     @Override
     public boolean needsHandshakeForDomain(final EventGroup eventGroup) {
         final String domain = getDomainFromPrefsOrMetadata(eventGroup);
-        return domain == null || responseFailureCount > 5;
+        return domain == null || getResponseFailureCount() > 5;
     }
 
     @SuppressLint("CommitPrefEdits")
     public void setI(Context context, long i) {
-        final SharedPreferences prefs = StorageHelper.getPreferences(context, Constants.NAMESPACE_IJ);
-        final SharedPreferences.Editor editor = prefs.edit();
-        editor.putLong(StorageHelper.storageKeyWithSuffix(config, Constants.KEY_I), i);
-        StorageHelper.persist(editor);
+        synchronized (headerCache) {
+            final SharedPreferences prefs = StorageHelper.getPreferences(context, Constants.NAMESPACE_IJ);
+            final SharedPreferences.Editor editor = prefs.edit();
+            editor.putLong(StorageHelper.storageKeyWithSuffix(config, Constants.KEY_I), i);
+            StorageHelper.persist(editor);
+            headerCache.putUserContextValue(Constants.KEY_I, i, databaseManager.getQueueClearCount());
+        }
     }
 
     @SuppressLint("CommitPrefEdits")
     public void setJ(Context context, long j) {
-        final SharedPreferences prefs = StorageHelper.getPreferences(context, Constants.NAMESPACE_IJ);
-        final SharedPreferences.Editor editor = prefs.edit();
-        editor.putLong(StorageHelper.storageKeyWithSuffix(config, Constants.KEY_J), j);
-        StorageHelper.persist(editor);
+        synchronized (headerCache) {
+            final SharedPreferences prefs = StorageHelper.getPreferences(context, Constants.NAMESPACE_IJ);
+            final SharedPreferences.Editor editor = prefs.edit();
+            editor.putLong(StorageHelper.storageKeyWithSuffix(config, Constants.KEY_J), j);
+            StorageHelper.persist(editor);
+            headerCache.putUserContextValue(Constants.KEY_J, j, databaseManager.getQueueClearCount());
+        }
+    }
+
+    /**
+     * Drops the ARP kept in memory for the queue header, to be called after an ARP update is stored.
+     */
+    public void invalidateARP() {
+        headerCache.invalidateARP();
     }
 
-    HttpsURLConnection buildHttpsURLConnection(final String endpoint)
+    HttpURLConnection buildHttpsURLConnection(final String endpoint)
             throws IOException {
         URL url = new URL(endpoint);
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+        HttpURLConnection conn = getHttpTransport().open(url);
         conn.setConnectTimeout(10000);
         conn.setReadTimeout(10000);
         conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
         conn.setRequestProperty("X-CleverTap-Account-ID", config.getAccountId());
         conn.setRequestProperty("X-CleverTap-Token", config.getAccountToken());
         conn.setInstanceFollowRedirects(false);
-        if (config.isSslPinningEnabled()) {
+        if (config.isSslPinningEnabled() && conn instanceof HttpsURLConnection) {
             SSLContext _sslContext = getSSLContext();
             if (_sslContext != null) {
-                conn.setSSLSocketFactory(getPinnedCertsSslSocketfactory(_sslContext));
+                ((HttpsURLConnection) conn).setSSLSocketFactory(getPinnedCertsSslSocketfactory(_sslContext));
             }
         }
         return conn;
@@ -332,9 +533,9 @@ public class NetworkManager extends BaseNetworkManager {
             // Ignore
         }
         if (eventGroup.equals(EventGroup.PUSH_NOTIFICATION_VIEWED)) {
-            return StorageHelper.getStringFromPrefs(context, config, Constants.SPIKY_KEY_DOMAIN_NAME, null);
+            return getStoredDomain(Constants.SPIKY_KEY_DOMAIN_NAME);
         } else {
-            return StorageHelper.getStringFromPrefs(context, config, Constants.KEY_DOMAIN_NAME, null);
+            return getStoredDomain(Constants.KEY_DOMAIN_NAME);
         }
 
     }
@@ -369,22 +570,41 @@ public class NetworkManager extends BaseNetworkManager {
     }
 
     int getFirstRequestTimestamp() {
-        return StorageHelper.getIntFromPrefs(context, config, Constants.KEY_FIRST_TS, 0);
+        synchronized (headerCache) {
+            final int version = databaseManager.getQueueClearCount();
+            Long ts = headerCache.getUserContextValue(Constants.KEY_FIRST_TS, version);
+            if (ts == null) {
+                ts = (long) StorageHelper.getIntFromPrefs(context, config, Constants.KEY_FIRST_TS, 0);
+                headerCache.putUserContextValue(Constants.KEY_FIRST_TS, ts, version);
+            }
+            return ts.intValue();
+        }
     }
 
     int getLastRequestTimestamp() {
-        return StorageHelper.getIntFromPrefs(context, config, Constants.KEY_LAST_TS, 0);
+        synchronized (headerCache) {
+            final int version = databaseManager.getQueueClearCount();
+            Long ts = headerCache.getUserContextValue(Constants.KEY_LAST_TS, version);
+            if (ts == null) {
+                ts = (long) StorageHelper.getIntFromPrefs(context, config, Constants.KEY_LAST_TS, 0);
+                headerCache.putUserContextValue(Constants.KEY_LAST_TS, ts, version);
+            }
+            return ts.intValue();
+        }
     }
 
     void setLastRequestTimestamp(int ts) {
-        StorageHelper.putInt(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_LAST_TS), ts);
+        synchronized (headerCache) {
+            StorageHelper.putInt(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_LAST_TS), ts);
+            headerCache.putUserContextValue(Constants.KEY_LAST_TS, ts, databaseManager.getQueueClearCount());
+        }
     }
 
-    int getResponseFailureCount() {
+    synchronized int getResponseFailureCount() {
         return responseFailureCount;
     }
 
-    void setResponseFailureCount(final int responseFailureCount) {
+    synchronized void setResponseFailureCount(final int responseFailureCount) {
         this.responseFailureCount = responseFailureCount;
     }
 
@@ -392,164 +612,162 @@ public class NetworkManager extends BaseNetworkManager {
     //randomly adds delay to 1s delay in case of non-EU regions
 
     boolean hasDomainChanged(final String newDomain) {
-        final String oldDomain = StorageHelper.getStringFromPrefs(context, config, Constants.KEY_DOMAIN_NAME, null);
+        final String oldDomain = getStoredDomain(Constants.KEY_DOMAIN_NAME);
         return !newDomain.equals(oldDomain);
     }
 
-    String insertHeader(Context context, JSONArray arr) {
-        try {
-            final JSONObject header = new JSONObject();
-
-            String deviceId = deviceInfo.getDeviceID();
-            if (deviceId != null && !deviceId.equals("")) {
-                header.put("g", deviceId);
-            } else {
-                logger.verbose(config.getAccountId(),
-                        "CRITICAL: Couldn't finalise on a device ID! Using error device ID instead!");
-            }
+    /**
+     * Builds the meta object sent as the first element of every queue request.
+     *
+     * @return the header, or null if the account ID/token are missing and the request can't be configured
+     */
+    JSONObject getQueueHeader(Context context) throws JSONException {
+        final JSONObject header = new JSONObject();
 
-            header.put("type", "meta");
+        String deviceId = deviceInfo.getDeviceID();
+        if (deviceId != null && !deviceId.equals("")) {
+            header.put("g", deviceId);
+        } else {
+            logger.verbose(config.getAccountId(),
+                    "CRITICAL: Couldn't finalise on a device ID! Using error device ID instead!");
+        }
 
-            JSONObject appFields = deviceInfo.getAppLaunchedFields();
-            header.put("af", appFields);
+        header.put("type", "meta");
 
-            long i = getI();
-            if (i > 0) {
-                header.put("_i", i);
-            }
+        JSONObject appFields = deviceInfo.getAppLaunchedFields();
+        header.put("af", appFields);
 
-            long j = getJ();
-            if (j > 0) {
-                header.put("_j", j);
-            }
+        long i = getI();
+        if (i > 0) {
+            header.put("_i", i);
+        }
 
-            String accountId = config.getAccountId();
-            String token = config.getAccountToken();
+        long j = getJ();
+        if (j > 0) {
+            header.put("_j", j);
+        }
 
-            if (accountId == null || token == null) {
-                logger
-                        .debug(config.getAccountId(),
-                                "Account ID/token not found, unable to configure queue request");
-                return null;
-            }
-
-            header.put("id", accountId);
-            header.put("tk", token);
-            header.put("l_ts", getLastRequestTimestamp());
-            header.put("f_ts", getFirstRequestTimestamp());
-            header.put("ct_pi", IdentityRepoFactory
-                    .getRepo(this.context, config, deviceInfo,
-                            validationResultStack).getIdentitySet().toString());
-            header.put("ddnd",
-                    !(deviceInfo.getNotificationsEnabledForUser() && (controllerManager.getPushProviders()
-                            .isNotificationSupported())));
-            if (coreMetaData.isBgPing()) {
-                header.put("bk", 1);
-                coreMetaData.setBgPing(false);
-            }
-            header.put("rtl", getRenderedTargetList(databaseManager.loadDBAdapter(this.context)));
-            if (!coreMetaData.isInstallReferrerDataSent()) {
-                header.put("rct", coreMetaData.getReferrerClickTime());
-                header.put("ait", coreMetaData.getAppInstallTime());
-            }
-            header.put("frs", coreMetaData.isFirstRequestInSession());
-            coreMetaData.setFirstRequestInSession(false);
-
-            // Attach ARP
-            try {
-                final JSONObject arp = getARP();
-                if (arp != null && arp.length() > 0) {
-                    header.put("arp", arp);
-                }
-            } catch (Throwable t) {
-                logger.verbose(config.getAccountId(), "Failed to attach ARP", t);
-            }
+        String accountId = config.getAccountId();
+        String token = config.getAccountToken();
 
-            JSONObject ref = new JSONObject();
-            try {
+        if (accountId == null || token == null) {
+            logger
+                    .debug(config.getAccountId(),
+                            "Account ID/token not found, unable to configure queue request");
+            return null;
+        }
 
-                String utmSource = coreMetaData.getSource();
-                if (utmSource != null) {
-                    ref.put("us", utmSource);
-                }
+        header.put("id", accountId);
+        header.put("tk", token);
+        header.put("l_ts", getLastRequestTimestamp());
+        header.put("f_ts", getFirstRequestTimestamp());
+        header.put("ct_pi", IdentityRepoFactory
+                .getRepo(this.context, config, deviceInfo,
+                        validationResultStack).getIdentitySet().toString());
+        header.put("ddnd",
+                !(deviceInfo.getNotificationsEnabledForUser() && (controllerManager.getPushProviders()
+                        .isNotificationSupported())));
+        if (coreMetaData.isBgPing()) {
+            header.put("bk", 1);
+            coreMetaData.setBgPing(false);
+        }
+        header.put("rtl", getRenderedTargetList(databaseManager.loadDBAdapter(this.context)));
+        if (!coreMetaData.isInstallReferrerDataSent()) {
+            header.put("rct", coreMetaData.getReferrerClickTime());
+            header.put("ait", coreMetaData.getAppInstallTime());
+        }
+        header.put("frs", coreMetaData.isFirstRequestInSession());
+        coreMetaData.setFirstRequestInSession(false);
 
-                String utmMedium = coreMetaData.getMedium();
-                if (utmMedium != null) {
-                    ref.put("um", utmMedium);
-                }
+        // Attach ARP
+        try {
+            final JSONObject arp = getARP();
+            if (arp != null && arp.length() > 0) {
+                header.put("arp", arp);
+            }
+        } catch (Throwable t) {
+            logger.verbose(config.getAccountId(), "Failed to attach ARP", t);
+        }
 
-                String utmCampaign = coreMetaData.getCampaign();
-                if (utmCampaign != null) {
-                    ref.put("uc", utmCampaign);
-                }
+        JSONObject ref = new JSONObject();
+        try {
 
-                if (ref.length() > 0) {
-                    header.put("ref", ref);
-                }
+            String utmSource = coreMetaData.getSource();
+            if (utmSource != null) {
+                ref.put("us", utmSource);
+            }
 
-            } catch (Throwable t) {
-                logger.verbose(config.getAccountId(), "Failed to attach ref", t);
+            String utmMedium = coreMetaData.getMedium();
+            if (utmMedium != null) {
+                ref.put("um", utmMedium);
             }
 
-            JSONObject wzrkParams = coreMetaData.getWzrkParams();
-            if (wzrkParams != null && wzrkParams.length() > 0) {
-                header.put("wzrk_ref", wzrkParams);
+            String utmCampaign = coreMetaData.getCampaign();
+            if (utmCampaign != null) {
+                ref.put("uc", utmCampaign);
             }
 
-            if (controllerManager.getInAppFCManager() != null) {
-                Logger.v("Attaching InAppFC to Header");
-                controllerManager.getInAppFCManager().attachToHeader(context, header);
-            } else {
-                logger.verbose(config.getAccountId(),
-                        "controllerManager.getInAppFCManager() is NULL, not Attaching InAppFC to Header");
+            if (ref.length() > 0) {
+                header.put("ref", ref);
             }
 
-            // Resort to string concat for backward compatibility
-            return "[" + header.toString() + ", " + arr.toString().substring(1);
         } catch (Throwable t) {
-            logger.verbose(config.getAccountId(), "CommsManager: Failed to attach header", t);
-            return arr.toString();
+            logger.verbose(config.getAccountId(), "Failed to attach ref", t);
         }
+
+        JSONObject wzrkParams = coreMetaData.getWzrkParams();
+        if (wzrkParams != null && wzrkParams.length() > 0) {
+            header.put("wzrk_ref", wzrkParams);
+        }
+
+        if (controllerManager.getInAppFCManager() != null) {
+            Logger.v("Attaching InAppFC to Header");
+            controllerManager.getInAppFCManager().attachToHeader(context, header);
+        } else {
+            logger.verbose(config.getAccountId(),
+                    "controllerManager.getInAppFCManager() is NULL, not Attaching InAppFC to Header");
+        }
+
+        return header;
     }
 
-    void performHandshakeForDomain(final Context context, final EventGroup eventGroup,
-            final Runnable handshakeSuccessCallback) {
+    /**
+     * @return true if the handshake succeeded and requests may be sent. Called with the request lock held.
+     */
+    boolean performHandshakeForDomain(final Context context, final EventGroup eventGroup) {
         final String endpoint = getEndpoint(true, eventGroup);
         if (endpoint == null) {
             logger.verbose(config.getAccountId(), "Unable to perform handshake, endpoint is null");
         }
         logger.verbose(config.getAccountId(), "Performing handshake with " + endpoint);
 
-        HttpsURLConnection conn = null;
+        HttpURLConnection conn = null;
+        boolean responded = false;
         try {
             conn = buildHttpsURLConnection(endpoint);
             final int responseCode = conn.getResponseCode();
+            responded = true;
             if (responseCode != 200) {
                 logger
                         .verbose(config.getAccountId(),
                                 "Invalid HTTP status code received for handshake - " + responseCode);
-                return;
+                return false;
             }
 
             logger.verbose(config.getAccountId(), "Received success from handshake :)");
 
             if (processIncomingHeaders(context, conn)) {
                 logger.verbose(config.getAccountId(), "We are not muted");
-                // We have a new domain, run the callback
-                handshakeSuccessCallback.run();
+                // We have a new domain, the callback can run
+                return true;
             }
         } catch (Throwable t) {
+            responded = false;
             logger.verbose(config.getAccountId(), "Failed to perform handshake!", t);
         } finally {
-            if (conn != null) {
-                try {
-                    conn.getInputStream().close();
-                    conn.disconnect();
-                } catch (Throwable t) {
-                    // Ignore
-                }
-            }
+            releaseConnection(conn, responded);
         }
+        return false;
     }
 
     /**
@@ -557,7 +775,7 @@ public class NetworkManager extends BaseNetworkManager {
      *
      * @return True to continue sending requests, false otherwise.
      */
-    boolean processIncomingHeaders(final Context context, final HttpsURLConnection conn) {
+    boolean processIncomingHeaders(final Context context, final HttpURLConnection conn) {
         final String muteCommand = conn.getHeaderField(Constants.HEADER_MUTE);
         if (muteCommand != null && muteCommand.trim().length() > 0) {
             if (muteCommand.equals("true")) {
@@ -568,6 +786,11 @@ public class NetworkManager extends BaseNetworkManager {
             }
         }
 
+        final String gzipRequests = conn.getHeaderField(Constants.HEADER_GZIP_REQUESTS);
+        if (gzipRequests != null && gzipRequests.trim().length() > 0) {
+            setRequestCompressionSupported(context, gzipRequests.trim().equals("true"));
+        }
+
         final String domainName = conn.getHeaderField(Constants.HEADER_DOMAIN_NAME);
         Logger.v("Getting domain from header - " + domainName);
         if (domainName == null || domainName.trim().length() == 0) {
@@ -592,8 +815,8 @@ public class NetworkManager extends BaseNetworkManager {
      * @return true if the network request succeeded. Anything non 200 results in a false.
      */
     @Override
-    boolean sendQueue(final Context context, final EventGroup eventGroup, final JSONArray queue) {
-        if (queue == null || queue.length() <= 0) {
+    boolean sendQueue(final Context context, final EventGroup eventGroup, final QueueCursor cursor) {
+        if (cursor == null || cursor.length() <= 0) {
             return false;
         }
 
@@ -602,108 +825,244 @@ public class NetworkManager extends BaseNetworkManager {
             return false;
         }
 
-        HttpsURLConnection conn = null;
+        final FlushLane lane = lanes.get(eventGroup);
+        HttpURLConnection conn = null;
+        // true once the response status was read, until anything goes wrong reading the rest of the response
+        boolean responded = false;
+        long retryAfterMillis = 0;
         try {
-            final String endpoint = getEndpoint(false, eventGroup);
+            final String endpoint;
+            final int requestTimestamp;
+            String header = null;
+            synchronized (requestLock) {
+                endpoint = getEndpoint(false, eventGroup);
+
+                // This is just a safety check, which would only arise
+                // if upstream didn't adhere to the protocol (sent nothing during the initial handshake)
+                if (endpoint == null) {
+                    logger.debug(config.getAccountId(), "Problem configuring queue endpoint, unable to send queue");
+                    return false;
+                }
+                // another lane may start a request before this one's response is handled
+                requestTimestamp = getCurrentRequestTimestamp();
 
-            // This is just a safety check, which would only arise
-            // if upstream didn't adhere to the protocol (sent nothing during the initial handshake)
-            if (endpoint == null) {
-                logger.debug(config.getAccountId(), "Problem configuring queue endpoint, unable to send queue");
-                return false;
+                try {
+                    final JSONObject headerObject = getQueueHeader(context);
+                    if (headerObject == null) {
+                        logger.debug(config.getAccountId(),
+                                "Problem configuring queue request, unable to send queue");
+                        return false;
+                    }
+                    header = headerObject.toString();
+                } catch (Throwable t) {
+                    logger.verbose(config.getAccountId(), "CommsManager: Failed to attach header", t);
+                }
             }
 
+            final long start = System.currentTimeMillis();
             conn = buildHttpsURLConnection(endpoint);
+            // a retry of a batch the server may already have taken carries the same id, so it isn't counted twice
+            conn.setRequestProperty(Constants.HEADER_BATCH_ID, databaseManager.getBatchId(context, cursor));
 
-            final String body;
-            final String req = insertHeader(context, queue);
-            if (req == null) {
-                logger.debug(config.getAccountId(), "Problem configuring queue request, unable to send queue");
-                return false;
+            final boolean gzip = isRequestCompressionSupported(context);
+            final List<?> events;
+            if (cursor.getPayloads() != null) {
+                events = cursor.getPayloads();
+            } else {
+                final JSONArray queue = cursor.getData();
+                final ArrayList<Object> queuedEvents = new ArrayList<>(queue.length());
+                for (int i = 0; i < queue.length(); i++) {
+                    queuedEvents.add(queue.get(i));
+                }
+                events = queuedEvents;
             }
-
-            logger.debug(config.getAccountId(), "Send queue contains " + queue.length() + " items: " + req);
-            logger.debug(config.getAccountId(), "Sending queue to: " + endpoint);
-            conn.setDoOutput(true);
-            // noinspection all
-            conn.getOutputStream().write(req.getBytes("UTF-8"));
+            writeQueue(conn, header, events, endpoint, gzip);
 
             final int responseCode = conn.getResponseCode();
+            responded = true;
+
+            if (gzip && responseCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+                // the server stopped taking compressed requests, send them uncompressed until the next handshake
+                setRequestCompressionSupported(context, false);
+            }
 
             // Always check for a 200 OK
             if (responseCode != 200) {
+                retryAfterMillis = RetryScheduler.parseRetryAfter(conn.getHeaderField(Constants.HEADER_RETRY_AFTER),
+                        System.currentTimeMillis());
                 throw new IOException("Response code is not 200. It is " + responseCode);
             }
 
-            // Check for a change in domain
-            final String newDomain = conn.getHeaderField(Constants.HEADER_DOMAIN_NAME);
-            if (newDomain != null && newDomain.trim().length() > 0) {
-                if (hasDomainChanged(newDomain)) {
-                    // The domain has changed. Return a status of -1 so that the caller retries
-                    setDomain(context, newDomain);
-                    logger.debug(config.getAccountId(),
-                            "The domain has changed to " + newDomain + ". The request will be retried shortly.");
-                    return false;
+            boolean processResponse;
+            synchronized (requestLock) {
+                // Check for a change in domain
+                final String newDomain = conn.getHeaderField(Constants.HEADER_DOMAIN_NAME);
+                if (newDomain != null && newDomain.trim().length() > 0) {
+                    if (hasDomainChanged(newDomain)) {
+                        // The domain has changed. Return a status of -1 so that the caller retries
+                        setDomain(context, newDomain);
+                        logger.debug(config.getAccountId(),
+                                "The domain has changed to " + newDomain + ". The request will be retried shortly.");
+                        return false;
+                    }
                 }
-            }
 
-            if (processIncomingHeaders(context, conn)) {
-                // noinspection all
-                BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "utf-8"));
+                processResponse = processIncomingHeaders(context, conn);
+            }
 
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    sb.append(line);
+            // the body is read outside the lock, only handling it is serialised with the other lanes
+            JSONObject response = null;
+            String body = null;
+            if (processResponse) {
+                if (config.isStreamingResponseParsing()) {
+                    try {
+                        response = ResponseReader.read(conn.getInputStream());
+                    } catch (Throwable t) {
+                        // the server took the batch, a body that can't be read doesn't make it a failed upload
+                        responded = false;
+                        incrementResponseFailureCount();
+                        logger.verbose(config.getAccountId(), "Problem reading send queue response", t);
+                        processResponse = false;
+                    }
+                } else {
+                    // noinspection all
+                    BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "utf-8"));
+
+                    StringBuilder sb = new StringBuilder();
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        sb.append(line);
+                    }
+                    body = sb.toString();
                 }
-                body = sb.toString();
-                getCleverTapResponse().processResponse(null, body, this.context);
             }
 
-            setLastRequestTimestamp(getCurrentRequestTimestamp());
-            setFirstRequestTimestampIfNeeded(getCurrentRequestTimestamp());
+            synchronized (requestLock) {
+                if (processResponse) {
+                    getCleverTapResponse().processResponse(response, body, this.context);
+                }
+                setLastRequestTimestamp(requestTimestamp);
+                setFirstRequestTimestampIfNeeded(requestTimestamp);
+            }
 
             logger.debug(config.getAccountId(), "Queue sent successfully");
 
-            responseFailureCount = 0;
-            networkRetryCount = 0; //reset retry count when queue is sent successfully
+            lane.batchSizer.onSuccess(cursor.getByteCount(), System.currentTimeMillis() - start);
+            logger.verbose(config.getAccountId(), eventGroup + " queue upload metrics - " + lane.batchSizer);
+
+            setResponseFailureCount(0);
+            lane.networkRetryCount = 0; //reset retry count when queue is sent successfully
+            lane.retryScheduler.onSuccess();
             return true;
         } catch (Throwable e) {
+            responded = false;
             logger.debug(config.getAccountId(),
                     "An exception occurred while sending the queue, will retry: ", e);
-            responseFailureCount++;
-            networkRetryCount++;
+            incrementResponseFailureCount();
+            lane.networkRetryCount++;
+            lane.batchSizer.onFailure(e instanceof SocketTimeoutException);
+            if (config.isRetryBackoffEnabled()) {
+                lane.retryScheduler.onFailure(retryAfterMillis);
+            }
             callbackManager.getFailureFlushListener().failureFlush(context);
             return false;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.getInputStream().close();
-                    conn.disconnect();
-                } catch (Throwable t) {
-                    // Ignore
-                }
+            releaseConnection(conn, responded);
+        }
+    }
+
+    /**
+     * Streams the header followed by the events into the request body, one event at a time, so that the body is
+     * never held in memory as a whole.
+     *
+     * @param header the queue header, or null to send the events without one
+     * @param events the stored payload strings, or the parsed event objects
+     */
+    private void writeQueue(final HttpURLConnection conn, final String header, final List<?> events,
+            final String endpoint, final boolean gzip) throws IOException {
+        logger.debug(config.getAccountId(), "Send queue contains " + events.size() + " items");
+        logger.debug(config.getAccountId(), "Sending queue to: " + endpoint);
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(openRequestBody(conn, gzip), "UTF-8"));
+        writer.write('[');
+        boolean first = true;
+        if (header != null) {
+            writer.write(header);
+            first = false;
+        }
+        for (Object event : events) {
+            if (!first) {
+                writer.write(", ");
             }
+            writer.write(event.toString());
+            first = false;
+        }
+        writer.write(']');
+        writer.close();
+    }
+
+    /**
+     * Opens the request body for writing, streamed in chunks. The returned stream must be closed to finish the body.
+     *
+     * @param gzip true to compress the body, only if the server has said it accepts compressed requests
+     */
+    static OutputStream openRequestBody(final HttpURLConnection conn, final boolean gzip) throws IOException {
+        conn.setDoOutput(true);
+        // without a streaming mode the connection buffers the whole body before sending it
+        conn.setChunkedStreamingMode(0);
+        if (!gzip) {
+            return conn.getOutputStream();
+        }
+        conn.setRequestProperty("Content-Encoding", "gzip");
+        return new GZIPOutputStream(conn.getOutputStream());
+    }
+
+    boolean isRequestCompressionSupported(final Context context) {
+        synchronized (headerCache) {
+            Boolean supported = (Boolean) headerCache.getSetting(Constants.KEY_GZIP_REQUESTS);
+            if (supported == null) {
+                supported = StorageHelper.getInt(context,
+                        StorageHelper.storageKeyWithSuffix(config, Constants.KEY_GZIP_REQUESTS), 0) == 1;
+                headerCache.putSetting(Constants.KEY_GZIP_REQUESTS, supported);
+            }
+            return supported;
+        }
+    }
+
+    void setRequestCompressionSupported(final Context context, final boolean supported) {
+        synchronized (headerCache) {
+            StorageHelper.putInt(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_GZIP_REQUESTS),
+                    supported ? 1 : 0);
+            headerCache.putSetting(Constants.KEY_GZIP_REQUESTS, supported);
         }
     }
 
     void setDomain(final Context context, String domainName) {
         logger.verbose(config.getAccountId(), "Setting domain to " + domainName);
-        StorageHelper.putString(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_DOMAIN_NAME),
-                domainName);
+        synchronized (headerCache) {
+            StorageHelper.putString(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_DOMAIN_NAME),
+                    domainName);
+            headerCache.putSetting(Constants.KEY_DOMAIN_NAME, domainName);
+        }
     }
 
     void setFirstRequestTimestampIfNeeded(int ts) {
-        if (getFirstRequestTimestamp() > 0) {
-            return;
+        synchronized (headerCache) {
+            if (getFirstRequestTimestamp() > 0) {
+                return;
+            }
+            StorageHelper.putInt(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_FIRST_TS), ts);
+            headerCache.putUserContextValue(Constants.KEY_FIRST_TS, ts, databaseManager.getQueueClearCount());
         }
-        StorageHelper.putInt(context, StorageHelper.storageKeyWithSuffix(config, Constants.KEY_FIRST_TS), ts);
     }
 
     void setSpikyDomain(final Context context, String spikyDomainName) {
         logger.verbose(config.getAccountId(), "Setting spiky domain to " + spikyDomainName);
-        StorageHelper.putString(context, StorageHelper.storageKeyWithSuffix(config, Constants.SPIKY_KEY_DOMAIN_NAME),
-                spikyDomainName);
+        synchronized (headerCache) {
+            StorageHelper.putString(context,
+                    StorageHelper.storageKeyWithSuffix(config, Constants.SPIKY_KEY_DOMAIN_NAME), spikyDomainName);
+            headerCache.putSetting(Constants.SPIKY_KEY_DOMAIN_NAME, spikyDomainName);
+        }
     }
 
     /**
@@ -713,12 +1072,24 @@ public class NetworkManager extends BaseNetworkManager {
      * @return A JSON object containing the ARP key/values. Can be null.
      */
     private JSONObject getARP() {
-        try {
-            final String nameSpaceKey = getNewNamespaceARPKey();
-            if (nameSpaceKey == null) {
-                return null;
+        final String nameSpaceKey = getNewNamespaceARPKey();
+        if (nameSpaceKey == null) {
+            return null;
+        }
+        synchronized (headerCache) {
+            JSONObject arp = headerCache.getARP(nameSpaceKey);
+            if (arp == null) {
+                arp = readARP(nameSpaceKey);
+                if (arp != null) {
+                    headerCache.putARP(nameSpaceKey, arp);
+                }
             }
+            return arp;
+        }
+    }
 
+    private JSONObject readARP(final String nameSpaceKey) {
+        try {
             SharedPreferences prefs;
 
             //checking whether new namespace is empty or not
@@ -753,11 +1124,38 @@ public class NetworkManager extends BaseNetworkManager {
     }
 
     private long getI() {
-        return StorageHelper.getLongFromPrefs(context, config, Constants.KEY_I, 0, Constants.NAMESPACE_IJ);
+        synchronized (headerCache) {
+            final int version = databaseManager.getQueueClearCount();
+            Long i = headerCache.getUserContextValue(Constants.KEY_I, version);
+            if (i == null) {
+                i = StorageHelper.getLongFromPrefs(context, config, Constants.KEY_I, 0, Constants.NAMESPACE_IJ);
+                headerCache.putUserContextValue(Constants.KEY_I, i, version);
+            }
+            return i;
+        }
     }
 
     private long getJ() {
-        return StorageHelper.getLongFromPrefs(context, config, Constants.KEY_J, 0, Constants.NAMESPACE_IJ);
+        synchronized (headerCache) {
+            final int version = databaseManager.getQueueClearCount();
+            Long j = headerCache.getUserContextValue(Constants.KEY_J, version);
+            if (j == null) {
+                j = StorageHelper.getLongFromPrefs(context, config, Constants.KEY_J, 0, Constants.NAMESPACE_IJ);
+                headerCache.putUserContextValue(Constants.KEY_J, j, version);
+            }
+            return j;
+        }
+    }
+
+    private String getStoredDomain(final String key) {
+        synchronized (headerCache) {
+            if (headerCache.hasSetting(key)) {
+                return (String) headerCache.getSetting(key);
+            }
+            final String domain = StorageHelper.getStringFromPrefs(context, config, key, null);
+            headerCache.putSetting(key, domain);
+            return domain;
+        }
     }
 
     //Session
@@ -824,6 +1222,35 @@ public class NetworkManager extends BaseNetworkManager {
         }
     }
 
+    public static HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    /**
+     * Hands a connection back to the transport, to be reused only if its response was read without problems.
+     *
+     * @param conn      the connection, or null if it couldn't be opened
+     * @param responded true once the response status was read and nothing failed after it
+     */
+    public static void releaseConnection(HttpURLConnection conn, boolean responded) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            if (responded) {
+                getHttpTransport().release(conn);
+            } else {
+                getHttpTransport().abort(conn);
+            }
+        } catch (Throwable t) {
+            // Ignore
+        }
+    }
+
+    public static void setHttpTransport(HttpTransport transport) {
+        httpTransport = transport != null ? transport : new DefaultHttpTransport();
+    }
+
     private static SSLSocketFactory getPinnedCertsSslSocketfactory(SSLContext sslContext) {
         if (sslContext == null) {
             return null;
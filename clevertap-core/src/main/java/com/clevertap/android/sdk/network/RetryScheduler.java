@@ -0,0 +1,173 @@
+package com.clevertap.android.sdk.network;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import com.clevertap.android.sdk.interfaces.UploadRetryListener;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Decides when a failed queue upload is retried.
+ * <p>
+ * Each failure in a row doubles the backoff ceiling, starting at the base delay and capped at the max delay, and
+ * the retry happens at a uniformly random point below that ceiling (full jitter), or later if the server asked for
+ * it with Retry-After. After enough failures in a row the circuit opens and uploads are paused for the open
+ * duration; then a single trial upload is let through, which either closes the circuit or opens it again.
+ */
+@RestrictTo(Scope.LIBRARY)
+public class RetryScheduler {
+
+    /**
+     * Source of the current time, replaceable in tests.
+     */
+    public interface Clock {
+
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final long baseDelayMillis;
+
+    private boolean circuitOpen;
+
+    private final Clock clock;
+
+    private int consecutiveFailures;
+
+    private final int failureThreshold;
+
+    private final UploadRetryListener listener;
+
+    private final long maxDelayMillis;
+
+    private long nextAttemptAt;
+
+    private final long openDurationMillis;
+
+    private final Random random;
+
+    private boolean trialInFlight;
+
+    public RetryScheduler(long baseDelayMillis, long maxDelayMillis, int failureThreshold, long openDurationMillis,
+            Clock clock, Random random, UploadRetryListener listener) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+        this.clock = clock;
+        this.random = random;
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if an upload may be attempted now. While the circuit is open this is false until the open
+     * duration has passed, and then true for a single trial upload.
+     */
+    public synchronized boolean allowRequest() {
+        if (clock.currentTimeMillis() < nextAttemptAt) {
+            return false;
+        }
+        if (circuitOpen) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the trial taken by {@link #allowRequest()} when no upload was attempted after all, for instance
+     * because the queue was empty, so that the next flush can take it.
+     */
+    public synchronized void cancelTrial() {
+        trialInFlight = false;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return how long until the next upload may be attempted, 0 if it may be attempted now
+     */
+    public synchronized long getDelayMillis() {
+        return Math.max(0, nextAttemptAt - clock.currentTimeMillis());
+    }
+
+    public synchronized boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+
+    /**
+     * @param retryAfterMillis the delay the server asked for, or 0
+     * @return how long until the upload may be retried
+     */
+    public synchronized long onFailure(long retryAfterMillis) {
+        consecutiveFailures++;
+        trialInFlight = false;
+
+        final long delay;
+        if (circuitOpen || consecutiveFailures >= failureThreshold) {
+            circuitOpen = true;
+            delay = Math.max(openDurationMillis, retryAfterMillis);
+            nextAttemptAt = clock.currentTimeMillis() + delay;
+            if (listener != null) {
+                listener.onUploadCircuitOpened(consecutiveFailures, delay);
+            }
+        } else {
+            // shifting past 30 would overflow long before the ceiling matters
+            final long ceiling = Math.min(maxDelayMillis,
+                    baseDelayMillis << Math.min(consecutiveFailures - 1, 30));
+            delay = Math.max((long) (random.nextDouble() * ceiling), retryAfterMillis);
+            nextAttemptAt = clock.currentTimeMillis() + delay;
+            if (listener != null) {
+                listener.onUploadRetryScheduled(consecutiveFailures, delay);
+            }
+        }
+        return delay;
+    }
+
+    public synchronized void onSuccess() {
+        final boolean wasOpen = circuitOpen;
+        consecutiveFailures = 0;
+        nextAttemptAt = 0;
+        circuitOpen = false;
+        trialInFlight = false;
+        if (wasOpen && listener != null) {
+            listener.onUploadCircuitClosed();
+        }
+    }
+
+    /**
+     * @param value a Retry-After header, either a number of seconds or an HTTP date
+     * @param now   the current time
+     * @return the delay it asks for, or 0 if there is none or it can't be read
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null || value.trim().length() == 0) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try a date
+        }
+        try {
+            final Date date = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).parse(value);
+            return date != null ? Math.max(0, date.getTime() - now) : 0;
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.clevertap.android.sdk.Constants;
 import com.clevertap.android.sdk.ControllerManager;
 import com.clevertap.android.sdk.Logger;
 import com.clevertap.android.sdk.StorageHelper;
+import com.clevertap.android.sdk.events.EventRateLimiter;
 import com.clevertap.android.sdk.network.NetworkManager;
 import com.clevertap.android.sdk.product_config.CTProductConfigController;
 import com.clevertap.android.sdk.validation.Validator;
@@ -24,6 +25,8 @@ public class ARPResponse extends CleverTapResponseDecorator {
 
     private final CleverTapInstanceConfig config;
 
+    private final EventRateLimiter eventRateLimiter;
+
     private final Logger logger;
 
     private final NetworkManager networkManager;
@@ -32,8 +35,9 @@ public class ARPResponse extends CleverTapResponseDecorator {
 
     public ARPResponse(CleverTapResponse cleverTapResponse, CleverTapInstanceConfig config,
             NetworkManager networkManager,
-            Validator validator, ControllerManager controllerManager) {
+            Validator validator, ControllerManager controllerManager, EventRateLimiter eventRateLimiter) {
         this.cleverTapResponse = cleverTapResponse;
+        this.eventRateLimiter = eventRateLimiter;
         this.config = config;
         ctProductConfigController = controllerManager.getCTProductConfigController();
         logger = this.config.getLogger();
@@ -58,6 +62,7 @@ public class ARPResponse extends CleverTapResponseDecorator {
                         logger
                                 .verbose("Error handling discarded events response: " + t.getLocalizedMessage());
                     }
+                    processEventRateLimits(arp);
                     handleARPUpdate(context, arp);
                 }
             }
@@ -112,6 +117,23 @@ public class ARPResponse extends CleverTapResponseDecorator {
         logger.verbose(config.getAccountId(),
                 "Stored ARP for namespace key: " + nameSpaceKey + " values: " + arp.toString());
         StorageHelper.persist(editor);
+        networkManager.invalidateARP();
+    }
+
+    /**
+     * Limits sent in the ARP replace the previous ones from the server. An ARP without the key leaves them as
+     * they are, an empty object removes them.
+     */
+    private void processEventRateLimits(JSONObject arp) {
+        if (eventRateLimiter == null || !arp.has(Constants.EVENT_RATE_LIMITS_JSON_KEY)) {
+            return;
+        }
+        final JSONObject limits = arp.optJSONObject(Constants.EVENT_RATE_LIMITS_JSON_KEY);
+        if (limits == null) {
+            logger.verbose(config.getAccountId(), "Ignoring event rate limits that aren't a JSON object");
+            return;
+        }
+        eventRateLimiter.setRemoteLimits(limits.length() > 0 ? limits : null);
     }
 
     /**
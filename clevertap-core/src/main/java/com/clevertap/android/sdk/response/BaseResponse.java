@@ -33,14 +33,20 @@ public class BaseResponse extends CleverTapResponseDecorator {
     @Override
     public void processResponse(final JSONObject jsonBody, final String responseStr, final Context context) {
 
-        if (responseStr == null) {
+        if (jsonBody == null && responseStr == null) {
             logger.verbose(config.getAccountId(), "Problem processing queue response, response is null");
             return;
         }
         try {
-            logger.verbose(config.getAccountId(), "Trying to process response: " + responseStr);
+            // the response arrives already parsed when it is read with ResponseReader
+            JSONObject response = jsonBody != null ? jsonBody : new JSONObject(responseStr);
+            if (responseStr != null) {
+                logger.verbose(config.getAccountId(), "Trying to process response: " + responseStr);
+            } else {
+                // a streamed response is never turned back into a string
+                logger.verbose(config.getAccountId(), "Trying to process response with keys: " + response.names());
+            }
 
-            JSONObject response = new JSONObject(responseStr);
             // in app
             cleverTapResponse.processResponse(response, responseStr, context);
 
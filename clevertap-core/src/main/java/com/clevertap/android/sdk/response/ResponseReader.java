@@ -0,0 +1,112 @@
+package com.clevertap.android.sdk.response;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import com.clevertap.android.sdk.Constants;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a queue response straight from the connection with a {@link JsonReader}. Only the top level keys that a
+ * {@link CleverTapResponse} in the chain handles are built into the returned object, everything else is skipped
+ * while it streams past without being held in memory.
+ */
+public final class ResponseReader {
+
+    // keep in sync with the keys read by the decorators and LocalDataStore#syncWithUpstream
+    private static final Set<String> HANDLED_KEYS = new HashSet<>(Arrays.asList(
+            "g", "_i", "_j", "arp", "console", "dbg_lvl", "evpr", "imp", "pushamp_notifs",
+            Constants.INAPP_JSON_RESPONSE_KEY,
+            Constants.INAPP_MAX_PER_SESSION,
+            Constants.INBOX_JSON_RESPONSE_KEY,
+            Constants.DISPLAY_UNIT_JSON_RESPONSE_KEY,
+            Constants.FEATURE_FLAG_JSON_RESPONSE_KEY,
+            Constants.REMOTE_CONFIG_FLAG_JSON_RESPONSE_KEY,
+            Constants.GEOFENCES_JSON_RESPONSE_KEY,
+            Constants.DISCARDED_EVENT_JSON_KEY));
+
+    private ResponseReader() {
+    }
+
+    /**
+     * @param in the response body, which is read to the end but not closed
+     * @return the handled sections of the response
+     */
+    public static JSONObject read(InputStream in) throws IOException, JSONException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        final JSONObject response = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String key = reader.nextName();
+            if (HANDLED_KEYS.contains(key)) {
+                response.put(key, readValue(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return response;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        final JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Parses numbers the way {@link JSONObject} does, so handlers see the same types either way.
+     */
+    private static Object readNumber(JsonReader reader) throws IOException {
+        final String number = reader.nextString();
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                final long value = Long.parseLong(number);
+                return value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value);
+            } catch (NumberFormatException e) {
+                // too long for a long, fall through
+            }
+        }
+        return Double.valueOf(number);
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        final JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        final JsonToken token = reader.peek();
+        switch (token) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case NUMBER:
+                return readNumber(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+}
@@ -53,7 +53,7 @@ public class CTExecutors {
      * @param <TResult>
      * @return
      */
-    public <TResult> Task<TResult> postAsyncSafelyTask(String featureTag) {
+    public synchronized <TResult> Task<TResult> postAsyncSafelyTask(String featureTag) {
         if (featureTag == null) {
             throw new IllegalArgumentException("Tag can't be null");
         }
@@ -1,7 +1,9 @@
 package com.clevertap.android.sdk
 
 import com.clevertap.android.sdk.events.BaseEventQueueManager
+import com.clevertap.android.sdk.events.EventAggregator
 import com.clevertap.android.sdk.events.EventQueueManager
+import com.clevertap.android.sdk.events.EventRateLimiter
 import com.clevertap.android.sdk.validation.ValidationResult
 import com.clevertap.android.sdk.validation.Validator
 import com.clevertap.android.shared.test.BaseTestCase
@@ -33,7 +35,10 @@ class AnalyticsManagerTest : BaseTestCase() {
         analyticsManagerSUT = AnalyticsManager(application,cleverTapInstanceConfig,
             baseEventQueueManager,validator,coreState.validationResultStack,
             coreState.coreMetaData, coreState.localDataStore,coreState.deviceInfo,
-            coreState.callbackManager,coreState.controllerManager,coreState.ctLockManager)
+            coreState.callbackManager,coreState.controllerManager,coreState.ctLockManager,
+            EventAggregator(cleverTapInstanceConfig, coreState.mainLooperHandler),
+            EventRateLimiter(application, cleverTapInstanceConfig, coreState.deviceInfo,
+                coreState.mainLooperHandler))
     }
 
     @Test
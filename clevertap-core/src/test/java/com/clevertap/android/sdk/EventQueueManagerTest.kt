@@ -11,6 +11,7 @@ import com.clevertap.android.sdk.login.IdentityRepoFactory
 import com.clevertap.android.sdk.login.LoginInfoProvider
 import com.clevertap.android.sdk.network.NetworkManager
 import com.clevertap.android.sdk.task.CTExecutorFactory
+import com.clevertap.android.sdk.task.DeferredCTExecutors
 import com.clevertap.android.sdk.task.MockCTExecutors
 import com.clevertap.android.sdk.validation.ValidationResult
 import com.clevertap.android.shared.test.BaseTestCase
@@ -99,6 +100,105 @@ class EventQueueManagerTest : BaseTestCase() {
         }
     }
 
+    @Test
+    fun test_queueEvent_when_buffered_should_drainInOrderWithinAnEventBatch() {
+        mockStatic(CTExecutorFactory::class.java).use {
+            `when`(CTExecutorFactory.executors(cleverTapInstanceConfig)).thenReturn(
+                MockCTExecutors(
+                    cleverTapInstanceConfig
+                )
+            )
+            cleverTapInstanceConfig.eventIngestionBufferSize = 4
+            val bufferedQueueManager = spy(
+                EventQueueManager(
+                    corestate.databaseManager,
+                    application,
+                    cleverTapInstanceConfig,
+                    corestate.eventMediator,
+                    corestate.sessionManager,
+                    corestate.callbackManager,
+                    corestate.mainLooperHandler,
+                    corestate.deviceInfo,
+                    corestate.validationResultStack,
+                    corestate.networkManager as NetworkManager,
+                    corestate.coreMetaData,
+                    corestate.ctLockManager,
+                    corestate.localDataStore
+                )
+            )
+            val first = JSONObject().put("evtName", "first")
+            val second = JSONObject().put("evtName", "second")
+            doNothing().`when`(bufferedQueueManager).addToQueue(any(), any(), anyInt())
+            doNothing().`when`(bufferedQueueManager).scheduleQueueFlush(any())
+
+            bufferedQueueManager.queueEvent(application, first, Constants.FETCH_EVENT)
+            bufferedQueueManager.queueEvent(application, second, Constants.FETCH_EVENT)
+
+            val inOrder = inOrder(bufferedQueueManager, corestate.databaseManager)
+            inOrder.verify(corestate.databaseManager).beginEventBatch()
+            inOrder.verify(bufferedQueueManager).addToQueue(application, first, Constants.FETCH_EVENT)
+            inOrder.verify(corestate.databaseManager).endEventBatch(application)
+            inOrder.verify(bufferedQueueManager).scheduleQueueFlush(application)
+            inOrder.verify(corestate.databaseManager).beginEventBatch()
+            inOrder.verify(bufferedQueueManager).addToQueue(application, second, Constants.FETCH_EVENT)
+            inOrder.verify(corestate.databaseManager).endEventBatch(application)
+        }
+    }
+
+    @Test
+    fun test_queueEvent_when_bufferedWhileTheExecutorIsBusy_should_storeThemInOneBatchBeforeTheirFuturesAreDone() {
+        val executors = DeferredCTExecutors(cleverTapInstanceConfig)
+        mockStatic(CTExecutorFactory::class.java).use {
+            `when`(CTExecutorFactory.executors(cleverTapInstanceConfig)).thenReturn(executors)
+            cleverTapInstanceConfig.eventIngestionBufferSize = 4
+            val bufferedQueueManager = spy(
+                EventQueueManager(
+                    corestate.databaseManager,
+                    application,
+                    cleverTapInstanceConfig,
+                    corestate.eventMediator,
+                    corestate.sessionManager,
+                    corestate.callbackManager,
+                    corestate.mainLooperHandler,
+                    corestate.deviceInfo,
+                    corestate.validationResultStack,
+                    corestate.networkManager as NetworkManager,
+                    corestate.coreMetaData,
+                    corestate.ctLockManager,
+                    corestate.localDataStore
+                )
+            )
+            doNothing().`when`(bufferedQueueManager).addToQueue(any(), any(), anyInt())
+            doNothing().`when`(bufferedQueueManager).scheduleQueueFlush(any())
+
+            val futures = (1..3).map {
+                bufferedQueueManager.queueEvent(application, JSONObject().put("evtName", "e$it"), Constants.FETCH_EVENT)
+            }
+            assertTrue(futures.none { it.isDone })
+
+            executors.runPending()
+
+            assertTrue(futures.all { it.isDone })
+            verify(corestate.databaseManager, times(1)).beginEventBatch()
+            verify(bufferedQueueManager, times(3)).addToQueue(any(), any(), anyInt())
+            verify(corestate.databaseManager, times(1)).endEventBatch(application)
+            verify(bufferedQueueManager, times(1)).scheduleQueueFlush(application)
+        }
+    }
+
+    @Test
+    fun test_commitPendingEventsAsync_should_writeHeldEventsToTheDatabase() {
+        mockStatic(CTExecutorFactory::class.java).use {
+            `when`(CTExecutorFactory.executors(cleverTapInstanceConfig)).thenReturn(
+                MockCTExecutors(
+                    cleverTapInstanceConfig
+                )
+            )
+            eventQueueManager.commitPendingEventsAsync()
+            verify(corestate.databaseManager).commitPendingEvents(application)
+        }
+    }
+
     @Test
     fun test_queueEvent_will_process_further_and_add_to_queue_when_event_should_not_be_dropped() {
         mockStatic(CTExecutorFactory::class.java).use {
@@ -121,6 +221,50 @@ class EventQueueManagerTest : BaseTestCase() {
         }
     }
 
+    @Test
+    fun test_queueEvent_when_theEventIsQueuedInItsSession_should_keepItWithoutStartingANewOne() {
+        mockStatic(CTExecutorFactory::class.java).use {
+            `when`(CTExecutorFactory.executors(cleverTapInstanceConfig)).thenReturn(
+                MockCTExecutors(
+                    cleverTapInstanceConfig
+                )
+            )
+            // an aggregated summary flushed by the session that has just ended
+            val summary = JSONObject().put("evtName", "Scrolled")
+            corestate.coreMetaData.currentSessionId = 0
+            corestate.coreMetaData.isFirstSession = true
+            doNothing().`when`(eventQueueManager).scheduleQueueFlush(application)
+
+            eventQueueManager.queueEvent(application, summary, Constants.RAISED_EVENT, 1234)
+
+            verify(corestate.sessionManager, never()).lazyCreateSession(application)
+            verify(eventQueueManager, never()).pushInitialEventsAsync()
+            assertEquals(1234, summary["s"])
+            assertEquals(true, summary["f"])
+        }
+    }
+
+    @Test
+    fun test_queueEvent_when_theEventHasAnSKeyOfItsOwn_should_stillTakeTheCurrentSession() {
+        mockStatic(CTExecutorFactory::class.java).use {
+            `when`(CTExecutorFactory.executors(cleverTapInstanceConfig)).thenReturn(
+                MockCTExecutors(
+                    cleverTapInstanceConfig
+                )
+            )
+            val event = JSONObject().put("evtName", "Scrolled").put("s", 1234)
+            corestate.coreMetaData.currentSessionId = 5678
+            doNothing().`when`(eventQueueManager).pushInitialEventsAsync()
+            doNothing().`when`(corestate.sessionManager).lazyCreateSession(application)
+            doNothing().`when`(eventQueueManager).scheduleQueueFlush(application)
+
+            eventQueueManager.queueEvent(application, event, Constants.RAISED_EVENT)
+
+            verify(corestate.sessionManager).lazyCreateSession(application)
+            assertEquals(5678, event["s"])
+        }
+    }
+
     @Test
     fun test_queueEvent_will_delay_add_to_queue_when_event_processing_should_be_delayed() {
         mockStatic(CTExecutorFactory::class.java).use {
@@ -301,17 +445,23 @@ class EventQueueManagerTest : BaseTestCase() {
 
             val captor = ArgumentCaptor.forClass(Runnable::class.java)
             doNothing().`when`(eventQueueManager).flushQueueSync(ArgumentMatchers.any(), ArgumentMatchers.any())
+            `when`(corestate.networkManager.getDelayFrequency(REGULAR)).thenReturn(1000)
+            `when`(corestate.networkManager.getDelayFrequency(PUSH_NOTIFICATION_VIEWED)).thenReturn(8000)
 
             // Act
             eventQueueManager.scheduleQueueFlush(application)
 
             // Assert
-            verify(corestate.mainLooperHandler).removeCallbacks(captor.capture())
-            verify(corestate.mainLooperHandler).postDelayed(captor.capture(), ArgumentMatchers.anyLong())
-
-            captor.value.run()
+            verify(corestate.mainLooperHandler, times(2)).removeCallbacks(ArgumentMatchers.any())
+            verify(corestate.mainLooperHandler).postDelayed(captor.capture(), ArgumentMatchers.eq(1000L))
+            verify(corestate.mainLooperHandler).postDelayed(captor.capture(), ArgumentMatchers.eq(8000L))
 
+            // each lane has its own runnable, so rescheduling one doesn't cancel the other
+            captor.allValues[0].run()
             verify(eventQueueManager).flushQueueSync(application, REGULAR)
+            verify(eventQueueManager, never()).flushQueueSync(application, PUSH_NOTIFICATION_VIEWED)
+
+            captor.allValues[1].run()
             verify(eventQueueManager).flushQueueSync(application, PUSH_NOTIFICATION_VIEWED)
         }
     }
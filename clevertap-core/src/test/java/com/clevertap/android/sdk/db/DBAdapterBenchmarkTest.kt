@@ -0,0 +1,51 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertNotNull
+
+/**
+ * Rough ops/sec comparison of the per-operation open/close lifecycle against a persistent WAL connection.
+ * Numbers from Robolectric's SQLite are only meaningful relative to each other.
+ */
+@RunWith(RobolectricTestRunner::class)
+class DBAdapterBenchmarkTest : BaseTestCase() {
+
+    private val iterations = 500
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    fun test_benchmark_persistentConnection_vs_openClosePerOperation() {
+        val openClose = runWorkload(persistent = false)
+        application.deleteDatabase("clevertap_" + cleverTapInstanceConfig.accountId)
+        val persistent = runWorkload(persistent = true)
+
+        println("DBAdapter open/close per operation: $openClose ops/sec")
+        println("DBAdapter persistent WAL connection: $persistent ops/sec")
+    }
+
+    private fun runWorkload(persistent: Boolean): Long {
+        cleverTapInstanceConfig.setPersistentDbConnection(persistent)
+        val dbAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        val event = JSONObject().put("evtName", "Product Viewed").put("evtData", JSONObject().put("id", 1))
+
+        val start = System.nanoTime()
+        for (i in 1..iterations) {
+            dbAdapter.storeObject(event, Table.EVENTS)
+            dbAdapter.fetchUserProfileFieldsById("profile")
+            if (i % 50 == 0) {
+                val batch = dbAdapter.fetchEvents(Table.EVENTS, 50)
+                dbAdapter.cleanupEventsFromLastId(batch.keys().next(), Table.EVENTS)
+            }
+        }
+        val elapsedNanos = System.nanoTime() - start
+
+        dbAdapter.storeObject(event, Table.EVENTS)
+        assertNotNull(dbAdapter.fetchEvents(Table.EVENTS, 1))
+        return iterations * 2 * 1_000_000_000L / elapsedNanos
+    }
+}
@@ -0,0 +1,221 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.Constants
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import com.clevertap.android.sdk.inbox.CTMessageDAO
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class DBAdapterTest : BaseTestCase() {
+
+    private lateinit var dbAdapter: DBAdapter
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        dbAdapter = DBAdapter(application, cleverTapInstanceConfig)
+    }
+
+    @Test
+    fun test_storeObjects_when_batchIsStored_should_returnTableRowCount() {
+        assertEquals(1, dbAdapter.storeObject(event(0), Table.EVENTS))
+        val count = dbAdapter.storeObjects(listOf(event(1).toString(), event(2).toString()), Table.EVENTS)
+        assertEquals(3, count)
+
+        val fetched = dbAdapter.fetchEvents(Table.EVENTS, 10)
+        val lastId = fetched.keys().next()
+        val events = fetched.getJSONArray(lastId)
+        assertEquals(3, events.length())
+        assertEquals(2, events.getJSONObject(2).getInt("i"))
+    }
+
+    @Test
+    fun test_storeObject_when_eventsAreCleanedUp_should_keepRowCountInSync() {
+        dbAdapter.storeObjects(listOf(event(0).toString(), event(1).toString()), Table.PROFILE_EVENTS)
+        val lastId = dbAdapter.fetchEvents(Table.PROFILE_EVENTS, 1).keys().next()
+        dbAdapter.cleanupEventsFromLastId(lastId, Table.PROFILE_EVENTS)
+
+        assertEquals(2, dbAdapter.storeObject(event(2), Table.PROFILE_EVENTS))
+
+        dbAdapter.removeEvents(Table.PROFILE_EVENTS)
+        assertEquals(1, dbAdapter.storeObject(event(3), Table.PROFILE_EVENTS))
+    }
+
+    @Test
+    fun test_doesPushNotificationIdExist_when_statementIsReused_should_matchStoredIds() {
+        cleverTapInstanceConfig.setPersistentDbConnection(true)
+        val persistentAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        persistentAdapter.storePushNotificationId("pid_1", 0)
+
+        assertTrue(persistentAdapter.doesPushNotificationIdExist("pid_1"))
+        assertFalse(persistentAdapter.doesPushNotificationIdExist("pid_2"))
+        persistentAdapter.storePushNotificationId("pid_2", 0)
+        assertTrue(persistentAdapter.doesPushNotificationIdExist("pid_2"))
+    }
+
+    @Test
+    fun test_fetchEventPayloads_when_eventsAreCompressed_should_returnStoredJson() {
+        cleverTapInstanceConfig.setCompressQueuedEvents(true)
+        val compressingAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        compressingAdapter.storeObjects(listOf(event(0).toString(), event(1).toString()), Table.EVENTS)
+
+        val cursor = QueueCursor()
+        compressingAdapter.fetchEventPayloads(Table.EVENTS, 10, cursor)
+
+        assertEquals(listOf(event(0).toString(), event(1).toString()), cursor.payloads)
+        assertNull(cursor.data)
+        assertFalse(cursor.isEmpty)
+    }
+
+    @Test
+    fun test_cleanUpPushNotifications_when_staleRowsExceedOneChunk_should_deleteAll() {
+        cleverTapInstanceConfig.setPersistentDbConnection(true)
+        val persistentAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        for (i in 0 until 1200) {
+            persistentAdapter.storePushNotificationId("expired_$i", 1)
+        }
+        persistentAdapter.storePushNotificationId("live", 0)
+
+        persistentAdapter.cleanUpPushNotifications()
+
+        assertFalse(persistentAdapter.doesPushNotificationIdExist("expired_0"))
+        assertFalse(persistentAdapter.doesPushNotificationIdExist("expired_1199"))
+        assertTrue(persistentAdapter.doesPushNotificationIdExist("live"))
+    }
+
+    @Test
+    fun test_storeObject_when_rowQuotaIsExceeded_should_dropOldestAndCountEvictions() {
+        cleverTapInstanceConfig.setQueueMaxRows(10)
+        val quotaAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        for (i in 0 until 11) {
+            quotaAdapter.storeObject(event(i), Table.EVENTS)
+        }
+
+        val events = quotaAdapter.fetchEvents(Table.EVENTS, 20).let { it.getJSONArray(it.keys().next()) }
+        assertEquals(9, events.length())
+        assertEquals(2, events.getJSONObject(0).getInt("i"))
+        assertEquals(2, quotaAdapter.getEvictedEventCount(Table.EVENTS))
+    }
+
+    @Test
+    fun test_storeObject_when_lowPriorityPolicyIsSet_should_dropLowPriorityEventsFirst() {
+        cleverTapInstanceConfig.setQueueMaxRows(4)
+        cleverTapInstanceConfig.setQueueEvictionPolicy(Constants.QUEUE_EVICTION_DROP_LOW_PRIORITY)
+        cleverTapInstanceConfig.setLowPriorityEventNames("scroll")
+        val quotaAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        quotaAdapter.storeObject(event(0), Table.EVENTS)
+        quotaAdapter.storeObject(event(1).put("evtName", "scroll"), Table.EVENTS)
+        quotaAdapter.storeObject(event(2), Table.EVENTS)
+        quotaAdapter.storeObject(event(3), Table.EVENTS)
+        quotaAdapter.storeObject(event(4), Table.EVENTS)
+
+        val events = quotaAdapter.fetchEvents(Table.EVENTS, 20).let { it.getJSONArray(it.keys().next()) }
+        assertEquals(listOf(0, 2, 3, 4), (0 until events.length()).map { events.getJSONObject(it).getInt("i") })
+    }
+
+    @Test
+    fun test_storeObject_when_collapsePolicyIsSet_should_dropRepeatedNotificationViewed() {
+        cleverTapInstanceConfig.setQueueMaxRows(3)
+        cleverTapInstanceConfig.setQueueEvictionPolicy(Constants.QUEUE_EVICTION_COLLAPSE_NOTIFICATION_VIEWED)
+        val quotaAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        quotaAdapter.storeObject(viewed("pid_1"), Table.PUSH_NOTIFICATION_VIEWED)
+        quotaAdapter.storeObject(viewed("pid_2"), Table.PUSH_NOTIFICATION_VIEWED)
+        quotaAdapter.storeObject(viewed("pid_1"), Table.PUSH_NOTIFICATION_VIEWED)
+        quotaAdapter.storeObject(viewed("pid_3"), Table.PUSH_NOTIFICATION_VIEWED)
+
+        val events = quotaAdapter.fetchEvents(Table.PUSH_NOTIFICATION_VIEWED, 20)
+            .let { it.getJSONArray(it.keys().next()) }
+        assertEquals(listOf("pid_1", "pid_2", "pid_3"),
+            (0 until events.length()).map { events.getJSONObject(it).getJSONObject("evtData").getString("wzrk_pid") })
+    }
+
+    @Test
+    fun test_getMessages_when_paged_should_skipExpiredAndContinueAfterLastMessage() {
+        val now = System.currentTimeMillis() / 1000
+        dbAdapter.upsertMessages(arrayListOf(
+            message("m1", now - 30, 0), message("m2", now - 20, 0), message("m3", now - 20, 0),
+            message("m4", now - 10, 0), message("expired", now, now - 1)))
+
+        val first = dbAdapter.getMessages("user", 0, null, 2, false, true)
+        assertEquals(listOf("m4", "m3"), first.map { it.id })
+        // the previous page's last message is deleted before the next page is read
+        dbAdapter.deleteMessageForId("m3", "user")
+        val second = dbAdapter.getMessages("user", first.last().date, first.last().id, 2, false, true)
+        assertEquals(listOf("m2", "m1"), second.map { it.id })
+
+        assertEquals(1, dbAdapter.deleteExpiredMessages("user"))
+    }
+
+    @Test
+    fun test_getMessages_when_mediaIsNotSupported_should_fillThePageWithoutVideoOrAudio() {
+        val now = System.currentTimeMillis() / 1000
+        val video = message("video", now, 0).apply {
+            jsonData = JSONObject().put("content", JSONArray().put(
+                JSONObject().put("media", JSONObject().put("content_type", "video/mp4"))))
+        }
+        dbAdapter.upsertMessages(arrayListOf(message("m1", now - 20, 0), message("m2", now - 10, 0), video))
+
+        assertEquals(listOf("m2", "m1"), dbAdapter.getMessages("user", 0, null, 2, false, false).map { it.id })
+        assertEquals(listOf("video", "m2"), dbAdapter.getMessages("user", 0, null, 2, false, true).map { it.id })
+    }
+
+    @Test
+    fun test_getMessages_when_onlyALaterContentItemIsAVideo_should_keepTheMessageLikeTheInboxDoes() {
+        val now = System.currentTimeMillis() / 1000
+        val carousel = message("carousel", now, 0).apply {
+            jsonData = JSONObject().put("content", JSONArray()
+                .put(JSONObject().put("media", JSONObject().put("content_type", "image/png")))
+                .put(JSONObject().put("media", JSONObject().put("content_type", "video/mp4"))))
+        }
+        assertFalse(carousel.containsVideoOrAudio())
+        dbAdapter.upsertMessages(arrayListOf(message("m1", now - 10, 0), carousel))
+
+        assertEquals(listOf("carousel", "m1"), dbAdapter.getMessages("user", 0, null, 2, false, false).map { it.id })
+    }
+
+    @Test
+    fun test_storeUserProfileFields_when_keysChange_should_keepTypesAndOnlyTouchChangedKeys() {
+        val nested = JSONObject().put("city", "Pune")
+        assertTrue(dbAdapter.storeUserProfileFields("profile",
+            mapOf("Name" to "Jack", "Age" to 30, "Score" to 2.5, "Premium" to true, "Address" to nested,
+                "Big" to 10_000_000_000L),
+            emptyList()))
+        assertTrue(dbAdapter.storeUserProfileFields("profile", mapOf("Age" to 31), listOf("Premium")))
+
+        val profile = dbAdapter.fetchUserProfileFieldsById("profile")!!
+        assertEquals("Jack", profile.get("Name"))
+        assertEquals(31, profile.get("Age"))
+        assertEquals(2.5, profile.get("Score"))
+        assertEquals(10_000_000_000L, profile.get("Big"))
+        assertEquals("Pune", profile.getJSONObject("Address").getString("city"))
+        assertFalse(profile.has("Premium"))
+
+        dbAdapter.removeUserProfile("profile")
+        assertNull(dbAdapter.fetchUserProfileFieldsById("profile"))
+    }
+
+    private fun message(id: String, date: Long, expires: Long) = CTMessageDAO().apply {
+        this.id = id
+        jsonData = JSONObject()
+        wzrkParams = JSONObject()
+        campaignId = "campaign"
+        tags = ""
+        this.date = date
+        this.expires = expires
+        userId = "user"
+    }
+
+    private fun viewed(pushId: String) = JSONObject().put("evtName", Constants.NOTIFICATION_VIEWED_EVENT_NAME)
+        .put("evtData", JSONObject().put("wzrk_pid", pushId))
+
+    private fun event(i: Int) = JSONObject().put("evtName", "test").put("i", i)
+}
@@ -0,0 +1,150 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.CTLockManager
+import com.clevertap.android.sdk.Constants
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import com.clevertap.android.sdk.events.EventGroup
+import com.clevertap.android.sdk.task.MainLooperHandler
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.mockito.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class DBManagerTest : BaseTestCase() {
+
+    private lateinit var dbManager: DBManager
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        dbManager = DBManager(cleverTapInstanceConfig, CTLockManager(), Mockito.mock(MainLooperHandler::class.java))
+    }
+
+    @Test
+    fun test_getNextQueuedEvents_when_batchesAreInFlight_should_readAheadInOrderAndKeepUnsentBatches() {
+        for (i in 0 until 120) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        dbManager.queueEventToDB(application, event(1000), Constants.PROFILE_EVENT)
+
+        val first = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        val second = dbManager.getNextQueuedEvents(application, 50, 0, first)!!
+        val third = dbManager.getNextQueuedEvents(application, 50, 0, second)!!
+        val profile = dbManager.getNextQueuedEvents(application, 50, 0, third)!!
+
+        assertEquals(0, first.data.getJSONObject(0).getInt("i"))
+        assertEquals(50, second.data.getJSONObject(0).getInt("i"))
+        assertEquals(20, third.length())
+        assertEquals(Table.PROFILE_EVENTS, profile.tableName)
+        assertNull(dbManager.getNextQueuedEvents(application, 50, 0, profile))
+
+        // only the acknowledged batch is removed, the rest is read again by the next flush
+        dbManager.removeSentQueuedEvents(application, first)
+        val retry = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        assertNotNull(retry)
+        assertEquals(50, retry.data.getJSONObject(0).getInt("i"))
+    }
+
+    @Test
+    fun test_getQueuedEvents_when_byteBudgetIsSet_should_endTheBatchOnceItIsReached() {
+        for (i in 0 until 20) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        val eventBytes = event(0).toString().length
+
+        val first = dbManager.getQueuedEvents(application, 50, eventBytes * 5, null, EventGroup.REGULAR)
+        assertEquals(5, first.length())
+        assertEquals(eventBytes * 5, first.byteCount)
+
+        val next = dbManager.getNextQueuedEvents(application, 50, eventBytes * 5, first)!!
+        assertEquals(5, next.data.getJSONObject(0).getInt("i"))
+        assertEquals(20, dbManager.getQueuedEvents(application, 50, 0, null, EventGroup.REGULAR).length())
+    }
+
+    @Test
+    fun test_getBatchId_when_aBatchIsReadAgainAfterAFailedUpload_should_keepItsEventsAndId() {
+        for (i in 0 until 5) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        val first = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        val batchId = dbManager.getBatchId(application, first)
+        assertTrue(batchId.startsWith("events:"))
+
+        // more events arrive and the batch size shrinks before the retry
+        for (i in 5 until 10) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        val retry = dbManager.getQueuedEvents(application, 2, null, EventGroup.REGULAR)
+        assertEquals(5, retry.length())
+        assertEquals(batchId, dbManager.getBatchId(application, retry))
+
+        // the pending batch survives a restart
+        val restarted = DBManager(cleverTapInstanceConfig, CTLockManager(), Mockito.mock(MainLooperHandler::class.java))
+        val afterRestart = restarted.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        assertEquals(5, afterRestart.length())
+        assertEquals(batchId, restarted.getBatchId(application, afterRestart))
+
+        // once the batch is removed the next one is read as usual and gets its own id
+        val next = dbManager.getQueuedEvents(application, 50, retry, EventGroup.REGULAR)
+        assertEquals(5, next.data.getJSONObject(0).getInt("i"))
+        assertNotEquals(batchId, dbManager.getBatchId(application, next))
+    }
+
+    @Test
+    fun test_getQueuedEvents_when_priorityQueuesAreEnabled_should_sendProfileAndRevenueEventsFirst() {
+        cleverTapInstanceConfig.setQueueDrainWeights(1, 1, 1)
+        cleverTapInstanceConfig.setPriorityEventNames("Signed Up")
+        dbManager = DBManager(cleverTapInstanceConfig, CTLockManager(), Mockito.mock(MainLooperHandler::class.java))
+
+        // an offline backlog, with the identity and revenue events queued last
+        for (i in 0 until 60) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        dbManager.queueEventToDB(application, event(100).put("evtName", Constants.CHARGED_EVENT),
+                Constants.RAISED_EVENT)
+        dbManager.queueEventToDB(application, event(101).put("evtName", "Signed Up"), Constants.RAISED_EVENT)
+        dbManager.queueEventToDB(application, event(1000), Constants.PROFILE_EVENT)
+
+        val profile = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        val revenue = dbManager.getQueuedEvents(application, 50, profile, EventGroup.REGULAR)
+        val behavioural = dbManager.getQueuedEvents(application, 50, revenue, EventGroup.REGULAR)
+
+        assertEquals(Table.PROFILE_EVENTS, profile.tableName)
+        assertEquals(Table.PRIORITY_EVENTS, revenue.tableName)
+        assertEquals(2, revenue.length())
+        assertEquals(Table.EVENTS, behavioural.tableName)
+        assertEquals(0, behavioural.data.getJSONObject(0).getInt("i"))
+
+        val rest = dbManager.getNextQueuedEvents(application, 50, 0, behavioural)!!
+        assertEquals(50, rest.data.getJSONObject(0).getInt("i"))
+        assertNull(dbManager.getQueuedEvents(application, 50, rest, EventGroup.REGULAR))
+    }
+
+    @Test
+    fun test_getQueuedEvents_when_aPriorityBatchFailsToSend_should_readItAgainWithoutChargingItsTable() {
+        cleverTapInstanceConfig.setQueueDrainWeights(1, 1, 1)
+        dbManager = DBManager(cleverTapInstanceConfig, CTLockManager(), Mockito.mock(MainLooperHandler::class.java))
+        dbManager.queueEventToDB(application, event(0), Constants.RAISED_EVENT)
+        dbManager.queueEventToDB(application, event(1000), Constants.PROFILE_EVENT)
+
+        val failed = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        // the read-ahead for the failed batch is dropped with it
+        dbManager.getNextQueuedEvents(application, 50, 0, failed)
+        val retry = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        val next = dbManager.getQueuedEvents(application, 50, retry, EventGroup.REGULAR)
+
+        assertEquals(Table.PROFILE_EVENTS, failed.tableName)
+        assertEquals(Table.PROFILE_EVENTS, retry.tableName)
+        assertEquals(Table.EVENTS, next.tableName)
+    }
+
+    private fun event(i: Int) = JSONObject().put("evtName", "test").put("i", i)
+}
@@ -0,0 +1,55 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+import kotlin.test.assertEquals
+
+/**
+ * Rough events/sec comparison of sustained ingestion into the SQLite queue and into the mapped event log, draining
+ * in batches of 50 as a flush would. Numbers are only meaningful relative to each other. Ignored so that it doesn't
+ * slow down or clutter the regular test run, remove the annotation to run it.
+ */
+@RunWith(RobolectricTestRunner::class)
+class EventLogBenchmarkTest : BaseTestCase() {
+
+    private val iterations = 2000
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    fun test_benchmark_eventLog_vs_sqlite() {
+        val event = JSONObject().put("evtName", "Product Viewed").put("evtData", JSONObject().put("id", 1))
+
+        val dbAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        var start = System.nanoTime()
+        for (i in 1..iterations) {
+            dbAdapter.storeObject(event, Table.EVENTS)
+            if (i % 50 == 0) {
+                val batch = dbAdapter.fetchEvents(Table.EVENTS, 50)
+                dbAdapter.cleanupEventsFromLastId(batch.keys().next(), Table.EVENTS)
+            }
+        }
+        val sqlite = iterations * 1_000_000_000L / (System.nanoTime() - start)
+
+        val log = EventLog(File(application.filesDir, "event_log_benchmark"), EventLog.DEFAULT_SEGMENT_SIZE)
+        var sent = 0
+        start = System.nanoTime()
+        for (i in 1..iterations) {
+            log.append(event.toString())
+            if (i % 50 == 0) {
+                val batch = ArrayList<String>()
+                log.commit(log.read(log.committedOffset, 50, batch))
+                sent += batch.size
+            }
+        }
+        val eventLog = iterations * 1_000_000_000L / (System.nanoTime() - start)
+
+        assertEquals(iterations, sent)
+        println("SQLite queue: $sqlite events/sec")
+        println("Mapped event log: $eventLog events/sec")
+    }
+}
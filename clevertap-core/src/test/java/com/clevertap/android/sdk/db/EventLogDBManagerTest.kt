@@ -0,0 +1,76 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.CTLockManager
+import com.clevertap.android.sdk.Constants
+import com.clevertap.android.sdk.events.EventGroup
+import com.clevertap.android.sdk.task.MainLooperHandler
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.mockito.*
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+import java.io.IOException
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class EventLogDBManagerTest : BaseTestCase() {
+
+    private lateinit var dbManager: EventLogDBManager
+
+    private var failAppends = false
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        dbManager = object : EventLogDBManager(cleverTapInstanceConfig, CTLockManager(),
+                Mockito.mock(MainLooperHandler::class.java)) {
+            override fun openLog(directory: File): EventLog = object : EventLog(directory, 4096) {
+                override fun append(payload: String) {
+                    if (failAppends) {
+                        throw IOException("No space left on device")
+                    }
+                    super.append(payload)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun test_getQueuedEvents_when_aLogWriteFailed_should_flushTheLogBeforeTheEventsQueuedInTheDB() {
+        for (i in 0 until 3) {
+            dbManager.queueEventToDB(application, event(i), Constants.RAISED_EVENT)
+        }
+        failAppends = true
+        dbManager.queueEventToDB(application, event(3), Constants.RAISED_EVENT)
+        failAppends = false
+        // the log works again, but this event has to stay behind the one queued in the DB
+        dbManager.queueEventToDB(application, event(4), Constants.RAISED_EVENT)
+
+        val logged = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        assertTrue(logged.isFromEventLog)
+        assertEquals(listOf(0, 1, 2), ids(logged))
+
+        val queued = dbManager.getNextQueuedEvents(application, 50, 0, logged)!!
+        assertFalse(queued.isFromEventLog)
+        assertEquals(listOf(3, 4), ids(queued))
+        assertNull(dbManager.getNextQueuedEvents(application, 50, 0, queued))
+
+        dbManager.removeSentQueuedEvents(application, logged)
+        dbManager.removeSentQueuedEvents(application, queued)
+
+        // with both flushed, new events go back to the log
+        dbManager.queueEventToDB(application, event(5), Constants.RAISED_EVENT)
+        val next = dbManager.getQueuedEvents(application, 50, null, EventGroup.REGULAR)
+        assertTrue(next.isFromEventLog)
+        assertEquals(listOf(5), ids(next))
+    }
+
+    private fun event(i: Int) = JSONObject().put("evtName", "test").put("i", i)
+
+    private fun ids(cursor: QueueCursor) = (0 until cursor.data.length()).map { cursor.data.getJSONObject(it).getInt("i") }
+}
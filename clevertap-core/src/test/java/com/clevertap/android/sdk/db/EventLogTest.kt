@@ -0,0 +1,103 @@
+package com.clevertap.android.sdk.db
+
+import org.junit.*
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class EventLogTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun test_read_when_batchIsCommitted_should_continueAfterItAndDeleteOldSegments() {
+        val directory = folder.newFolder()
+        val log = EventLog(directory, 256)
+        (0 until 100).forEach { log.append("{\"i\":$it}") }
+
+        val first = ArrayList<String>()
+        val next = log.read(log.committedOffset, 30, first)
+        assertEquals("{\"i\":0}", first.first())
+        assertEquals("{\"i\":29}", first.last())
+
+        val segmentsBefore = segmentCount(directory)
+        log.commit(next)
+        assertTrue(segmentCount(directory) < segmentsBefore)
+
+        val rest = ArrayList<String>()
+        log.read(log.committedOffset, 1000, rest)
+        assertEquals(70, rest.size)
+        assertEquals("{\"i\":30}", rest.first())
+    }
+
+    @Test
+    fun test_open_when_logExists_should_resumeFromCommittedOffset() {
+        val directory = folder.newFolder()
+        val log = EventLog(directory, 256)
+        (0 until 10).forEach { log.append("{\"i\":$it}") }
+        log.commit(log.read(log.committedOffset, 4, ArrayList()))
+
+        val reopened = EventLog(directory, 256)
+        val events = ArrayList<String>()
+        reopened.read(reopened.committedOffset, 100, events)
+        assertEquals((4 until 10).map { "{\"i\":$it}" }, events)
+    }
+
+    @Test
+    fun test_open_when_lastRecordIsTorn_should_dropItAndKeepAppending() {
+        val directory = folder.newFolder()
+        val log = EventLog(directory, 4096)
+        log.append("{\"a\":1}")
+        log.append("{\"b\":2}")
+
+        val segment = directory.listFiles()!!.first { it.name.endsWith(".log") }
+        RandomAccessFile(segment, "rw").use {
+            it.seek(log.writeOffset - 2)
+            it.write('Z'.code)
+        }
+
+        val reopened = EventLog(directory, 4096)
+        reopened.append("{\"c\":3}")
+        val events = ArrayList<String>()
+        reopened.read(reopened.committedOffset, 100, events)
+        assertEquals(listOf("{\"a\":1}", "{\"c\":3}"), events)
+    }
+
+    @Test
+    fun test_append_when_segmentCapIsReached_should_dropTheOldestSegment() {
+        val directory = folder.newFolder()
+        val log = EventLog(directory, 256, 3)
+        (0 until 100).forEach { log.append("{\"i\":$it}") }
+
+        assertEquals(3, segmentCount(directory))
+        val events = ArrayList<String>()
+        log.read(log.committedOffset, 1000, events)
+        assertTrue(events.size < 100)
+        assertEquals((100 - events.size until 100).map { "{\"i\":$it}" }, events)
+    }
+
+    @Test
+    fun test_expire_when_oldestSegmentIsStale_should_dropOnlyThatSegment() {
+        val directory = folder.newFolder()
+        val log = EventLog(directory, 256)
+        (0 until 30).forEach { log.append("{\"i\":$it}") }
+        val sixDays = 6L * 24 * 60 * 60 * 1000
+        val oldest = directory.listFiles()!!.filter { it.name.endsWith(".log") }.minByOrNull { it.name }!!
+        oldest.setLastModified(System.currentTimeMillis() - sixDays)
+
+        assertTrue(log.expire(sixDays - 1000))
+        assertFalse(log.expire(sixDays - 1000))
+
+        val reopened = EventLog(directory, 256)
+        val events = ArrayList<String>()
+        reopened.read(reopened.committedOffset, 100, events)
+        assertTrue(events.size < 30)
+        assertEquals((30 - events.size until 30).map { "{\"i\":$it}" }, events)
+    }
+
+    private fun segmentCount(directory: File) = directory.listFiles()!!.count { it.name.endsWith(".log") }
+}
@@ -0,0 +1,83 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class EventPayloadCodecTest : BaseTestCase() {
+
+    private val codec = EventPayloadCodec()
+
+    @Test
+    fun test_compress_when_payloadIsInflated_should_roundTrip() {
+        val payload = event(7).toString()
+        assertEquals(payload, codec.decompress(codec.compress(payload)))
+        assertEquals("", codec.decompress(codec.compress("")))
+    }
+
+    @Test
+    fun test_compress_when_typicalEvent_should_beSmallerThanText() {
+        val payload = event(7).toString()
+        val compressed = codec.compress(payload)
+        // the preset dictionary gets a single event to a little over half its size
+        assertTrue(compressed.size < payload.length * 0.7, "${compressed.size} of ${payload.length} bytes")
+    }
+
+    @Test
+    fun test_storeObjects_when_compressionIsOn_should_readEveryRowFromASmallerDB() {
+        val rows = 2000
+        val dbBytes = HashMap<Boolean, Long>()
+        for (compress in listOf(false, true)) {
+            cleverTapInstanceConfig.setCompressQueuedEvents(compress)
+            application.deleteDatabase("clevertap_" + cleverTapInstanceConfig.accountId)
+            val dbAdapter = DBAdapter(application, cleverTapInstanceConfig)
+
+            dbAdapter.storeObjects((1..rows).map { event(it).toString() }, Table.EVENTS)
+            var fetched = 0
+            while (true) {
+                val batch = dbAdapter.fetchEvents(Table.EVENTS, 50) ?: break
+                val lastId = batch.keys().next()
+                fetched += batch.getJSONArray(lastId).length()
+                dbAdapter.cleanupEventsFromLastId(lastId, Table.EVENTS)
+            }
+            val dbFile = application.getDatabasePath("clevertap_" + cleverTapInstanceConfig.accountId)
+            // deleted rows leave free pages behind, so the file keeps the size the stored rows needed
+            dbBytes[compress] = dbFile.length() + File(dbFile.path + "-wal").length()
+            assertEquals(rows, fetched)
+        }
+        assertTrue(dbBytes[true]!! < dbBytes[false]!!, "$dbBytes")
+    }
+
+    @Test
+    fun test_fetchEvents_when_rowsWereStoredAsText_should_stillBeReadWithCompressionOn() {
+        DBAdapter(application, cleverTapInstanceConfig).storeObject(event(1), Table.EVENTS)
+        cleverTapInstanceConfig.setCompressQueuedEvents(true)
+        val dbAdapter = DBAdapter(application, cleverTapInstanceConfig)
+        dbAdapter.storeObject(event(2), Table.EVENTS)
+
+        val batch = dbAdapter.fetchEvents(Table.EVENTS, 10)
+        val events = batch.getJSONArray(batch.keys().next())
+        assertEquals(2, events.length())
+        assertEquals(1, events.getJSONObject(0).getJSONObject("evtData").getInt("index"))
+        assertEquals(2, events.getJSONObject(1).getJSONObject("evtData").getInt("index"))
+    }
+
+    private fun event(index: Int) = JSONObject()
+        .put("evtName", "Product Viewed")
+        .put("evtData", JSONObject().put("Product Name", "Casio Chronograph Watch").put("index", index))
+        .put("n", "MainActivity")
+        .put("s", 1634567890)
+        .put("pg", 1)
+        .put("type", "event")
+        .put("ep", 1634567999)
+        .put("f", false)
+        .put("lsl", 0)
+        .put("dsync", false)
+}
@@ -0,0 +1,34 @@
+package com.clevertap.android.sdk.db
+
+import org.junit.*
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class PushIdBloomFilterTest {
+
+    @Test
+    fun test_mightContain_when_idWasAdded_should_neverReturnFalse() {
+        val filter = PushIdBloomFilter(2000)
+        val ids = (0 until 2000).map { "pid_$it" }
+        ids.forEach { filter.put(it) }
+
+        ids.forEach { assertTrue(filter.mightContain(it)) }
+        assertFalse(filter.isFull)
+    }
+
+    @Test
+    fun test_mightContain_when_idWasNotAdded_should_rarelyReturnTrue() {
+        val filter = PushIdBloomFilter(2000)
+        (0 until 2000).forEach { filter.put("pid_$it") }
+
+        val falsePositives = (0 until 20000).count { filter.mightContain("other_$it") }
+        assertTrue(falsePositives < 20000 * 0.03, "false positives: $falsePositives")
+    }
+
+    @Test
+    fun test_isFull_when_capacityIsExceeded_should_returnTrue() {
+        val filter = PushIdBloomFilter(1)
+        (0..1024).forEach { filter.put("pid_$it") }
+        assertTrue(filter.isFull)
+    }
+}
@@ -0,0 +1,59 @@
+package com.clevertap.android.sdk.db
+
+import com.clevertap.android.sdk.db.DBAdapter.Table
+import org.junit.*
+import kotlin.test.assertEquals
+
+class QueueDrainSchedulerTest {
+
+    private val tables = arrayOf(Table.PROFILE_EVENTS, Table.PRIORITY_EVENTS, Table.EVENTS)
+
+    @Test
+    fun test_getDrainOrder_when_everyTableHasEvents_should_interleaveBatchesByWeight() {
+        val scheduler = QueueDrainScheduler(tables, intArrayOf(4, 4, 1))
+
+        val drained = StringBuilder()
+        repeat(9) {
+            val table = scheduler.drainOrder[0]
+            scheduler.onDrained(table)
+            drained.append(tables.indexOf(table))
+        }
+
+        // profile and revenue batches go first, the others get their one batch in nine
+        assertEquals("010120101", drained.toString())
+    }
+
+    @Test
+    fun test_onEmpty_when_aTableRunsDry_should_giveItsTurnsToTheOthersWithoutSavingCredit() {
+        val scheduler = QueueDrainScheduler(tables, intArrayOf(4, 4, 1))
+
+        repeat(20) {
+            val order = scheduler.drainOrder
+            // nothing is queued in the priority table
+            val table = order.first { it != Table.PRIORITY_EVENTS }
+            if (order[0] == Table.PRIORITY_EVENTS) {
+                scheduler.onEmpty(Table.PRIORITY_EVENTS)
+            }
+            scheduler.onDrained(table)
+        }
+
+        // once it has events again it is picked on its weight, not on 20 turns of credit
+        val drained = StringBuilder()
+        repeat(9) {
+            val table = scheduler.drainOrder[0]
+            scheduler.onDrained(table)
+            drained.append(tables.indexOf(table))
+        }
+        assertEquals(4, drained.count { it == '1' })
+        assertEquals(1, drained.count { it == '2' })
+    }
+
+    @Test
+    fun test_getDrainOrder_when_aBatchIsInFlight_should_orderAsIfItWasDrainedWithoutRecordingIt() {
+        val scheduler = QueueDrainScheduler(tables, intArrayOf(1, 1, 1))
+
+        assertEquals(Table.PRIORITY_EVENTS, scheduler.getDrainOrder(Table.PROFILE_EVENTS)[0])
+        // the in-flight batch failed, nothing was charged
+        assertEquals(Table.PROFILE_EVENTS, scheduler.drainOrder[0])
+    }
+}
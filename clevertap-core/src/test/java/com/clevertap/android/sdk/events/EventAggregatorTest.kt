@@ -0,0 +1,113 @@
+package com.clevertap.android.sdk.events
+
+import com.clevertap.android.sdk.task.MainLooperHandler
+import com.clevertap.android.shared.test.BaseTestCase
+import org.junit.*
+import org.junit.runner.*
+import org.mockito.*
+import org.mockito.Mockito.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class EventAggregatorTest : BaseTestCase() {
+
+    private lateinit var aggregator: EventAggregator
+    private lateinit var mainLooperHandler: MainLooperHandler
+    private val summaries = ArrayList<Pair<String, Map<String, Any>>>()
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        mainLooperHandler = mock(MainLooperHandler::class.java)
+        aggregator = EventAggregator(cleverTapInstanceConfig, mainLooperHandler)
+        aggregator.setSummaryListener { eventName, summary -> summaries.add(eventName to summary) }
+    }
+
+    @Test
+    fun test_aggregate_when_notRegistered_should_leaveTheEventToBePushed() {
+        assertFalse(aggregator.aggregate("Scrolled", mapOf<String, Any>("depth" to 10)))
+        verifyNoInteractions(mainLooperHandler)
+    }
+
+    @Test
+    fun test_aggregate_when_windowElapses_should_emitOneSummary() {
+        aggregator.register("Scrolled", 30_000)
+
+        assertTrue(aggregator.aggregate("Scrolled", mapOf<String, Any>("depth" to 10, "screen" to "feed")))
+        assertTrue(aggregator.aggregate("Scrolled", mapOf<String, Any>("depth" to 40, "screen" to "home")))
+        assertTrue(aggregator.aggregate("Scrolled", mapOf<String, Any>("depth" to 25)))
+
+        val captor = ArgumentCaptor.forClass(Runnable::class.java)
+        verify(mainLooperHandler).postDelayed(captor.capture(), eq(30_000L))
+        captor.value.run()
+
+        assertEquals(1, summaries.size)
+        val (eventName, summary) = summaries[0]
+        assertEquals("Scrolled", eventName)
+        assertEquals(3, summary["ct_count"])
+        assertEquals(75L, summary["depth_sum"])
+        assertEquals(10L, summary["depth_min"])
+        assertEquals(40L, summary["depth_max"])
+        assertEquals(25, summary["depth_last"])
+        assertEquals("home", summary["screen"])
+        assertTrue(summary.containsKey("ct_window_start"))
+        assertTrue(summary.containsKey("ct_window_end"))
+    }
+
+    @Test
+    fun test_aggregate_when_valuesAreDecimal_should_emitDecimalAggregates() {
+        aggregator.register("Video Heartbeat", 10_000)
+        aggregator.aggregate("Video Heartbeat", mapOf<String, Any>("position" to 1))
+        aggregator.aggregate("Video Heartbeat", mapOf<String, Any>("position" to 2.5))
+
+        aggregator.flushAll()
+
+        assertEquals(3.5, summaries[0].second["position_sum"])
+        assertEquals(1.0, summaries[0].second["position_min"])
+    }
+
+    @Test
+    fun test_flushAll_should_emitOpenWindowsOnceAndStartNewOnes() {
+        aggregator.register("Impression", 60_000)
+        aggregator.aggregate("Impression", null)
+        aggregator.aggregate("Impression", null)
+
+        aggregator.flushAll()
+        aggregator.flushAll()
+
+        assertEquals(1, summaries.size)
+        assertEquals(2, summaries[0].second["ct_count"])
+        verify(mainLooperHandler).removeCallbacks(any())
+
+        aggregator.aggregate("Impression", null)
+        verify(mainLooperHandler, times(2)).postDelayed(any(), eq(60_000L))
+    }
+
+    @Test
+    fun test_flushAll_when_aPropertyUsesASummaryKey_should_keepTheSummaryValue() {
+        aggregator.register("Scrolled", 30_000)
+        aggregator.aggregate("Scrolled", mapOf<String, Any>("count" to "many", "depth" to 10, "depth_sum" to "x"))
+
+        aggregator.flushAll()
+
+        val summary = summaries[0].second
+        assertEquals(1, summary["ct_count"])
+        assertEquals("many", summary["count"])
+        assertEquals(10L, summary["depth_sum"])
+    }
+
+    @Test
+    fun test_unregister_should_emitTheOpenWindowAndStopAggregating() {
+        aggregator.register("Impression", 60_000)
+        aggregator.aggregate("Impression", null)
+
+        aggregator.unregister("Impression")
+
+        assertEquals(1, summaries.size)
+        assertFalse(aggregator.isRegistered("Impression"))
+        assertFalse(aggregator.aggregate("Impression", null))
+    }
+}
@@ -0,0 +1,103 @@
+package com.clevertap.android.sdk.events
+
+import com.clevertap.android.sdk.Constants
+import com.clevertap.android.sdk.DeviceInfo
+import com.clevertap.android.sdk.task.MainLooperHandler
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.mockito.ArgumentCaptor
+import org.mockito.Mockito.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class EventRateLimiterTest : BaseTestCase() {
+
+    private lateinit var deviceInfo: DeviceInfo
+    private lateinit var mainLooperHandler: MainLooperHandler
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        deviceInfo = mock(DeviceInfo::class.java)
+        `when`(deviceInfo.deviceID).thenReturn("__device")
+        mainLooperHandler = mock(MainLooperHandler::class.java)
+    }
+
+    @Test
+    fun test_shouldDrop_when_overTheCap_should_dropUntilTokensRefill() {
+        cleverTapInstanceConfig.setEventRateLimit("Scrolled", 2, 1.0)
+        val limiter = EventRateLimiter(application, cleverTapInstanceConfig, deviceInfo, mainLooperHandler)
+
+        assertFalse(limiter.shouldDrop("Scrolled", 0))
+        assertFalse(limiter.shouldDrop("Scrolled", 0))
+        assertTrue(limiter.shouldDrop("Scrolled", 0))
+        assertFalse(limiter.shouldDrop("Other Event", 0))
+
+        // two per minute refills one token every 30 seconds
+        assertTrue(limiter.shouldDrop("Scrolled", 29_000))
+        assertFalse(limiter.shouldDrop("Scrolled", 31_000))
+    }
+
+    @Test
+    fun test_isSampledIn_should_beStablePerDeviceAndCloseToTheRate() {
+        val sampledIn = (0 until 10_000).count { EventRateLimiter.isSampledIn("device$it", "Scrolled", 0.25) }
+        assertTrue(sampledIn in 2_250..2_750, "$sampledIn devices sampled in")
+
+        assertEquals(
+            EventRateLimiter.isSampledIn("device1", "Scrolled", 0.5),
+            EventRateLimiter.isSampledIn("device1", "Scrolled", 0.5)
+        )
+        assertFalse(EventRateLimiter.isSampledIn("device1", "Scrolled", 0.0))
+        assertTrue(EventRateLimiter.isSampledIn("device1", "Scrolled", 1.0))
+    }
+
+    @Test
+    fun test_setRemoteLimits_should_overrideLocalLimitsAndPersist() {
+        cleverTapInstanceConfig.setEventRateLimit("Scrolled", 0, 1.0)
+        val limiter = EventRateLimiter(application, cleverTapInstanceConfig, deviceInfo, mainLooperHandler)
+        assertFalse(limiter.shouldDrop("Scrolled", 0))
+
+        limiter.setRemoteLimits(
+            JSONObject().put("Scrolled", JSONObject().put(Constants.EVENT_SAMPLE_RATE, 0.0))
+        )
+        assertTrue(limiter.shouldDrop("Scrolled", 0))
+
+        val relaunched = EventRateLimiter(application, cleverTapInstanceConfig, deviceInfo, mainLooperHandler)
+        assertTrue(relaunched.shouldDrop("Scrolled", 0))
+
+        relaunched.setRemoteLimits(null)
+        assertFalse(relaunched.shouldDrop("Scrolled", 0))
+    }
+
+    @Test
+    fun test_flushDroppedSummaries_should_beScheduledByTheFirstDropAndReportEachDropOnce() {
+        cleverTapInstanceConfig.setEventRateLimit("Scrolled", 1, 1.0)
+        val limiter = EventRateLimiter(application, cleverTapInstanceConfig, deviceInfo, mainLooperHandler)
+        val summaries = ArrayList<Map<String, Any>>()
+        limiter.setDroppedEventsListener { summary -> summaries.add(summary) }
+        limiter.shouldDrop("Scrolled", 1_000)
+        limiter.shouldDrop("Scrolled", 1_000)
+        limiter.shouldDrop("Scrolled", 1_000)
+
+        // a single emission is scheduled for the interval, however many events are dropped
+        val emission = ArgumentCaptor.forClass(Runnable::class.java)
+        verify(mainLooperHandler, times(1))
+            .postDelayed(emission.capture(), eq(Constants.DROPPED_EVENTS_SUMMARY_INTERVAL_MS.toLong()))
+        emission.value.run()
+
+        assertEquals(1, summaries.size)
+        assertEquals("Scrolled", summaries[0][Constants.DROPPED_EVENT_NAME])
+        assertEquals(2, summaries[0][Constants.DROPPED_RATE_LIMITED])
+        assertEquals(0, summaries[0][Constants.DROPPED_SAMPLED_OUT])
+        assertEquals(1.0, summaries[0][Constants.EVENT_SAMPLE_RATE])
+
+        // nothing dropped since, as at the end of a session with no drops
+        limiter.flushDroppedSummaries()
+        assertEquals(1, summaries.size)
+    }
+}
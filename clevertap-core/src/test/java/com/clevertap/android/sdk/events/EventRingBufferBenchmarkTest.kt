@@ -0,0 +1,94 @@
+package com.clevertap.android.sdk.events
+
+import org.junit.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.test.assertEquals
+
+/**
+ * Rough producer throughput of recording events with 1, 4 and 8 concurrent callers, comparing the ingestion buffer
+ * with submitting a task per event to a serial executor, as queueEvent does without the buffer. Each run is warmed
+ * up first and the consumer drains concurrently, as the account's executor would. Numbers are only meaningful
+ * relative to each other.
+ */
+class EventRingBufferBenchmarkTest {
+
+    private val eventsPerProducer = 50_000
+
+    private val warmupIterations = 2
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    fun test_benchmark_ringBuffer_vs_executor() {
+        for (producers in intArrayOf(1, 4, 8)) {
+            repeat(warmupIterations) {
+                runRingBuffer(producers)
+                runExecutor(producers)
+            }
+            val ringBuffer = runRingBuffer(producers)
+            val executor = runExecutor(producers)
+            println("$producers producers: ring buffer $ringBuffer events/sec, executor $executor events/sec")
+        }
+    }
+
+    /**
+     * @return events/sec offered by all producers together
+     */
+    private fun runExecutor(producers: Int): Long {
+        val executor = Executors.newSingleThreadExecutor()
+        val consumed = AtomicLong()
+        val task = Runnable { consumed.incrementAndGet() }
+        val elapsed = produce(producers) {
+            executor.submit(task)
+        }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+        assertEquals(producers.toLong() * eventsPerProducer, consumed.get())
+        return producers.toLong() * eventsPerProducer * 1_000_000_000L / elapsed
+    }
+
+    private fun runRingBuffer(producers: Int): Long {
+        val buffer = EventRingBuffer<Any>(1024)
+        val element = Any()
+        val total = producers.toLong() * eventsPerProducer
+        val consumed = AtomicLong()
+        val consumer = Thread {
+            while (consumed.get() < total) {
+                if (buffer.poll() != null) {
+                    consumed.incrementAndGet()
+                } else {
+                    Thread.yield()
+                }
+            }
+        }.apply { start() }
+        val elapsed = produce(producers) {
+            while (!buffer.offer(element)) {
+                Thread.yield()
+            }
+        }
+        consumer.join()
+        assertEquals(total, consumed.get())
+        return total * 1_000_000_000L / elapsed
+    }
+
+    /**
+     * @return the nanoseconds until every producer has recorded all of its events
+     */
+    private fun produce(producers: Int, record: () -> Unit): Long {
+        val start = CountDownLatch(1)
+        val done = CountDownLatch(producers)
+        repeat(producers) {
+            Thread {
+                start.await()
+                repeat(eventsPerProducer) { record() }
+                done.countDown()
+            }.start()
+        }
+        val begin = System.nanoTime()
+        start.countDown()
+        done.await()
+        return System.nanoTime() - begin
+    }
+}
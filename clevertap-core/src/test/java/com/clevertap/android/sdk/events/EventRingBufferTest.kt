@@ -0,0 +1,89 @@
+package com.clevertap.android.sdk.events
+
+import org.junit.*
+import java.util.concurrent.CountDownLatch
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class EventRingBufferTest {
+
+    @Test
+    fun test_constructor_should_roundTheCapacityUpToAPowerOfTwo() {
+        assertEquals(1, EventRingBuffer<Int>(0).capacity)
+        assertEquals(8, EventRingBuffer<Int>(5).capacity)
+        assertEquals(8, EventRingBuffer<Int>(8).capacity)
+    }
+
+    @Test
+    fun test_offer_when_full_should_refuseUntilPolled() {
+        val buffer = EventRingBuffer<Int>(4)
+        for (i in 1..4) {
+            assertTrue(buffer.offer(i))
+        }
+        assertFalse(buffer.offer(5))
+        assertEquals(4, buffer.size())
+
+        assertEquals(1, buffer.poll())
+        assertTrue(buffer.offer(5))
+        assertFalse(buffer.offer(6))
+    }
+
+    @Test
+    fun test_poll_should_returnElementsInOrderAcrossWrapAround() {
+        val buffer = EventRingBuffer<Int>(4)
+        val polled = ArrayList<Int>()
+        for (i in 1..10) {
+            assertTrue(buffer.offer(i))
+            if (i % 3 == 0) {
+                while (true) {
+                    polled.add(buffer.poll() ?: break)
+                }
+            }
+        }
+        while (true) {
+            polled.add(buffer.poll() ?: break)
+        }
+        assertEquals((1..10).toList(), polled)
+        assertTrue(buffer.isEmpty)
+        assertNull(buffer.poll())
+    }
+
+    @Test
+    fun test_offer_when_producersRace_should_deliverEveryElementOnceInPerProducerOrder() {
+        val producers = 4
+        val perProducer = 20_000
+        val buffer = EventRingBuffer<Long>(64)
+        val start = CountDownLatch(1)
+        val threads = (0 until producers).map { producer ->
+            Thread {
+                start.await()
+                for (i in 0 until perProducer) {
+                    val element = producer.toLong() * perProducer + i
+                    while (!buffer.offer(element)) {
+                        Thread.yield()
+                    }
+                }
+            }.apply { start() }
+        }
+        start.countDown()
+
+        val last = LongArray(producers) { -1 }
+        var received = 0
+        while (received < producers * perProducer) {
+            val element = buffer.poll()
+            if (element == null) {
+                Thread.yield()
+                continue
+            }
+            val producer = (element / perProducer).toInt()
+            val index = element % perProducer
+            assertEquals(last[producer] + 1, index)
+            last[producer] = index
+            received++
+        }
+        threads.forEach { it.join() }
+        assertNull(buffer.poll())
+    }
+}
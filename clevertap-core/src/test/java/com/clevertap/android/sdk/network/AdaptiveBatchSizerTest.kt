@@ -0,0 +1,46 @@
+package com.clevertap.android.sdk.network
+
+import org.junit.*
+import kotlin.test.assertEquals
+
+class AdaptiveBatchSizerTest {
+
+    @Test
+    fun test_onSuccess_when_fullBatchesUploadFast_should_growUpToTheMaximum() {
+        val sizer = AdaptiveBatchSizer(1000, 5000)
+        assertEquals(1000, sizer.targetBytes)
+
+        sizer.onSuccess(1000, 200)
+        assertEquals(2000, sizer.targetBytes)
+        sizer.onSuccess(2100, 200)
+        sizer.onSuccess(4000, 200)
+        assertEquals(5000, sizer.targetBytes)
+
+        // a batch smaller than the target means the queue ran out, not that the link can take more
+        val partial = AdaptiveBatchSizer(1000, 5000)
+        partial.onSuccess(300, 100)
+        assertEquals(1000, partial.targetBytes)
+    }
+
+    @Test
+    fun test_onFailure_when_uploadsFailOrAreSlow_should_shrinkDownToTheMinimum() {
+        val sizer = AdaptiveBatchSizer(1000, 64000)
+        repeat(6) { sizer.onSuccess(sizer.targetBytes, 100) }
+        assertEquals(64000, sizer.targetBytes)
+
+        sizer.onSuccess(64000, AdaptiveBatchSizer.SLOW_ROUND_TRIP_MILLIS)
+        assertEquals(48000, sizer.targetBytes)
+        sizer.onFailure(false)
+        assertEquals(24000, sizer.targetBytes)
+        sizer.onFailure(true)
+        assertEquals(6000, sizer.targetBytes)
+        sizer.onFailure(true)
+        assertEquals(1500, sizer.targetBytes)
+        sizer.onFailure(false)
+        assertEquals(1000, sizer.targetBytes)
+
+        assertEquals(7, sizer.batchCount)
+        assertEquals(4, sizer.failureCount)
+        assertEquals(AdaptiveBatchSizer.SLOW_ROUND_TRIP_MILLIS, sizer.lastRoundTripMillis)
+    }
+}
@@ -0,0 +1,239 @@
+package com.clevertap.android.sdk.network
+
+import com.clevertap.android.sdk.CTLockManager
+import com.clevertap.android.sdk.CallbackManager
+import com.clevertap.android.sdk.Constants
+import com.clevertap.android.sdk.ControllerManager
+import com.clevertap.android.sdk.CoreMetaData
+import com.clevertap.android.sdk.DeviceInfo
+import com.clevertap.android.sdk.LocalDataStore
+import com.clevertap.android.sdk.StorageHelper
+import com.clevertap.android.sdk.db.DBManager
+import com.clevertap.android.sdk.events.EventGroup
+import com.clevertap.android.sdk.events.EventRateLimiter
+import com.clevertap.android.sdk.task.MainLooperHandler
+import com.clevertap.android.sdk.validation.ValidationResultStack
+import com.clevertap.android.sdk.validation.Validator
+import com.clevertap.android.shared.test.BaseTestCase
+import com.sun.net.httpserver.HttpServer
+import org.junit.*
+import org.junit.runner.*
+import org.mockito.*
+import org.mockito.Mockito.*
+import org.robolectric.RobolectricTestRunner
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.URL
+import java.util.zip.GZIPInputStream
+import javax.net.ssl.HttpsURLConnection
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class NetworkManagerTest : BaseTestCase() {
+
+    private lateinit var databaseManager: DBManager
+
+    private lateinit var networkManager: NetworkManager
+
+    private lateinit var server: HttpServer
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        val deviceInfo = Mockito.mock(DeviceInfo::class.java)
+        databaseManager = Mockito.mock(DBManager::class.java)
+        networkManager = NetworkManager(
+            application, cleverTapInstanceConfig, deviceInfo, CoreMetaData(), ValidationResultStack(),
+            Mockito.mock(ControllerManager::class.java), databaseManager,
+            CallbackManager(cleverTapInstanceConfig, deviceInfo), CTLockManager(), Validator(),
+            Mockito.mock(LocalDataStore::class.java),
+            EventRateLimiter(application, cleverTapInstanceConfig, deviceInfo, Mockito.mock(MainLooperHandler::class.java))
+        )
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun test_processIncomingHeaders_when_handshakeAdvertisesGzip_should_enableCompressedRequests() {
+        assertFalse(networkManager.isRequestCompressionSupported(application))
+
+        val conn = Mockito.mock(HttpsURLConnection::class.java)
+        `when`(conn.getHeaderField(Constants.HEADER_GZIP_REQUESTS)).thenReturn("true")
+        networkManager.processIncomingHeaders(application, conn)
+        assertTrue(networkManager.isRequestCompressionSupported(application))
+
+        `when`(conn.getHeaderField(Constants.HEADER_GZIP_REQUESTS)).thenReturn("false")
+        networkManager.processIncomingHeaders(application, conn)
+        assertFalse(networkManager.isRequestCompressionSupported(application))
+    }
+
+    @Test
+    fun test_setDomain_should_writeThroughToTheDomainReadByUploads() {
+        assertNull(networkManager.getDomainFromPrefsOrMetadata(EventGroup.REGULAR))
+        assertTrue(networkManager.hasDomainChanged("eu1.clevertap-prod.com"))
+
+        networkManager.setDomain(application, "eu1.clevertap-prod.com")
+
+        assertFalse(networkManager.hasDomainChanged("eu1.clevertap-prod.com"))
+        assertEquals("eu1.clevertap-prod.com", networkManager.getDomainFromPrefsOrMetadata(EventGroup.REGULAR))
+        assertEquals("eu1.clevertap-prod.com",
+            StorageHelper.getStringFromPrefs(application, cleverTapInstanceConfig, Constants.KEY_DOMAIN_NAME, null))
+    }
+
+    @Test
+    fun test_getLastRequestTimestamp_should_comeFromMemoryUntilTheQueuesAreCleared() {
+        networkManager.setLastRequestTimestamp(100)
+        assertEquals(100, networkManager.lastRequestTimestamp)
+
+        // clearing the queues clears the stored timestamp behind the manager's back
+        StorageHelper.putInt(
+            application, StorageHelper.storageKeyWithSuffix(cleverTapInstanceConfig, Constants.KEY_LAST_TS), 0
+        )
+        assertEquals(100, networkManager.lastRequestTimestamp)
+        `when`(databaseManager.queueClearCount).thenReturn(1)
+        assertEquals(0, networkManager.lastRequestTimestamp)
+    }
+
+    @Test
+    fun test_flushDBQueue_when_theHalfOpenTrialFindsTheQueueEmpty_should_stillFlushOnceEventsArrive() {
+        cleverTapInstanceConfig.setRetryBackoffEnabled(true)
+        var now = 1_000_000L
+        networkManager.retryClock = RetryScheduler.Clock { now }
+        val scheduler = networkManager.getRetryScheduler(EventGroup.REGULAR)
+        repeat(Constants.RETRY_CIRCUIT_BREAKER_THRESHOLD) { scheduler.onFailure(0) }
+        assertTrue(scheduler.isCircuitOpen)
+        now += Constants.RETRY_CIRCUIT_OPEN_MS
+
+        // the trial flush finds nothing to send, the queue was cleared while the circuit was open
+        networkManager.flushDBQueue(application, EventGroup.REGULAR)
+
+        // events arrive and the next flush reads the queue instead of being refused
+        networkManager.flushDBQueue(application, EventGroup.REGULAR)
+        verify(databaseManager, times(2)).getQueuedEvents(
+            any(), anyInt(), anyInt(), isNull(), eq(EventGroup.REGULAR)
+        )
+        assertTrue(scheduler.allowRequest())
+    }
+
+    @Test
+    fun test_initHandshake_when_anotherLaneHasJustHandshaken_should_keepTheDomainAndRunTheCallback() {
+        networkManager.setDomain(application, "eu1.clevertap-prod.com")
+
+        var flushed = false
+        networkManager.initHandshake(EventGroup.REGULAR) { flushed = true }
+
+        // the domain a running regular flush uses is not reset under it
+        assertTrue(flushed)
+        assertEquals("eu1.clevertap-prod.com", networkManager.getDomainFromPrefsOrMetadata(EventGroup.REGULAR))
+    }
+
+    @Test
+    fun test_openRequestBody_when_gzip_should_sendBodyThatInflatesToTheSameBytes() {
+        val body = (1..200).joinToString(",", "[", "]") {
+            """{"evtName":"Product Viewed","evtData":{"id":$it},"type":"event"}"""
+        }.toByteArray(Charsets.UTF_8)
+
+        assertTrue(body.contentEquals(post(body, gzip = true)))
+        assertTrue(body.contentEquals(post(body, gzip = false)))
+    }
+
+    @Test
+    fun test_defaultHttpTransport_when_flushingRepeatedly_should_reuseTheConnection() {
+        val clientPorts = HashSet<Int>()
+        server.createContext("/a1") { exchange ->
+            clientPorts.add(exchange.remoteAddress.port)
+            exchange.requestBody.readBytes()
+            val response = "{\"g\":\"__abc\"}".toByteArray(Charsets.UTF_8)
+            exchange.sendResponseHeaders(200, response.size.toLong())
+            exchange.responseBody.write(response)
+            exchange.close()
+        }
+        val url = URL("http://127.0.0.1:${server.address.port}/a1")
+
+        val flush = { transport: HttpTransport, disconnect: Boolean ->
+            repeat(100) {
+                val conn = transport.open(url)
+                val out = NetworkManager.openRequestBody(conn, false)
+                out.write("[{\"g\":\"__abc\"}, {\"evtName\":\"test\"}]".toByteArray(Charsets.UTF_8))
+                out.close()
+                assertEquals(200, conn.responseCode)
+                if (disconnect) {
+                    conn.inputStream.close()
+                    conn.disconnect()
+                } else {
+                    transport.release(conn)
+                }
+            }
+        }
+
+        flush(DefaultHttpTransport(), false)
+        val pooled = clientPorts.size
+        clientPorts.clear()
+        flush(DefaultHttpTransport(), true)
+        val disconnected = clientPorts.size
+
+        assertTrue(pooled <= 2)
+        assertEquals(100, disconnected)
+    }
+
+    @Test
+    fun test_defaultHttpTransport_when_theResponseIsLarge_should_disconnectRatherThanDrainIt() {
+        val clientPorts = ArrayList<Int>()
+        server.createContext("/a1") { exchange ->
+            clientPorts.add(exchange.remoteAddress.port)
+            val response = ByteArray(DefaultHttpTransport.MAX_DRAIN_BYTES * 8)
+            exchange.sendResponseHeaders(200, response.size.toLong())
+            exchange.responseBody.write(response)
+            exchange.close()
+        }
+        val url = URL("http://127.0.0.1:${server.address.port}/a1")
+        val transport = DefaultHttpTransport()
+
+        repeat(2) {
+            val conn = transport.open(url)
+            assertEquals(200, conn.responseCode)
+            transport.release(conn)
+        }
+
+        assertEquals(2, clientPorts.toSet().size)
+    }
+
+    /**
+     * @return the request body as the server saw it, after undoing any content encoding
+     */
+    private fun post(body: ByteArray, gzip: Boolean): ByteArray {
+        var received = ByteArray(0)
+        var encoding: String? = null
+        var transferEncoding: String? = null
+        server.createContext("/a1") { exchange ->
+            encoding = exchange.requestHeaders.getFirst("Content-Encoding")
+            transferEncoding = exchange.requestHeaders.getFirst("Transfer-Encoding")
+            val input = if (encoding == "gzip") GZIPInputStream(exchange.requestBody) else exchange.requestBody
+            received = input.readBytes()
+            exchange.sendResponseHeaders(200, -1)
+            exchange.close()
+        }
+        try {
+            val conn = URL("http://127.0.0.1:${server.address.port}/a1").openConnection() as HttpURLConnection
+            val out = NetworkManager.openRequestBody(conn, gzip)
+            out.write(body)
+            out.close()
+            assertEquals(200, conn.responseCode)
+            conn.disconnect()
+        } finally {
+            server.removeContext("/a1")
+        }
+        assertEquals(if (gzip) "gzip" else null, encoding)
+        // streamed rather than buffered into a single fixed-length body
+        assertEquals("chunked", transferEncoding)
+        return received
+    }
+}
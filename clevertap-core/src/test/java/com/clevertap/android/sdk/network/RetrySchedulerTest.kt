@@ -0,0 +1,121 @@
+package com.clevertap.android.sdk.network
+
+import com.clevertap.android.sdk.interfaces.UploadRetryListener
+import org.junit.*
+import java.util.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class RetrySchedulerTest {
+
+    private class FakeClock : RetryScheduler.Clock {
+        var now = 1_000_000L
+        override fun currentTimeMillis() = now
+    }
+
+    private class FixedRandom(private val value: Double) : Random() {
+        override fun nextDouble() = value
+    }
+
+    private class RecordingListener : UploadRetryListener {
+        val events = ArrayList<String>()
+        override fun onUploadCircuitOpened(failureCount: Int, pauseMillis: Long) {
+            events.add("opened $failureCount $pauseMillis")
+        }
+
+        override fun onUploadCircuitClosed() {
+            events.add("closed")
+        }
+
+        override fun onUploadRetryScheduled(failureCount: Int, delayMillis: Long) {
+            events.add("retry $failureCount $delayMillis")
+        }
+    }
+
+    private val clock = FakeClock()
+
+    @Test
+    fun test_onFailure_when_failuresRepeat_should_doubleTheCeilingUpToTheCap() {
+        val scheduler = RetryScheduler(1000, 8000, 10, 60000, clock, FixedRandom(1.0), null)
+        assertEquals(listOf(1000L, 2000L, 4000L, 8000L, 8000L), (1..5).map { scheduler.onFailure(0) })
+        assertEquals(8000, scheduler.delayMillis)
+        assertFalse(scheduler.allowRequest())
+
+        clock.now += 8000
+        assertEquals(0, scheduler.delayMillis)
+        assertTrue(scheduler.allowRequest())
+
+        scheduler.onSuccess()
+        assertEquals(0, scheduler.consecutiveFailures)
+        assertEquals(1000, scheduler.onFailure(0))
+    }
+
+    @Test
+    fun test_onFailure_should_pickAJitteredDelayUnlessTheServerAsksForLonger() {
+        val scheduler = RetryScheduler(1000, 8000, 10, 60000, clock, FixedRandom(0.25), null)
+        assertEquals(listOf(250L, 500L, 1000L, 2000L), (1..4).map { scheduler.onFailure(0) })
+
+        val retryAfter = RetryScheduler(1000, 8000, 10, 60000, clock, FixedRandom(0.25), null)
+        assertEquals(30000, retryAfter.onFailure(30000))
+        assertEquals(30000, retryAfter.delayMillis)
+        clock.now += 10000
+        assertEquals(20000, retryAfter.delayMillis)
+    }
+
+    @Test
+    fun test_circuitBreaker_when_failuresReachTheThreshold_should_pauseThenLetOneTrialThrough() {
+        val listener = RecordingListener()
+        val scheduler = RetryScheduler(1000, 8000, 3, 60000, clock, FixedRandom(1.0), listener)
+        scheduler.onFailure(0)
+        scheduler.onFailure(0)
+        assertFalse(scheduler.isCircuitOpen)
+        assertEquals(60000, scheduler.onFailure(0))
+        assertTrue(scheduler.isCircuitOpen)
+
+        clock.now += 59999
+        assertFalse(scheduler.allowRequest())
+        clock.now += 1
+        assertTrue(scheduler.allowRequest())
+        assertFalse(scheduler.allowRequest())
+
+        // the trial failed, stay paused
+        scheduler.onFailure(0)
+        assertTrue(scheduler.isCircuitOpen)
+        assertFalse(scheduler.allowRequest())
+
+        clock.now += 60000
+        assertTrue(scheduler.allowRequest())
+        scheduler.onSuccess()
+        assertFalse(scheduler.isCircuitOpen)
+        assertTrue(scheduler.allowRequest())
+
+        assertEquals(
+            listOf("retry 1 1000", "retry 2 2000", "opened 3 60000", "opened 4 60000", "closed"),
+            listener.events
+        )
+    }
+
+    @Test
+    fun test_cancelTrial_when_theTrialSentNothing_should_letTheNextFlushTakeIt() {
+        val scheduler = RetryScheduler(1000, 8000, 1, 60000, clock, FixedRandom(1.0), null)
+        scheduler.onFailure(0)
+        clock.now += 60000
+        assertTrue(scheduler.allowRequest())
+        assertFalse(scheduler.allowRequest())
+
+        scheduler.cancelTrial()
+        assertTrue(scheduler.isCircuitOpen)
+        assertTrue(scheduler.allowRequest())
+    }
+
+    @Test
+    fun test_parseRetryAfter_should_acceptSecondsAndHttpDates() {
+        assertEquals(120000, RetryScheduler.parseRetryAfter("120", 0))
+        val date = 1445412480000L // Wed, 21 Oct 2015 07:28:00 GMT
+        assertEquals(5000, RetryScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", date - 5000))
+        assertEquals(0, RetryScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", date + 5000))
+        assertEquals(0, RetryScheduler.parseRetryAfter("soon", 0))
+        assertEquals(0, RetryScheduler.parseRetryAfter(null, 0))
+    }
+}
@@ -0,0 +1,36 @@
+package com.clevertap.android.sdk.response
+
+import com.clevertap.android.shared.test.BaseTestCase
+import org.json.JSONObject
+import org.junit.*
+import org.junit.runner.*
+import org.robolectric.RobolectricTestRunner
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@RunWith(RobolectricTestRunner::class)
+class ResponseReaderTest : BaseTestCase() {
+
+    @Test
+    fun test_read_when_responseHasUnknownKeys_should_skipThemAndKeepHandledValuesAsJSONObjectWould() {
+        val body = """
+            {"unknown":{"huge":[1,2,3,{"a":"b"}]},
+             "imp":5,"_i":12345678901,"imc":2.5,"g":"__abc","dbg_lvl":null,
+             "inapp_notifs":[{"ti":1,"wzrk_ttl":1700000000,"show":true,"html":"<b>\"x\"</b>"}],
+             "arp":{"j":-1,"d_ts":0}}
+        """.trimIndent()
+
+        val response = ResponseReader.read(body.byteInputStream())
+        val expected = JSONObject(body)
+
+        assertFalse(response.has("unknown"))
+        for (key in listOf("imp", "_i", "imc", "g", "dbg_lvl")) {
+            assertEquals(expected.get(key), response.get(key), key)
+            assertEquals(expected.get(key).javaClass, response.get(key).javaClass, key)
+        }
+        assertTrue(response.get("imp") is Int)
+        assertEquals(expected.getJSONArray("inapp_notifs").toString(), response.getJSONArray("inapp_notifs").toString())
+        assertEquals(expected.getJSONObject("arp").toString(), response.getJSONObject("arp").toString())
+    }
+}
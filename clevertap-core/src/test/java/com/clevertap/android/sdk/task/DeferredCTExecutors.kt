@@ -0,0 +1,48 @@
+package com.clevertap.android.sdk.task
+
+import com.clevertap.android.sdk.CleverTapInstanceConfig
+import java.util.LinkedList
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Holds the tasks posted to the account's serial executor until [runPending], so that tests can queue work the
+ * way callers on other threads would while the executor is busy.
+ */
+class DeferredCTExecutors(config: CleverTapInstanceConfig) : CTExecutors(config) {
+
+    private val pending = LinkedList<Runnable>()
+
+    private val executor = object : AbstractExecutorService() {
+
+        override fun execute(command: Runnable) {
+            pending.add(command)
+        }
+
+        override fun shutdown() {
+            throw UnsupportedOperationException("Not Supported")
+        }
+
+        override fun shutdownNow(): MutableList<Runnable> {
+            throw UnsupportedOperationException("Not Supported")
+        }
+
+        override fun isShutdown() = false
+
+        override fun isTerminated() = false
+
+        override fun awaitTermination(timeout: Long, unit: TimeUnit?) = false
+    }
+
+    fun runPending() {
+        while (pending.isNotEmpty()) {
+            pending.poll().run()
+        }
+    }
+
+    override fun <TResult : Any?> postAsyncSafelyTask(): Task<TResult> =
+        Task(config, executor, executor, "postAsyncSafelyTask")
+
+    override fun <TResult : Any?> postAsyncSafelyTask(featureTask: String): Task<TResult> =
+        Task(config, executor, executor, "postAsyncSafelyTask")
+}